@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.internal.IndexedResults;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures collecting of results: the {@code ConcurrentMap -> ImmutableMap -> ActionResults} copying pipeline compared to
+ * {@link IndexedResults} wrapped by {@link ActionResults} without copying.
+ * <p>
+ * Both cases collect results of the same actions by their names and read the collected entries once, as the renderer does,
+ * so the lazy name resolution of {@link IndexedResults} is measured too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionResultsBenchmark {
+  @Param({"1", "10", "100", "1000", "10000"})
+  public int count;
+
+  private List<Action<String, String>> actions;
+  private ActionResult<String> result;
+
+  @Setup
+  public void prepare() {
+    actions = BenchmarkActions.list(BenchmarkActions.Kind.NOOP, count);
+    result = ActionResult.success("OK");
+  }
+
+  @Benchmark
+  public void indexed(Blackhole blackhole) {
+    IndexedResults<String> results = new IndexedResults<>(actions.size());
+    for (Action<String, String> action : actions) {
+      results.set(results.add(action), result);
+    }
+    read(new ActionResults<>(results), blackhole);
+  }
+
+  @Benchmark
+  public void copied(Blackhole blackhole) {
+    Map<String, ActionResult<String>> results = Maps.newConcurrentMap();
+    for (Action<String, String> action : actions) {
+      results.put(action.getName(), result);
+    }
+    read(new ActionResults<>(ImmutableMap.copyOf(results)), blackhole);
+  }
+
+  private static void read(ActionResults<String> results, Blackhole blackhole) {
+    for (Map.Entry<String, ActionResult<String>> entry : results.asMap().entrySet()) {
+      blackhole.consume(entry.getKey());
+      blackhole.consume(entry.getValue());
+    }
+  }
+}
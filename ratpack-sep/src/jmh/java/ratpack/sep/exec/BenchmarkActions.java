@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.InlineAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Actions measured by benchmarks.
+ */
+public final class BenchmarkActions {
+  /**
+   * The kind of action implementation.
+   */
+  public enum Kind {
+    /**
+     * Action that returns already resolved promise.
+     */
+    NOOP,
+    /**
+     * Action that computes its result inline, without forking new execution.
+     */
+    INLINE,
+    /**
+     * Action that is fulfilled later by the event loop.
+     */
+    ASYNC,
+    /**
+     * Action executed on the blocking thread pool.
+     */
+    BLOCKING
+  }
+
+  private BenchmarkActions() {
+  }
+
+  /**
+   * Creates the successful action of the given kind.
+   *
+   * @param kind the kind of action implementation
+   * @param name the name of the action
+   * @return the action
+   */
+  public static Action<String, String> of(Kind kind, String name) {
+    if (kind == Kind.INLINE) {
+      return InlineAction.of(name, name, data -> ActionResult.success(null, data));
+    }
+    return Action.of(name, name, (execControl, data) -> exec(kind, execControl, ActionResult.success(null, data)));
+  }
+
+  /**
+   * Creates the action of the given kind, that fails {@code failures} times and then succeeds.
+   *
+   * @param kind the kind of action implementation
+   * @param name the name of the action
+   * @param failures the number of failed executions before the first success
+   * @return the action
+   */
+  public static Action<String, String> failing(Kind kind, String name, int failures) {
+    int[] executions = new int[1];
+    if (kind == Kind.INLINE) {
+      return InlineAction.of(name, name, data ->
+        executions[0]++ < failures ? ActionResult.error("1", "FAILED") : ActionResult.success(null, data)
+      );
+    }
+    return Action.of(name, name, (execControl, data) ->
+      exec(kind, execControl, executions[0]++ < failures ? ActionResult.error("1", "FAILED") : ActionResult.success(null, data))
+    );
+  }
+
+  /**
+   * Creates {@code count} successful actions of the given kind.
+   *
+   * @param kind the kind of action implementation
+   * @param count the number of actions
+   * @return the list of actions
+   */
+  public static List<Action<String, String>> list(Kind kind, int count) {
+    List<Action<String, String>> actions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      actions.add(of(kind, "action_" + i));
+    }
+    return actions;
+  }
+
+  private static Promise<ActionResult<String>> exec(Kind kind, ExecControl execControl, ActionResult<String> result) {
+    switch (kind) {
+      case ASYNC:
+        return execControl.promise(fulfiller ->
+          execControl.getController().getExecutor().execute(() -> fulfiller.success(result))
+        );
+      case BLOCKING:
+        return execControl.blocking(() -> result);
+      default:
+        return execControl.promiseOf(result);
+    }
+  }
+}
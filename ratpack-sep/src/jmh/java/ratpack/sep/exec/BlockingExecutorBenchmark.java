@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ratpack.sep.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares {@link BlockingExecutor} backends executing sleeping actions at once by {@link Parallel}.
+ * <p>
+ * On JVM without virtual threads {@code VIRTUAL} falls back to the blocking thread pool.
+ */
+public class BlockingExecutorBenchmark extends PatternBenchmark {
+  @Param({"POOL", "VIRTUAL"})
+  public BlockingExecutor.Type type;
+
+  @Param({"1000"})
+  public int count;
+
+  @Param({"10"})
+  public long sleep;
+
+  private BlockingExecutor executor;
+  private List<Action<String, String>> actions;
+  private Parallel<String, String> pattern;
+
+  @Setup
+  public void prepare() {
+    executor = new BlockingExecutor(type);
+    actions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      actions.add(executor.action("action_" + i, "data_" + i, data -> {
+        Thread.sleep(sleep);
+        return ActionResult.success(null, data);
+      }));
+    }
+    pattern = new Parallel<>();
+  }
+
+  @TearDown
+  public void close() {
+    executor.close();
+  }
+
+  @Benchmark
+  public ActionResults<String> apply() throws Exception {
+    return harness.yield(execControl -> pattern.apply(execControl, registry, actions)).getValue();
+  }
+}
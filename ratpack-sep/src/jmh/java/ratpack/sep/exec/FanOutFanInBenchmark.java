@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import ratpack.exec.ExecControl;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+
+import java.util.List;
+
+/**
+ * Measures {@link FanOutFanIn} overhead per number and kind of actions, with post action counting results.
+ */
+public class FanOutFanInBenchmark extends PatternBenchmark {
+  @Param({"NOOP", "ASYNC", "BLOCKING"})
+  public BenchmarkActions.Kind kind;
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  public int count;
+
+  private List<Action<String, String>> actions;
+  private Action<ActionResults<String>, Integer> postAction;
+  private FanOutFanIn<String, String, Integer> pattern;
+
+  @Setup
+  public void prepare() {
+    actions = BenchmarkActions.list(kind, count);
+    postAction = Action.of("post", null, (ExecControl execControl, ActionResults<String> results) ->
+      execControl.promiseOf(ActionResult.success(results.getResults().size()))
+    );
+    pattern = new FanOutFanIn<>();
+  }
+
+  @Benchmark
+  public ActionResults<Integer> apply() throws Exception {
+    return harness.yield(execControl -> pattern.apply(execControl, registry, actions, postAction)).getValue();
+  }
+}
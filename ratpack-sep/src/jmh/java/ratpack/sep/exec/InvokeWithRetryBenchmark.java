@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import ratpack.sep.ActionResults;
+
+/**
+ * Measures {@link InvokeWithRetry} overhead per kind of action and number of failed executions before success.
+ * <p>
+ * Retries are not delayed, so only the cost of the pattern itself is measured.
+ */
+public class InvokeWithRetryBenchmark extends PatternBenchmark {
+  @Param({"NOOP", "INLINE", "ASYNC", "BLOCKING"})
+  public BenchmarkActions.Kind kind;
+
+  @Param({"0", "1", "10", "100"})
+  public int failures;
+
+  private final InvokeWithRetry<String, String> pattern = new InvokeWithRetry<>(Integer.MAX_VALUE - 1);
+
+  @Benchmark
+  public ActionResults<String> apply() throws Exception {
+    return harness.yield(execControl ->
+      pattern.apply(execControl, registry, BenchmarkActions.failing(kind, "action", failures))
+    ).getValue();
+  }
+}
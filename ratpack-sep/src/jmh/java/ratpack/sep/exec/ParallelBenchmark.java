@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResults;
+
+import java.util.List;
+
+/**
+ * Measures {@link Parallel} overhead per number and kind of actions, unbounded and with bounded concurrency.
+ */
+public class ParallelBenchmark extends PatternBenchmark {
+  @Param({"NOOP", "INLINE", "ASYNC", "BLOCKING"})
+  public BenchmarkActions.Kind kind;
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  public int count;
+
+  @Param({"0", "16"})
+  public int maxConcurrency;
+
+  private List<Action<String, String>> actions;
+  private Parallel<String, String> pattern;
+
+  @Setup
+  public void prepare() {
+    actions = BenchmarkActions.list(kind, count);
+    pattern = new Parallel<>(maxConcurrency);
+  }
+
+  @Benchmark
+  public ActionResults<String> apply() throws Exception {
+    return harness.yield(execControl -> pattern.apply(execControl, registry, actions)).getValue();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ratpack.sep.ActionResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering of results to pooled buffer: {@link ObjectMapper} serialization, as done by {@code json} renderer,
+ * compared to {@link ActionResultsWriter}. Run with {@code -prof gc} (default of {@code jmh} task) to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionResultsWriterBenchmark {
+  @Param({"1", "100", "1000"})
+  public int count;
+
+  private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private ObjectWriter objectWriter;
+  private ActionResultsWriter writer;
+  private Map<String, ActionResult<Map<String, Object>>> results;
+
+  @Setup
+  public void prepare() {
+    objectWriter = mapper.writer();
+    writer = new ActionResultsWriter(mapper);
+    results = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> data = new LinkedHashMap<>();
+      data.put("id", i);
+      data.put("value", "value " + i);
+      results.put("action_" + i, i % 10 == 0
+        ? ActionResult.error("500", "failed " + i)
+        : ActionResult.success("OK", data));
+    }
+  }
+
+  @Benchmark
+  public int objectMapper() throws IOException {
+    ByteBuf buffer = allocator.buffer();
+    try {
+      objectWriter.writeValue((OutputStream) new ByteBufOutputStream(buffer), results);
+      return buffer.readableBytes();
+    } finally {
+      buffer.release();
+    }
+  }
+
+  @Benchmark
+  public int actionResultsWriter() throws IOException {
+    ByteBuf buffer = writer.write(allocator, results);
+    try {
+      return buffer.readableBytes();
+    } finally {
+      buffer.release();
+    }
+  }
+}
@@ -33,6 +33,8 @@ import ratpack.func.BiFunction;
  * @see ratpack.sep.exec.InvokeWithRetry
  * @see ratpack.sep.exec.Parallel
  * @see ratpack.sep.exec.FanOutFanIn
+ * @see ratpack.sep.exec.Pipeline
+ * @see ratpack.sep.InlineAction
  */
 public interface Action<T, O> {
   /**
@@ -70,6 +72,8 @@ public interface Action<T, O> {
    * This method returns a promise to allow action execution to be asynchronous.
    * <p>
    * If this method throws an exception it is equivalent to error result.
+   * <p>
+   * By default {@code t} is ignored and the action executes with its own data, see {@link #exec(ExecControl)}.
    *
    * @param execControl an execution control
    * @param t an object of type {@code T}
@@ -77,7 +81,7 @@ public interface Action<T, O> {
    * @throws Exception any
    */
   default Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
-    return exec(execControl, getData());
+    return exec(execControl);
   }
 
   /**
@@ -17,6 +17,7 @@
 package ratpack.sep;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import ratpack.api.Nullable;
 
 /**
@@ -27,17 +28,75 @@ import ratpack.api.Nullable;
  * @param <T> a type of data accompanying action result
  */
 public class ActionResult<T> {
+
+  /**
+   * The code of the result of action that did not finish in time.
+   *
+   * Value: {@value}
+   */
+  public static final String TIMEOUT_CODE = "TIMEOUT";
+
+  /**
+   * The code of the result of action rejected by open circuit breaker.
+   *
+   * Value: {@value}
+   */
+  public static final String CIRCUIT_OPEN_CODE = "CIRCUIT_OPEN";
+
+  /**
+   * The code of the result of action rejected by full bulkhead.
+   *
+   * Value: {@value}
+   */
+  public static final String BULKHEAD_FULL_CODE = "BULKHEAD_FULL";
+
+  /**
+   * The code of the result of action still running when the pattern completed.
+   *
+   * Value: {@value}
+   */
+  public static final String ABANDONED_CODE = "ABANDONED";
+
+  /**
+   * The code of the result of action not executed, because action it depends on failed.
+   *
+   * Value: {@value}
+   */
+  public static final String SKIPPED_CODE = "SKIPPED";
+
+  /**
+   * The code of the result of action shed by {@link ratpack.sep.exec.AdaptiveLimiter}, because too many actions were executing.
+   *
+   * Value: {@value}
+   */
+  public static final String LOAD_SHED_CODE = "LOAD_SHED";
+
+  /**
+   * The code of the result of failed action not retried, because {@link ratpack.sep.exec.RetryBudget} was exhausted.
+   * The message contains the code and message of the last failed execution.
+   *
+   * Value: {@value}
+   */
+  public static final String RETRY_SUPPRESSED_CODE = "RETRY_SUPPRESSED";
+
   private final String code;
   private final String message;
   @JsonIgnore
   private final Throwable error;
   private final T data;
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final Integer attempt;
 
   private ActionResult(String code, String message, Throwable error, T data) {
+    this(code, message, error, data, null);
+  }
+
+  private ActionResult(String code, String message, Throwable error, T data, Integer attempt) {
     this.code = code;
     this.message = message;
     this.error = error;
     this.data = data;
+    this.attempt = attempt;
   }
 
   /**
@@ -81,6 +140,28 @@ public class ActionResult<T> {
     return data;
   }
 
+  /**
+   * The number of the action execution that provided this result, may be {@code null}.
+   * <p>
+   * Set by patterns that execute action more than once.
+   *
+   * @return the number of the execution, starting from {@code 1}
+   */
+  @Nullable
+  public Integer getAttempt() {
+    return attempt;
+  }
+
+  /**
+   * Creates a copy of this result with the number of the action execution that provided it.
+   *
+   * @param attempt the number of the execution, starting from {@code 1}
+   * @return a copy of this result
+   */
+  public ActionResult<T> withAttempt(int attempt) {
+    return new ActionResult<>(code, message, error, data, attempt);
+  }
+
   /**
    * Is action result successful?
    *
@@ -164,4 +245,17 @@ public class ActionResult<T> {
   public static <T> ActionResult<T> error(Throwable error) {
     return new ActionResult<>(error.toString(), error.getMessage(), error, null);
   }
+
+  /**
+   * Creates a result with the given code, message and data, e.g. decoded from the response of another service.
+   *
+   * @param code a result code, <b>0</b> if successful
+   * @param message a message to accompany the result
+   * @param data a data accompany the result
+   * @param <T> a type of accompanying data
+   * @return a result
+   */
+  public static <T> ActionResult<T> of(String code, String message, T data) {
+    return new ActionResult<>(code, message, null, data);
+  }
 }
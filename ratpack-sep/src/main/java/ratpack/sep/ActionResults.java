@@ -18,20 +18,41 @@ package ratpack.sep;
 
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Map;
+
 /**
  * A value type representing the result of running multiple actions.
  * <p>
- * Every result is defined by its <b>unique</b> name.
+ * Every result is defined by its <b>unique</b> name. If patterns execute more actions with the same name, the result of
+ * the last action wins.
+ * <p>
+ * Results are collected without copying, {@link #asMap()} returns them as unmodifiable {@link Map} view.
+ * {@link #getResults()} returns {@link ImmutableMap}, copied from the view on the first call if patterns did not
+ * collect results into {@code ImmutableMap}.
  *
  * @param <O> a data type common to all responses collected as action results.
  *
  * @see ratpack.sep.ActionResult
  */
 public class ActionResults<O> {
-  private final ImmutableMap<String, ActionResult<O>> results;
+  private final Map<String, ActionResult<O>> results;
+  private volatile ImmutableMap<String, ActionResult<O>> immutableResults;
+
+  /**
+   * Constructor
+   * <p>
+   * The map is not copied, so it must not be modified afterwards.
+   *
+   * @param results unmodifiable map of action name to its result
+   */
+  public ActionResults(Map<String, ActionResult<O>> results) {
+    this.results = results;
+  }
 
   /**
    * Constructor
+   * <p>
+   * Kept for binary compatibility with code compiled against the {@code ImmutableMap} constructor.
    *
    * @param results immutable map of action name to its result
    */
@@ -43,8 +64,26 @@ public class ActionResults<O> {
    * The results.
    *
    * @return the results
+   * @see #asMap()
    */
   public ImmutableMap<String, ActionResult<O>> getResults() {
+    if (results instanceof ImmutableMap) {
+      return (ImmutableMap<String, ActionResult<O>>) results;
+    }
+    ImmutableMap<String, ActionResult<O>> current = immutableResults;
+    if (current == null) {
+      current = ImmutableMap.copyOf(results);
+      immutableResults = current;
+    }
+    return current;
+  }
+
+  /**
+   * The results, without copying them.
+   *
+   * @return unmodifiable map of action name to its result
+   */
+  public Map<String, ActionResult<O>> asMap() {
     return results;
   }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes {@link ActionResults} rendered by pattern endpoints in any of {@link ActionResultsEncoding} formats.
+ * <p>
+ * The format is chosen by the {@code Content-Type} of the response. Results are parsed as stream of tokens,
+ * the {@code data} of every result is bound to the given type. Unknown properties are skipped.
+ * The {@link ActionResult#getError() error} of the remote action is not transferred, only its {@code code} and {@code message}.
+ *
+ * <pre class="java">{@code
+ * httpClient.get(uri, request -> request.getHeaders().set("Accept", ActionResultsEncoding.ACCEPT_BINARY))
+ *   .map(response -> decoder.decode(response.getHeaders().get("Content-Type"), response.getBody().getBuffer(), Map.class))
+ * }</pre>
+ */
+public class ActionResultsDecoder {
+  private final ObjectMapper mapper;
+
+  /**
+   * Constructor
+   *
+   * @param mapper the mapper binding {@code data} of results
+   */
+  public ActionResultsDecoder(ObjectMapper mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * Constructor with the default {@link ObjectMapper}.
+   */
+  public ActionResultsDecoder() {
+    this(new ObjectMapper());
+  }
+
+  /**
+   * Decodes results from the buffer. The buffer is not released.
+   *
+   * @param contentType the content type of the body
+   * @param body the body with encoded results
+   * @param dataType the type of {@code data} of results
+   * @param <O> the type of {@code data} of results
+   * @return the results
+   * @throws IOException if the body is not valid
+   */
+  public <O> ActionResults<O> decode(String contentType, ByteBuf body, Class<O> dataType) throws IOException {
+    return decode(contentType, new ByteBufInputStream(body), mapper.constructType(dataType));
+  }
+
+  /**
+   * Decodes results from the stream.
+   *
+   * @param contentType the content type of the body
+   * @param body the body with encoded results
+   * @param dataType the type of {@code data} of results
+   * @param <O> the type of {@code data} of results
+   * @return the results
+   * @throws IOException if the body is not valid
+   */
+  public <O> ActionResults<O> decode(String contentType, InputStream body, Class<O> dataType) throws IOException {
+    return decode(contentType, body, mapper.constructType(dataType));
+  }
+
+  /**
+   * Decodes results from the stream, binding {@code data} to the generic type.
+   *
+   * @param contentType the content type of the body
+   * @param body the body with encoded results
+   * @param dataType the type of {@code data} of results
+   * @param <O> the type of {@code data} of results
+   * @return the results
+   * @throws IOException if the body is not valid
+   */
+  public <O> ActionResults<O> decode(String contentType, InputStream body, JavaType dataType) throws IOException {
+    ObjectReader reader = mapper.readerFor(dataType);
+    try (JsonParser parser = ActionResultsEncoding.of(contentType).getFactory(mapper).createParser(body)) {
+      expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+      ImmutableMap.Builder<String, ActionResult<O>> results = ImmutableMap.builder();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        if (parser.nextToken() != JsonToken.VALUE_NULL) {
+          results.put(name, this.<O>result(parser, reader));
+        }
+      }
+      expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+      return new ActionResults<>(results.build());
+    }
+  }
+
+  private <O> ActionResult<O> result(JsonParser parser, ObjectReader reader) throws IOException {
+    expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+    String code = null;
+    String message = null;
+    O data = null;
+    Integer attempt = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      boolean isNull = parser.nextToken() == JsonToken.VALUE_NULL;
+      switch (field) {
+        case "code":
+          code = isNull ? null : parser.getText();
+          break;
+        case "message":
+          message = isNull ? null : parser.getText();
+          break;
+        case "data":
+          data = isNull ? null : reader.<O>readValue(parser);
+          break;
+        case "attempt":
+          attempt = isNull ? null : parser.getIntValue();
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    ActionResult<O> result = ActionResult.of(code, message, data);
+    return attempt != null ? result.withAttempt(attempt) : result;
+  }
+
+  private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+    if (actual != expected) {
+      throw new JsonParseException("Expected " + expected + " but was " + actual, parser.getCurrentLocation());
+    }
+  }
+}
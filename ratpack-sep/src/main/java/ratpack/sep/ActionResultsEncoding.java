@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.Locale;
+
+/**
+ * The wire format of {@link ActionResults}.
+ * <p>
+ * Services calling pattern endpoints can ask for compact binary format with the {@code Accept} header, e.g.
+ * {@code Accept: application/x-jackson-smile}, and decode the response with {@link ActionResultsDecoder}.
+ * {@code JSON} is used if no binary format is acceptable.
+ *
+ * @see ratpack.sep.internal.ActionResultsRenderer
+ */
+public enum ActionResultsEncoding {
+  /**
+   * Text {@code JSON}.
+   */
+  JSON("application/json"),
+  /**
+   * Binary {@code JSON} of Jackson Smile format.
+   */
+  SMILE("application/x-jackson-smile"),
+  /**
+   * Concise Binary Object Representation (RFC 7049).
+   */
+  CBOR("application/cbor");
+
+  /**
+   * The {@code Accept} header value preferring binary formats, for clients decoding with {@link ActionResultsDecoder}.
+   *
+   * Value: {@value}
+   */
+  public static final String ACCEPT_BINARY = "application/x-jackson-smile, application/cbor;q=0.9, application/json;q=0.5";
+
+  private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+  private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+  private final String contentType;
+
+  ActionResultsEncoding(String contentType) {
+    this.contentType = contentType;
+  }
+
+  /**
+   * The content type of the format.
+   *
+   * @return the content type
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * The factory of generators and parsers of the format.
+   *
+   * @param mapper the mapper, which factory is used for {@code JSON}
+   * @return the factory
+   */
+  public JsonFactory getFactory(ObjectMapper mapper) {
+    switch (this) {
+      case SMILE:
+        return SMILE_FACTORY;
+      case CBOR:
+        return CBOR_FACTORY;
+      default:
+        return mapper.getFactory();
+    }
+  }
+
+  /**
+   * The format of the given content type.
+   *
+   * @param contentType the content type, may contain parameters
+   * @return the format or {@link #JSON} if content type is not known
+   */
+  public static ActionResultsEncoding of(String contentType) {
+    if (contentType != null) {
+      String type = mediaType(contentType);
+      for (ActionResultsEncoding encoding : values()) {
+        if (encoding.contentType.equals(type)) {
+          return encoding;
+        }
+      }
+    }
+    return JSON;
+  }
+
+  /**
+   * Chooses the format with the highest quality in the {@code Accept} header.
+   * <p>
+   * If formats have the same quality, the first listed wins. Wildcards match {@link #JSON} only.
+   *
+   * @param accept the value of the {@code Accept} header, may be {@code null}
+   * @return the accepted format or {@link #JSON} if no format is accepted explicitly
+   */
+  public static ActionResultsEncoding negotiate(String accept) {
+    if (accept == null || accept.isEmpty()) {
+      return JSON;
+    }
+    ActionResultsEncoding best = JSON;
+    float bestQuality = 0;
+    for (String range : accept.split(",")) {
+      String type = mediaType(range);
+      float quality = quality(range);
+      for (ActionResultsEncoding encoding : values()) {
+        if (encoding.contentType.equals(type) && quality > bestQuality) {
+          best = encoding;
+          bestQuality = quality;
+        }
+      }
+    }
+    return best;
+  }
+
+  private static String mediaType(String range) {
+    int parameters = range.indexOf(';');
+    return (parameters < 0 ? range : range.substring(0, parameters)).trim().toLowerCase(Locale.ENGLISH);
+  }
+
+  private static float quality(String range) {
+    for (String parameter : range.split(";")) {
+      String trimmed = parameter.trim();
+      if (trimmed.startsWith("q=")) {
+        try {
+          return Float.parseFloat(trimmed.substring(2));
+        } catch (NumberFormatException ex) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep;
+
+import org.reactivestreams.Publisher;
+
+/**
+ * A stream of action results, emitted one by one as soon as every action finishes.
+ * <p>
+ * Each element of the stream is {@link ActionResults} with exactly one result, so the client could merge them into
+ * the same shape as the non streamed {@link ActionResults}.
+ * <p>
+ * The stream is rendered by {@link ratpack.sep.internal.ActionResultsStreamRenderer} in the given {@link Format}.
+ *
+ * @param <O> a data type common to all responses collected as action results.
+ *
+ * @see ratpack.sep.exec.Parallel#stream(ratpack.exec.ExecControl, ratpack.registry.Registry, Iterable, Integer)
+ */
+public class ActionResultsStream<O> {
+
+  /**
+   * The format of the rendered stream.
+   */
+  public enum Format {
+    /**
+     * Chunked response, every result as {@code JSON} object in a separate line.
+     */
+    NDJSON,
+    /**
+     * Server sent events, every result as {@code JSON} object in the event data.
+     */
+    SSE
+  }
+
+  private final Publisher<ActionResults<O>> publisher;
+  private final Format format;
+
+  /**
+   * Constructor
+   *
+   * @param publisher the publisher of single action results
+   * @param format the format of the rendered stream
+   */
+  public ActionResultsStream(Publisher<ActionResults<O>> publisher, Format format) {
+    this.publisher = publisher;
+    this.format = format;
+  }
+
+  /**
+   * Creates a stream rendered as new line delimited {@code JSON}.
+   *
+   * @param publisher the publisher of single action results
+   * @param <O> a data type common to all results
+   * @return a stream of action results
+   */
+  public static <O> ActionResultsStream<O> ndjson(Publisher<ActionResults<O>> publisher) {
+    return new ActionResultsStream<>(publisher, Format.NDJSON);
+  }
+
+  /**
+   * Creates a stream rendered as server sent events.
+   *
+   * @param publisher the publisher of single action results
+   * @param <O> a data type common to all results
+   * @return a stream of action results
+   */
+  public static <O> ActionResultsStream<O> sse(Publisher<ActionResults<O>> publisher) {
+    return new ActionResultsStream<>(publisher, Format.SSE);
+  }
+
+  /**
+   * The publisher of single action results.
+   *
+   * @return the publisher
+   */
+  public Publisher<ActionResults<O>> getPublisher() {
+    return publisher;
+  }
+
+  /**
+   * The format of the rendered stream.
+   *
+   * @return the format
+   */
+  public Format getFormat() {
+    return format;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep;
+
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.func.Function;
+
+/**
+ * An action that computes its result without blocking or waiting, e.g. from memory or from its own data.
+ * <p>
+ * Patterns call {@link #apply(Object)} directly in the calling execution on the same thread, instead of forking a new
+ * execution for every action, see {@link ratpack.sep.exec.Parallel} and {@link ratpack.sep.exec.InvokeWithRetry}.
+ * The time of inline action is not limited by timeouts, as it can not be interrupted.
+ * <p>
+ * Inline action must not block, otherwise it blocks the event loop.
+ *
+ * @param <T> a type of data processed by the action
+ * @param <O> a type of data returned by the action
+ */
+public interface InlineAction<T, O> extends Action<T, O> {
+
+  /**
+   * Computes the result.
+   * <p>
+   * If this method throws an exception it is equivalent to error result.
+   *
+   * @param t an object of type {@code T}
+   * @return the result
+   * @throws Exception any
+   */
+  ActionResult<O> apply(T t) throws Exception;
+
+  /**
+   * Executes the action with its own data, providing already resolved promise.
+   *
+   * @param execControl an execution control
+   * @return a promise for the result
+   * @throws Exception any
+   */
+  @Override
+  default Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+    return exec(execControl, getData());
+  }
+
+  /**
+   * Executes the action, providing already resolved promise.
+   *
+   * @param execControl an execution control
+   * @param t an object of type {@code T}
+   * @return a promise for the result
+   * @throws Exception any
+   */
+  @Override
+  default Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+    return execControl.promiseOf(apply(t));
+  }
+
+  /**
+   * Factory for inline action implementation.
+   *
+   * @param name a name of the action
+   * @param data the data of the action
+   * @param func an action implementation that takes {@code T} data as parameter
+   * @param <T> a type of parameter for the action implementation
+   * @param <O> a type of the result data of the action implementation
+   * @return a named inline action implementation
+   */
+  public static <T, O> InlineAction<T, O> of(String name, T data, Function<? super T, ActionResult<O>> func) {
+    return new InlineAction<T, O>() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public T getData() {
+        return data;
+      }
+
+      @Override
+      public ActionResult<O> apply(T t) throws Exception {
+        return func.apply(t);
+      }
+    };
+  }
+}
@@ -16,7 +16,26 @@
 
 package ratpack.sep;
 
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import ratpack.guice.ConfigurableModule;
+import ratpack.sep.exec.AdaptiveLimiter;
+import ratpack.sep.exec.Backoff;
+import ratpack.sep.exec.BlockingExecutor;
+import ratpack.sep.exec.Bulkheads;
+import ratpack.sep.exec.CircuitBreakers;
+import ratpack.sep.exec.Latencies;
+import ratpack.sep.exec.PendingRetries;
+import ratpack.sep.exec.ResultCache;
+import ratpack.sep.exec.RetryBudget;
+import ratpack.sep.exec.RetryJournal;
+import ratpack.sep.exec.RetryJournalService;
+import ratpack.sep.metrics.HdrPatternMetrics;
+import ratpack.sep.metrics.PatternMetrics;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * An extension module, that provides integration patterns for actions execution.
@@ -24,12 +43,77 @@ import ratpack.guice.ConfigurableModule;
  * Available patterns:
  * <ul>
  *   <li><b>Fan-out/Fan-in</b> - execute actions in parallel and apply post processing action to results</li>
+ *   <li><b>Circuit breaker</b> - reject actions which backend is known to be down</li>
+ *   <li><b>Bulkhead</b> - isolate concurrently executed actions of different backends</li>
+ *   <li><b>Hedge</b> - execute idempotent action again if it does not finish in time</li>
+ *   <li><b>Pipeline</b> - execute actions one after another, passing result of every action to the next one</li>
+ *   <li><b>Graph</b> - execute actions as soon as actions they depend on are finished</li>
+ *   <li><b>Cache</b> - return cached result of idempotent action across requests</li>
  * </ul>
  *
  * <p>
  * Configuration options:
  * <ul>
  *   <li><b>defaultRetryCount</b> - The default retry count for patterns that support retry.</li>
+ *   <li><b>retryBackoff</b> - The policy of delays between retries: {@code NONE}, {@code FIXED}, {@code EXPONENTIAL}
+ *   or {@code DECORRELATED_JITTER}.</li>
+ *   <li><b>retryDelay</b> - The base delay between retries in milliseconds.</li>
+ *   <li><b>maxRetryDelay</b> - The maximum delay between retries in milliseconds. If {@code 0} the delay is not limited.</li>
+ *   <li><b>maxRetryTime</b> - The maximum time of all retries in milliseconds. If {@code 0} the time is not limited.</li>
+ *   <li><b>retryBudget</b> - If {@code true} retries of all requests are limited by {@link ratpack.sep.exec.RetryBudget}.
+ *   Disabled by default.</li>
+ *   <li><b>retryBudgetPercent</b> - The percentage of first executions of actions that can be retried.</li>
+ *   <li><b>retryBudgetMaxTokens</b> - The maximum number of retries saved for later by the retry budget.</li>
+ *   <li><b>maxPendingRetries</b> - The maximum number of actions retried asynchronously in background at once by
+ *   {@link ratpack.sep.exec.InvokeWithRetry}. If {@code 0} the number is not limited.</li>
+ *   <li><b>retryJournal</b> - The path of {@link ratpack.sep.exec.RetryJournal} file that keeps actions retried
+ *   asynchronously across restarts. If not set (default) the journal is disabled. Journaled retries are resumed when
+ *   the server starts and the journal is closed when it stops.</li>
+ *   <li><b>retryJournalSize</b> - The size of the retry journal file in bytes.</li>
+ *   <li><b>retryJournalSyncInterval</b> - The time in milliseconds between syncs of the retry journal file. If {@code 0}
+ *   every write is synced.</li>
+ *   <li><b>actionTimeout</b> - The maximum time of every action execution in milliseconds. If {@code 0} the time is
+ *   not limited.</li>
+ *   <li><b>circuitBreakerWindowSize</b> - The number of the last executions of action counted by circuit breaker.</li>
+ *   <li><b>circuitBreakerMinimumCalls</b> - The minimum number of executions required to open circuit breaker.</li>
+ *   <li><b>circuitBreakerFailureRate</b> - The failure rate in percents that opens circuit breaker.</li>
+ *   <li><b>circuitBreakerOpenTime</b> - The time in milliseconds circuit breaker stays open.</li>
+ *   <li><b>circuitBreakerHalfOpenCalls</b> - The number of trial executions let through by half open circuit breaker.</li>
+ *   <li><b>circuitBreakerCallTimeout</b> - The time in milliseconds after which execution protected by circuit breaker is recorded as failure. If {@code 0}, {@code actionTimeout} is used.</li>
+ *   <li><b>bulkheadMaxConcurrency</b> - The maximum number of actions of one group executed at once by bulkhead.</li>
+ *   <li><b>bulkheadMaxQueue</b> - The maximum number of actions of one group waiting in bulkhead queue.</li>
+ *   <li><b>bulkheadMaxQueueTime</b> - The maximum time in milliseconds action waits in bulkhead queue. If {@code 0},
+ *   {@code actionTimeout} is used.</li>
+ *   <li><b>bulkheads</b> - The limits of particular bulkhead groups, overriding the defaults above.</li>
+ *   <li><b>hedgeDelay</b> - The delay in milliseconds after which hedged action executes again. If {@code 0} the
+ *   95th percentile of recent latencies of the action is used.</li>
+ *   <li><b>hedgeMaxAttempts</b> - The maximum number of executions of hedged action.</li>
+ *   <li><b>cacheTtl</b> - The time in milliseconds cached result is fresh.</li>
+ *   <li><b>cacheStaleTtl</b> - The time in milliseconds after {@code cacheTtl} stale result is returned while the action
+ *   executes again in background. If {@code 0} stale results are not returned.</li>
+ *   <li><b>cacheErrors</b> - If {@code true} failed results are cached too.</li>
+ *   <li><b>cacheMaxWeight</b> - The maximum weight (by default the number) of cached results.</li>
+ *   <li><b>cacheLoadTimeout</b> - The time in milliseconds after which load of cached result times out, so that
+ *   executions joining it do not wait forever. If {@code 0} load is not limited.</li>
+ *   <li><b>caches</b> - The settings of particular cached actions, overriding the defaults above.</li>
+ *   <li><b>adaptiveConcurrency</b> - If {@code true} the number of actions executed at once by all patterns is limited
+ *   by {@link ratpack.sep.exec.AdaptiveLimiter}, adjusted to latency and errors. Disabled by default.</li>
+ *   <li><b>adaptiveInitialLimit</b> - The initial adaptive concurrency limit.</li>
+ *   <li><b>adaptiveMinLimit</b> - The minimum adaptive concurrency limit.</li>
+ *   <li><b>adaptiveMaxLimit</b> - The maximum adaptive concurrency limit.</li>
+ *   <li><b>adaptiveBackoffRatio</b> - The percentage of the limit kept when backend is overloaded.</li>
+ *   <li><b>adaptiveLatencyTolerance</b> - The percentage of the lowest observed latency above which backend is
+ *   considered overloaded.</li>
+ *   <li><b>adaptiveLatencyWindow</b> - The time in milliseconds the lowest latency of every action is remembered as its
+ *   latency without load.</li>
+ *   <li><b>blockingExecutor</b> - The backend of {@link ratpack.sep.exec.BlockingExecutor}: {@code POOL} (default) for
+ *   the blocking thread pool or {@code VIRTUAL} for virtual threads, if supported by the JVM.</li>
+ *   <li><b>metricsEnabled</b> - If {@code true} (default) patterns record {@link PatternMetrics} in-process, exposed by
+ *   {@link ratpack.sep.internal.PatternMetricsHandler}.</li>
+ *   <li><b>metricsMaxActions</b> - The maximum number of action names tracked by the default metrics, further actions
+ *   are recorded together.</li>
+ *   <li><b>maxConcurrency</b> - The maximum number of actions executed at once by {@link ratpack.sep.exec.Parallel}.
+ *   If {@code 0} the number is not limited.</li>
  * </ul>
  */
 public class PatternsModule extends ConfigurableModule<PatternsModule.Config> {
@@ -37,11 +121,118 @@ public class PatternsModule extends ConfigurableModule<PatternsModule.Config> {
   protected void configure() {
   }
 
+  @Provides
+  @Singleton
+  CircuitBreakers circuitBreakers(Config config) {
+    return new CircuitBreakers(config);
+  }
+
+  @Provides
+  @Singleton
+  Bulkheads bulkheads(Config config) {
+    return new Bulkheads(config);
+  }
+
+  @Provides
+  @Singleton
+  Latencies latencies() {
+    return new Latencies();
+  }
+
+  @Provides
+  @Singleton
+  ResultCache resultCache(Config config) {
+    return new ResultCache(config);
+  }
+
+  @Provides
+  @Singleton
+  PendingRetries pendingRetries(Config config) {
+    return new PendingRetries(config);
+  }
+
+  @Provides
+  @Singleton
+  RetryJournal retryJournal(Config config) throws IOException {
+    return new RetryJournal(config);
+  }
+
+  @Provides
+  @Singleton
+  RetryJournalService retryJournalService(Config config) {
+    return new RetryJournalService(config);
+  }
+
+  @Provides
+  @Singleton
+  RetryBudget retryBudget(Config config) {
+    return new RetryBudget(config);
+  }
+
+  @Provides
+  @Singleton
+  AdaptiveLimiter adaptiveLimiter(Config config) {
+    return new AdaptiveLimiter(config);
+  }
+
+  @Provides
+  @Singleton
+  BlockingExecutor blockingExecutor(Config config) {
+    return new BlockingExecutor(config);
+  }
+
+  @Provides
+  @Singleton
+  PatternMetrics patternMetrics(Config config) {
+    return config.isMetricsEnabled() ? new HdrPatternMetrics(config) : PatternMetrics.NOOP;
+  }
+
   /**
    * The configuration object for {@link PatternsModule}
    */
   public static class Config {
     private int defaultRetryCount;
+    private Backoff.Type retryBackoff = Backoff.Type.NONE;
+    private long retryDelay;
+    private long maxRetryDelay;
+    private long maxRetryTime;
+    private boolean retryBudget;
+    private int retryBudgetPercent = 20;
+    private int retryBudgetMaxTokens = 10;
+    private int maxPendingRetries = PendingRetries.DEFAULT_MAX_PENDING;
+    private String retryJournal;
+    private int retryJournalSize = 16 * 1024 * 1024;
+    private long retryJournalSyncInterval = 100;
+    private int maxConcurrency;
+    private long actionTimeout;
+    private int circuitBreakerWindowSize = 20;
+    private int circuitBreakerMinimumCalls = 10;
+    private int circuitBreakerFailureRate = 50;
+    private long circuitBreakerOpenTime = 5000;
+    private int circuitBreakerHalfOpenCalls = 1;
+    private long circuitBreakerCallTimeout;
+    private int bulkheadMaxConcurrency = 10;
+    private int bulkheadMaxQueue = 10;
+    private long bulkheadMaxQueueTime;
+    private Map<String, BulkheadLimits> bulkheads = new HashMap<>();
+    private long hedgeDelay;
+    private int hedgeMaxAttempts = 2;
+    private long cacheTtl = 60000;
+    private long cacheStaleTtl;
+    private boolean cacheErrors;
+    private long cacheMaxWeight = 10000;
+    private long cacheLoadTimeout = ResultCache.DEFAULT_LOAD_TIMEOUT;
+    private Map<String, CacheSettings> caches = new HashMap<>();
+    private boolean adaptiveConcurrency;
+    private int adaptiveInitialLimit = 20;
+    private int adaptiveMinLimit = 1;
+    private int adaptiveMaxLimit = 200;
+    private int adaptiveBackoffRatio = 90;
+    private int adaptiveLatencyTolerance = 200;
+    private long adaptiveLatencyWindow = AdaptiveLimiter.DEFAULT_LATENCY_WINDOW;
+    private BlockingExecutor.Type blockingExecutor = BlockingExecutor.Type.POOL;
+    private boolean metricsEnabled = true;
+    private int metricsMaxActions = HdrPatternMetrics.DEFAULT_MAX_ACTIONS;
 
     public int getDefaultRetryCount() {
       return defaultRetryCount;
@@ -50,5 +241,390 @@ public class PatternsModule extends ConfigurableModule<PatternsModule.Config> {
     public void setDefaultRetryCount(int defaultRetryCount) {
       this.defaultRetryCount = defaultRetryCount < 0 ? 0 : defaultRetryCount;
     }
+
+    public Backoff.Type getRetryBackoff() {
+      return retryBackoff;
+    }
+
+    public void setRetryBackoff(Backoff.Type retryBackoff) {
+      this.retryBackoff = retryBackoff == null ? Backoff.Type.NONE : retryBackoff;
+    }
+
+    public long getRetryDelay() {
+      return retryDelay;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+      this.retryDelay = retryDelay < 0 ? 0 : retryDelay;
+    }
+
+    public long getMaxRetryDelay() {
+      return maxRetryDelay;
+    }
+
+    public void setMaxRetryDelay(long maxRetryDelay) {
+      this.maxRetryDelay = maxRetryDelay < 0 ? 0 : maxRetryDelay;
+    }
+
+    public long getMaxRetryTime() {
+      return maxRetryTime;
+    }
+
+    public void setMaxRetryTime(long maxRetryTime) {
+      this.maxRetryTime = maxRetryTime < 0 ? 0 : maxRetryTime;
+    }
+
+    public boolean isRetryBudget() {
+      return retryBudget;
+    }
+
+    public void setRetryBudget(boolean retryBudget) {
+      this.retryBudget = retryBudget;
+    }
+
+    public int getRetryBudgetPercent() {
+      return retryBudgetPercent;
+    }
+
+    public void setRetryBudgetPercent(int retryBudgetPercent) {
+      this.retryBudgetPercent = retryBudgetPercent < 0 ? 0 : retryBudgetPercent;
+    }
+
+    public int getMaxPendingRetries() {
+      return maxPendingRetries;
+    }
+
+    public void setMaxPendingRetries(int maxPendingRetries) {
+      this.maxPendingRetries = maxPendingRetries < 0 ? 0 : maxPendingRetries;
+    }
+
+    public String getRetryJournal() {
+      return retryJournal;
+    }
+
+    public void setRetryJournal(String retryJournal) {
+      this.retryJournal = retryJournal;
+    }
+
+    public int getRetryJournalSize() {
+      return retryJournalSize;
+    }
+
+    public void setRetryJournalSize(int retryJournalSize) {
+      this.retryJournalSize = retryJournalSize < 1024 ? 1024 : retryJournalSize;
+    }
+
+    public long getRetryJournalSyncInterval() {
+      return retryJournalSyncInterval;
+    }
+
+    public void setRetryJournalSyncInterval(long retryJournalSyncInterval) {
+      this.retryJournalSyncInterval = retryJournalSyncInterval < 0 ? 0 : retryJournalSyncInterval;
+    }
+
+    public int getRetryBudgetMaxTokens() {
+      return retryBudgetMaxTokens;
+    }
+
+    public void setRetryBudgetMaxTokens(int retryBudgetMaxTokens) {
+      this.retryBudgetMaxTokens = retryBudgetMaxTokens < 1 ? 1 : retryBudgetMaxTokens;
+    }
+
+    public int getMaxConcurrency() {
+      return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+      this.maxConcurrency = maxConcurrency < 0 ? 0 : maxConcurrency;
+    }
+
+    public long getActionTimeout() {
+      return actionTimeout;
+    }
+
+    public void setActionTimeout(long actionTimeout) {
+      this.actionTimeout = actionTimeout < 0 ? 0 : actionTimeout;
+    }
+
+    public int getCircuitBreakerWindowSize() {
+      return circuitBreakerWindowSize;
+    }
+
+    public void setCircuitBreakerWindowSize(int circuitBreakerWindowSize) {
+      this.circuitBreakerWindowSize = circuitBreakerWindowSize < 1 ? 1 : circuitBreakerWindowSize;
+    }
+
+    public int getCircuitBreakerMinimumCalls() {
+      return circuitBreakerMinimumCalls;
+    }
+
+    public void setCircuitBreakerMinimumCalls(int circuitBreakerMinimumCalls) {
+      this.circuitBreakerMinimumCalls = circuitBreakerMinimumCalls < 1 ? 1 : circuitBreakerMinimumCalls;
+    }
+
+    public int getCircuitBreakerFailureRate() {
+      return circuitBreakerFailureRate;
+    }
+
+    public void setCircuitBreakerFailureRate(int circuitBreakerFailureRate) {
+      this.circuitBreakerFailureRate = Math.max(1, Math.min(100, circuitBreakerFailureRate));
+    }
+
+    public long getCircuitBreakerOpenTime() {
+      return circuitBreakerOpenTime;
+    }
+
+    public void setCircuitBreakerOpenTime(long circuitBreakerOpenTime) {
+      this.circuitBreakerOpenTime = circuitBreakerOpenTime < 0 ? 0 : circuitBreakerOpenTime;
+    }
+
+    public int getCircuitBreakerHalfOpenCalls() {
+      return circuitBreakerHalfOpenCalls;
+    }
+
+    public void setCircuitBreakerHalfOpenCalls(int circuitBreakerHalfOpenCalls) {
+      this.circuitBreakerHalfOpenCalls = circuitBreakerHalfOpenCalls < 1 ? 1 : circuitBreakerHalfOpenCalls;
+    }
+
+    public long getCircuitBreakerCallTimeout() {
+      return circuitBreakerCallTimeout;
+    }
+
+    public void setCircuitBreakerCallTimeout(long circuitBreakerCallTimeout) {
+      this.circuitBreakerCallTimeout = circuitBreakerCallTimeout < 0 ? 0 : circuitBreakerCallTimeout;
+    }
+
+    public int getBulkheadMaxConcurrency() {
+      return bulkheadMaxConcurrency;
+    }
+
+    public void setBulkheadMaxConcurrency(int bulkheadMaxConcurrency) {
+      this.bulkheadMaxConcurrency = bulkheadMaxConcurrency < 1 ? 1 : bulkheadMaxConcurrency;
+    }
+
+    public int getBulkheadMaxQueue() {
+      return bulkheadMaxQueue;
+    }
+
+    public void setBulkheadMaxQueue(int bulkheadMaxQueue) {
+      this.bulkheadMaxQueue = bulkheadMaxQueue < 0 ? 0 : bulkheadMaxQueue;
+    }
+
+    public long getBulkheadMaxQueueTime() {
+      return bulkheadMaxQueueTime;
+    }
+
+    public void setBulkheadMaxQueueTime(long bulkheadMaxQueueTime) {
+      this.bulkheadMaxQueueTime = bulkheadMaxQueueTime < 0 ? 0 : bulkheadMaxQueueTime;
+    }
+
+    public Map<String, BulkheadLimits> getBulkheads() {
+      return bulkheads;
+    }
+
+    public void setBulkheads(Map<String, BulkheadLimits> bulkheads) {
+      this.bulkheads = bulkheads == null ? new HashMap<>() : bulkheads;
+    }
+
+    public long getHedgeDelay() {
+      return hedgeDelay;
+    }
+
+    public void setHedgeDelay(long hedgeDelay) {
+      this.hedgeDelay = hedgeDelay < 0 ? 0 : hedgeDelay;
+    }
+
+    public int getHedgeMaxAttempts() {
+      return hedgeMaxAttempts;
+    }
+
+    public void setHedgeMaxAttempts(int hedgeMaxAttempts) {
+      this.hedgeMaxAttempts = hedgeMaxAttempts < 1 ? 1 : hedgeMaxAttempts;
+    }
+
+    public long getCacheTtl() {
+      return cacheTtl;
+    }
+
+    public void setCacheTtl(long cacheTtl) {
+      this.cacheTtl = cacheTtl < 0 ? 0 : cacheTtl;
+    }
+
+    public long getCacheStaleTtl() {
+      return cacheStaleTtl;
+    }
+
+    public void setCacheStaleTtl(long cacheStaleTtl) {
+      this.cacheStaleTtl = cacheStaleTtl < 0 ? 0 : cacheStaleTtl;
+    }
+
+    public boolean isCacheErrors() {
+      return cacheErrors;
+    }
+
+    public void setCacheErrors(boolean cacheErrors) {
+      this.cacheErrors = cacheErrors;
+    }
+
+    public long getCacheMaxWeight() {
+      return cacheMaxWeight;
+    }
+
+    public void setCacheMaxWeight(long cacheMaxWeight) {
+      this.cacheMaxWeight = cacheMaxWeight < 0 ? 0 : cacheMaxWeight;
+    }
+
+    public long getCacheLoadTimeout() {
+      return cacheLoadTimeout;
+    }
+
+    public void setCacheLoadTimeout(long cacheLoadTimeout) {
+      this.cacheLoadTimeout = cacheLoadTimeout < 0 ? 0 : cacheLoadTimeout;
+    }
+
+    public Map<String, CacheSettings> getCaches() {
+      return caches;
+    }
+
+    public void setCaches(Map<String, CacheSettings> caches) {
+      this.caches = caches == null ? new HashMap<>() : caches;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+      return adaptiveConcurrency;
+    }
+
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+      this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    public int getAdaptiveInitialLimit() {
+      return adaptiveInitialLimit;
+    }
+
+    public void setAdaptiveInitialLimit(int adaptiveInitialLimit) {
+      this.adaptiveInitialLimit = adaptiveInitialLimit < 1 ? 1 : adaptiveInitialLimit;
+    }
+
+    public int getAdaptiveMinLimit() {
+      return adaptiveMinLimit;
+    }
+
+    public void setAdaptiveMinLimit(int adaptiveMinLimit) {
+      this.adaptiveMinLimit = adaptiveMinLimit < 1 ? 1 : adaptiveMinLimit;
+    }
+
+    public int getAdaptiveMaxLimit() {
+      return adaptiveMaxLimit;
+    }
+
+    public void setAdaptiveMaxLimit(int adaptiveMaxLimit) {
+      this.adaptiveMaxLimit = adaptiveMaxLimit < 1 ? 1 : adaptiveMaxLimit;
+    }
+
+    public int getAdaptiveBackoffRatio() {
+      return adaptiveBackoffRatio;
+    }
+
+    public void setAdaptiveBackoffRatio(int adaptiveBackoffRatio) {
+      this.adaptiveBackoffRatio = adaptiveBackoffRatio < 10 ? 10 : adaptiveBackoffRatio > 100 ? 100 : adaptiveBackoffRatio;
+    }
+
+    public int getAdaptiveLatencyTolerance() {
+      return adaptiveLatencyTolerance;
+    }
+
+    public void setAdaptiveLatencyTolerance(int adaptiveLatencyTolerance) {
+      this.adaptiveLatencyTolerance = adaptiveLatencyTolerance < 100 ? 100 : adaptiveLatencyTolerance;
+    }
+
+    public long getAdaptiveLatencyWindow() {
+      return adaptiveLatencyWindow;
+    }
+
+    public void setAdaptiveLatencyWindow(long adaptiveLatencyWindow) {
+      this.adaptiveLatencyWindow = adaptiveLatencyWindow < 1 ? 1 : adaptiveLatencyWindow;
+    }
+
+    public BlockingExecutor.Type getBlockingExecutor() {
+      return blockingExecutor;
+    }
+
+    public void setBlockingExecutor(BlockingExecutor.Type blockingExecutor) {
+      this.blockingExecutor = blockingExecutor == null ? BlockingExecutor.Type.POOL : blockingExecutor;
+    }
+
+    public boolean isMetricsEnabled() {
+      return metricsEnabled;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+      this.metricsEnabled = metricsEnabled;
+    }
+
+    public int getMetricsMaxActions() {
+      return metricsMaxActions;
+    }
+
+    public void setMetricsMaxActions(int metricsMaxActions) {
+      this.metricsMaxActions = metricsMaxActions < 1 ? 1 : metricsMaxActions;
+    }
+
+    /**
+     * The settings of one cached action.
+     */
+    public static class CacheSettings {
+      private long ttl = 60000;
+      private long staleTtl;
+      private boolean cacheErrors;
+
+      public long getTtl() {
+        return ttl;
+      }
+
+      public void setTtl(long ttl) {
+        this.ttl = ttl < 0 ? 0 : ttl;
+      }
+
+      public long getStaleTtl() {
+        return staleTtl;
+      }
+
+      public void setStaleTtl(long staleTtl) {
+        this.staleTtl = staleTtl < 0 ? 0 : staleTtl;
+      }
+
+      public boolean isCacheErrors() {
+        return cacheErrors;
+      }
+
+      public void setCacheErrors(boolean cacheErrors) {
+        this.cacheErrors = cacheErrors;
+      }
+    }
+
+    /**
+     * The limits of one bulkhead group.
+     */
+    public static class BulkheadLimits {
+      private int maxConcurrency = 10;
+      private int maxQueue = 10;
+
+      public int getMaxConcurrency() {
+        return maxConcurrency;
+      }
+
+      public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency < 1 ? 1 : maxConcurrency;
+      }
+
+      public int getMaxQueue() {
+        return maxQueue;
+      }
+
+      public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue < 0 ? 0 : maxQueue;
+      }
+    }
   }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import java.util.Objects;
+
+/**
+ * The identity of action execution: the name of the action and its data, compared with {@code equals}.
+ */
+final class ActionKey {
+  private final String name;
+  private final Object data;
+
+  ActionKey(String name, Object data) {
+    this.name = name;
+    this.data = data;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ActionKey)) {
+      return false;
+    }
+    ActionKey other = (ActionKey) o;
+    return Objects.equals(name, other.name) && Objects.equals(data, other.data);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Objects.hashCode(name) + Objects.hashCode(data);
+  }
+}
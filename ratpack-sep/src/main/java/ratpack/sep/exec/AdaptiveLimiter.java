@@ -0,0 +1,300 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.registry.Registry;
+import ratpack.sep.PatternsModule;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The limit of actions executed at once by all patterns, adjusted to observed latency and errors.
+ * <p>
+ * Instance bound by {@link PatternsModule} is found by patterns in the registry. It is disabled by default.
+ * Action started above the limit is not executed and its result is {@link ratpack.sep.ActionResult#LOAD_SHED_CODE} error.
+ * <p>
+ * The limit follows AIMD (additive increase, multiplicative decrease) driven by latency gradient. The lowest latency of
+ * successful executions of the action observed within the last {@code latencyWindow} is taken as its latency without
+ * load, so the baseline of every action follows backend latency changing over time and a fast action does not make
+ * slower ones look overloaded. If action failed or its latency exceeds its lowest one more than {@code latencyTolerance}
+ * times, the backend is considered overloaded and the limit is multiplied by {@code backoffRatio}. The limit decreases at
+ * most once per round trip: executions started before the last decrease were sent at the load that caused it, so their
+ * failures do not decrease the limit again and a burst of timeouts does not collapse it.
+ * Otherwise, if at least half of the limit is in use, the limit grows by {@code 1 / limit}, i.e. about one per
+ * the whole limit of successful executions. The limit stays between {@code minLimit} and {@code maxLimit}.
+ * <p>
+ * Executions short-circuited by patterns (e.g. open circuit breaker) and inline actions do not reach the backend, so they
+ * are {@link #cancel() cancelled} and do not adjust the limit.
+ * <p>
+ * Counting and adjustments of the limit are lock-free, only the latency baseline of every action is updated under its
+ * own lock. Baselines are kept for at most {@value #MAX_ACTIONS} action names, other actions share one baseline.
+ *
+ * @see ratpack.sep.exec.Timeout
+ */
+public class AdaptiveLimiter {
+
+  /**
+   * The default time in milliseconds the lowest latency of the action is remembered.
+   *
+   * Value: {@value}
+   */
+  public static final long DEFAULT_LATENCY_WINDOW = 10000;
+
+  /**
+   * The maximum number of action names with own latency baseline.
+   *
+   * Value: {@value}
+   */
+  public static final int MAX_ACTIONS = 1000;
+
+  private static final String SHARED = "";
+
+  private final boolean enabled;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final double latencyTolerance;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong limit;
+  private final AtomicLong lastDecrease;
+  private final long latencyWindow;
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, Baseline> baselines = new ConcurrentHashMap<>();
+  private final AtomicLong shed = new AtomicLong();
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public AdaptiveLimiter(PatternsModule.Config config) {
+    this(config.isAdaptiveConcurrency(),
+      config.getAdaptiveInitialLimit(),
+      config.getAdaptiveMinLimit(),
+      config.getAdaptiveMaxLimit(),
+      config.getAdaptiveBackoffRatio() / 100.0,
+      config.getAdaptiveLatencyTolerance() / 100.0,
+      config.getAdaptiveLatencyWindow());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param enabled if false actions are never shed
+   * @param initialLimit the limit before any execution finished
+   * @param minLimit the minimum limit
+   * @param maxLimit the maximum limit
+   * @param backoffRatio the ratio the limit is multiplied by when backend is overloaded, between {@code 0} and {@code 1}
+   * @param latencyTolerance how many times latency can exceed the lowest latency before backend is considered overloaded
+   */
+  public AdaptiveLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit, double backoffRatio, double latencyTolerance) {
+    this(enabled, initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance, DEFAULT_LATENCY_WINDOW);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param enabled if false actions are never shed
+   * @param initialLimit the limit before any execution finished
+   * @param minLimit the minimum limit
+   * @param maxLimit the maximum limit
+   * @param backoffRatio the ratio the limit is multiplied by when backend is overloaded, between {@code 0} and {@code 1}
+   * @param latencyTolerance how many times latency can exceed the lowest latency before backend is considered overloaded
+   * @param latencyWindow the time in milliseconds the lowest latency of the action is remembered
+   */
+  public AdaptiveLimiter(boolean enabled,
+                         int initialLimit,
+                         int minLimit,
+                         int maxLimit,
+                         double backoffRatio,
+                         double latencyTolerance,
+                         long latencyWindow) {
+    this(enabled, initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance, latencyWindow, System::nanoTime);
+  }
+
+  AdaptiveLimiter(boolean enabled,
+                  int initialLimit,
+                  int minLimit,
+                  int maxLimit,
+                  double backoffRatio,
+                  double latencyTolerance,
+                  long latencyWindow,
+                  LongSupplier clock) {
+    this.enabled = enabled;
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.backoffRatio = Math.max(0.1, Math.min(1.0, backoffRatio));
+    this.latencyTolerance = Math.max(1.0, latencyTolerance);
+    this.limit = new AtomicLong(Double.doubleToLongBits(Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit))));
+    this.latencyWindow = TimeUnit.MILLISECONDS.toNanos(Math.max(1, latencyWindow));
+    this.clock = clock;
+    this.lastDecrease = new AtomicLong(clock.getAsLong());
+  }
+
+  /**
+   * The enabled limiter registered in the given registry.
+   *
+   * @param registry the registry
+   * @return the limiter or {@code null} if not registered or disabled
+   */
+  public static AdaptiveLimiter of(Registry registry) {
+    AdaptiveLimiter limiter = registry == null ? null : registry.maybeGet(AdaptiveLimiter.class).orElse(null);
+    return limiter != null && limiter.enabled ? limiter : null;
+  }
+
+  /**
+   * The current limit.
+   *
+   * @return the number of actions allowed to execute at once
+   */
+  public int getLimit() {
+    return (int) Double.longBitsToDouble(limit.get());
+  }
+
+  /**
+   * The number of actions executing now.
+   *
+   * @return the number of actions in flight
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * The number of actions not executed, because the limit was reached.
+   *
+   * @return the number of shed actions
+   */
+  public long getShed() {
+    return shed.get();
+  }
+
+  /**
+   * Tries to start action execution.
+   *
+   * @return true if action can execute, false if it has to be shed
+   */
+  public boolean tryAcquire() {
+    if (inFlight.incrementAndGet() > getLimit()) {
+      inFlight.decrementAndGet();
+      shed.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Finishes action execution and adjusts the limit, comparing latency with the baseline shared by all actions.
+   *
+   * @param latency the latency of the execution in nanoseconds
+   * @param success true if the execution succeeded
+   * @see #release(String, long, boolean)
+   */
+  public void release(long latency, boolean success) {
+    release(null, latency, success);
+  }
+
+  /**
+   * Finishes action execution and adjusts the limit, comparing latency with the baseline of the action.
+   *
+   * @param action the name of the action
+   * @param latency the latency of the execution in nanoseconds
+   * @param success true if the execution succeeded
+   */
+  public void release(String action, long latency, boolean success) {
+    int used = inFlight.getAndDecrement();
+    long now = clock.getAsLong();
+    long lowest = baseline(action).update(now, latency, success);
+    boolean overloaded = !success || latency > Math.min(lowest, latency) * latencyTolerance;
+    if (overloaded && !claimDecrease(now, latency)) {
+      return;
+    }
+    while (true) {
+      long bits = limit.get();
+      double current = Double.longBitsToDouble(bits);
+      double next;
+      if (overloaded) {
+        next = Math.max(minLimit, current * backoffRatio);
+      } else if (used * 2 >= current) {
+        next = Math.min(maxLimit, current + 1.0 / current);
+      } else {
+        return;
+      }
+      if (next == current || limit.compareAndSet(bits, Double.doubleToLongBits(next))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Finishes action execution without adjusting the limit, e.g. when the execution was short-circuited and did not reach
+   * the backend.
+   */
+  public void cancel() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Claims the decrease of the limit for execution started at {@code now - latency}, unless it started before the last
+   * decrease.
+   */
+  private boolean claimDecrease(long now, long latency) {
+    long last = lastDecrease.get();
+    return now - latency - last >= 0 && lastDecrease.compareAndSet(last, now);
+  }
+
+  private Baseline baseline(String action) {
+    String key = action == null ? SHARED : action;
+    Baseline baseline = baselines.get(key);
+    if (baseline == null) {
+      if (baselines.size() >= MAX_ACTIONS) {
+        key = SHARED;
+      }
+      baseline = baselines.computeIfAbsent(key, k -> new Baseline());
+    }
+    return baseline;
+  }
+
+  /**
+   * The lowest latency of successful executions within the last one or two windows.
+   * The minimum of the previous window is kept, so the baseline never starts from scratch.
+   */
+  private final class Baseline {
+    private long windowStart = clock.getAsLong();
+    private long current = Long.MAX_VALUE;
+    private long previous = Long.MAX_VALUE;
+
+    synchronized long update(long now, long latency, boolean success) {
+      long elapsed = now - windowStart;
+      if (elapsed >= latencyWindow) {
+        previous = elapsed >= 2 * latencyWindow ? Long.MAX_VALUE : current;
+        current = Long.MAX_VALUE;
+        windowStart = now;
+      }
+      if (success && latency < current) {
+        current = latency;
+      }
+      return Math.min(current, previous);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.sep.Action;
+import ratpack.sep.ActionResults;
+
+/**
+ * The listener notified when asynchronous retries of {@link InvokeWithRetry} finish.
+ * <p>
+ * Listener registered in the registry, e.g. bound in Guice module or added to the request registry, receives the final
+ * results of every action retried in background. If retries were not executed, because {@link RetryBudget} or
+ * {@link PendingRetries} did not allow them, the result is {@link ratpack.sep.ActionResult#RETRY_SUPPRESSED_CODE} error.
+ * <p>
+ * Listener is called on the event loop and should not block.
+ *
+ * <pre class="java">{@code
+ * ctx.getRequest().add(AsyncRetryListener.class, (action, results, attempts) ->
+ *   LOG.info("Write {} finished with {} after {} attempts", action.getData(), results.getResults(), attempts));
+ * ctx.render(pattern.apply(ctx, ctx, writeAction, 5, true));
+ * }</pre>
+ *
+ * @see ratpack.sep.exec.InvokeWithRetry
+ */
+@FunctionalInterface
+public interface AsyncRetryListener {
+
+  /**
+   * Called when asynchronous retries of {@code action} finish.
+   *
+   * @param action the retried action
+   * @param results the final result of the action
+   * @param attempts the number of executions of the action, including the first one
+   * @throws Exception any
+   */
+  void completed(Action<?, ?> action, ActionResults<?> results, int attempts) throws Exception;
+}
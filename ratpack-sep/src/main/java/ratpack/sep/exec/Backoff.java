@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The policy of delays between retries of the failed action.
+ * <p>
+ * Policy calculates the delay before the next retry, taking into account the number of the retry, previous delay
+ * and the time elapsed since the first execution of the action.
+ * Negative delay ({@link #STOP}) means, that action should not be retried any more.
+ * <p>
+ * Available policies:
+ * <ul>
+ *   <li><b>none</b> - retry immediately</li>
+ *   <li><b>fixed</b> - the same delay before every retry</li>
+ *   <li><b>exponential</b> - the delay is multiplied for every subsequent retry</li>
+ *   <li><b>decorrelated jitter</b> - random delay between the base delay and three times the previous delay</li>
+ * </ul>
+ *
+ * @see ratpack.sep.exec.InvokeWithRetry
+ */
+@FunctionalInterface
+public interface Backoff {
+
+  /**
+   * The delay that stops retries.
+   *
+   * Value: {@value}
+   */
+  long STOP = -1;
+
+  /**
+   * The type of backoff policy, used in {@link ratpack.sep.PatternsModule.Config}.
+   */
+  enum Type {
+    NONE, FIXED, EXPONENTIAL, DECORRELATED_JITTER
+  }
+
+  /**
+   * Calculates the delay before the next retry.
+   *
+   * @param retry the number of the next retry, starting from {@code 1}
+   * @param previousDelay the delay before the previous retry in milliseconds, {@code 0} before the first retry
+   * @param elapsed the time in milliseconds elapsed since the first execution of the action
+   * @return the delay in milliseconds or {@link #STOP} if action should not be retried
+   */
+  long delay(int retry, long previousDelay, long elapsed);
+
+  /**
+   * Limits every delay to {@code maxDelay}.
+   *
+   * @param maxDelay the maximum delay in milliseconds. If {@code 0} the delay is not limited.
+   * @return the policy with limited delay
+   */
+  default Backoff withMaxDelay(long maxDelay) {
+    if (maxDelay <= 0) {
+      return this;
+    }
+    return (retry, previousDelay, elapsed) -> {
+      long delay = delay(retry, previousDelay, elapsed);
+      return delay < 0 ? delay : Math.min(delay, maxDelay);
+    };
+  }
+
+  /**
+   * Stops retries if the next retry would start after {@code maxTime} since the first execution of the action.
+   *
+   * @param maxTime the maximum time of all retries in milliseconds. If {@code 0} the time is not limited.
+   * @return the policy with limited time of retries
+   */
+  default Backoff withMaxTime(long maxTime) {
+    if (maxTime <= 0) {
+      return this;
+    }
+    return (retry, previousDelay, elapsed) -> {
+      long delay = delay(retry, previousDelay, elapsed);
+      return delay < 0 || elapsed + delay > maxTime ? STOP : delay;
+    };
+  }
+
+  /**
+   * Retries immediately.
+   *
+   * @return the policy without delays
+   */
+  static Backoff none() {
+    return (retry, previousDelay, elapsed) -> 0;
+  }
+
+  /**
+   * Waits the same {@code delay} before every retry.
+   *
+   * @param delay the delay in milliseconds
+   * @return the policy with fixed delay
+   */
+  static Backoff fixed(long delay) {
+    return (retry, previousDelay, elapsed) -> delay;
+  }
+
+  /**
+   * Waits {@code delay * multiplier^(retry - 1)} before every retry.
+   *
+   * @param delay the delay before the first retry in milliseconds
+   * @param multiplier the multiplier of every subsequent delay
+   * @return the policy with exponential delay
+   */
+  static Backoff exponential(long delay, double multiplier) {
+    return (retry, previousDelay, elapsed) -> {
+      double next = delay * Math.pow(multiplier, retry - 1);
+      return next >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) next;
+    };
+  }
+
+  /**
+   * Waits random time between {@code delay} and three times the previous delay, but no more than {@code maxDelay}.
+   * <p>
+   * Randomized delays spread retries of many clients, so recovering service is not hit by all of them at the same time.
+   *
+   * @param delay the base delay in milliseconds
+   * @param maxDelay the maximum delay in milliseconds
+   * @return the policy with decorrelated jitter delay
+   */
+  static Backoff decorrelatedJitter(long delay, long maxDelay) {
+    return (retry, previousDelay, elapsed) -> {
+      long upper = Math.max(delay, previousDelay * 3);
+      long next = upper > delay ? ThreadLocalRandom.current().nextLong(delay, upper + 1) : delay;
+      return Math.min(next, maxDelay);
+    };
+  }
+
+  /**
+   * Creates the policy of the given type.
+   *
+   * @param type the type of the policy
+   * @param delay the base delay in milliseconds
+   * @param maxDelay the maximum delay in milliseconds. If {@code 0} the delay is not limited.
+   * @param maxTime the maximum time of all retries in milliseconds. If {@code 0} the time is not limited.
+   * @return the policy
+   */
+  static Backoff of(Type type, long delay, long maxDelay, long maxTime) {
+    Backoff backoff;
+    switch (type == null ? Type.NONE : type) {
+      case FIXED:
+        backoff = fixed(delay);
+        break;
+      case EXPONENTIAL:
+        backoff = exponential(delay, 2);
+        break;
+      case DECORRELATED_JITTER:
+        backoff = decorrelatedJitter(delay, maxDelay > 0 ? maxDelay : Long.MAX_VALUE);
+        break;
+      default:
+        backoff = none();
+    }
+    return backoff.withMaxDelay(maxDelay).withMaxTime(maxTime);
+  }
+}
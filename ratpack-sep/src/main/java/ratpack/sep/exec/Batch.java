@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.exec.ExecControl;
+import ratpack.exec.Fulfiller;
+import ratpack.exec.Promise;
+import ratpack.func.BiFunction;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets executions of single item actions to be collected and executed as one batch call.
+ *
+ * Executions of actions decorated by the batch are collected for {@code window} milliseconds from the first one, or until
+ * {@code maxSize} different items are collected. Then the batch function is called with data of all collected actions and
+ * every action gets the result of its own data. Executions with the same data share the result.
+ * Actions not found in the batch result and all actions of the failed batch are reported as errors.
+ *
+ * Batching is not visible to patterns. Batch could be shared by many requests, so it should be created once.
+ *
+ * <pre class="java">{@code
+ * Batch<Long, User> users = new Batch<>(100, 5, (execControl, ids) -> userService.getAll(execControl, ids));
+ * List<Action<Long, User>> actions = ids.stream().map(id -> users.action("user_" + id, id)).collect(toList());
+ * ctx.render(parallel.apply(ctx, ctx, actions));
+ * }</pre>
+ *
+ * @param <T> a type of data of single item action
+ * @param <O> a type of data returned by single item action
+ * @see ratpack.sep.exec.Parallel
+ */
+public class Batch<T, O> {
+  private final int maxSize;
+  private final long window;
+  private final BiFunction<? super ExecControl, List<T>, Promise<Map<T, ActionResult<O>>>> func;
+  private Map<T, List<Fulfiller<ActionResult<O>>>> pending;
+
+  /**
+   * Constructor
+   *
+   * @param maxSize the maximum number of different items in one batch
+   * @param window the time in milliseconds executions are collected. If {@code 0} executions are not collected,
+   *               every execution calls the batch function with its own item only.
+   * @param func the batch call, providing results by data of single item actions
+   */
+  public Batch(int maxSize, long window, BiFunction<? super ExecControl, List<T>, Promise<Map<T, ActionResult<O>>>> func) {
+    this.maxSize = Math.max(1, maxSize);
+    this.window = Math.max(0, window);
+    this.func = func;
+  }
+
+  /**
+   * Creates single item action executed by the batch.
+   *
+   * @param name the name of the action
+   * @param data the data of the action, the item passed to the batch call
+   * @return the action
+   */
+  public Action<T, O> action(String name, T data) {
+    return Action.of(name, data, this::submit);
+  }
+
+  /**
+   * Decorates single item {@code action}, so it is executed by the batch instead of on its own.
+   *
+   * @param action the action to decorate
+   * @return the batched action
+   */
+  public Action<T, O> wrap(Action<T, O> action) {
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        return exec(execControl, getData());
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+        return submit(execControl, t);
+      }
+    };
+  }
+
+  private Promise<ActionResult<O>> submit(ExecControl execControl, T item) {
+    return execControl.promise(fulfiller -> {
+      Map<T, List<Fulfiller<ActionResult<O>>>> batch;
+      boolean first = false;
+      boolean full = false;
+      synchronized (this) {
+        if (pending == null) {
+          pending = new LinkedHashMap<>();
+          first = true;
+        }
+        batch = pending;
+        List<Fulfiller<ActionResult<O>>> fulfillers = batch.get(item);
+        if (fulfillers == null) {
+          fulfillers = new ArrayList<>(1);
+          batch.put(item, fulfillers);
+        }
+        fulfillers.add(fulfiller);
+        if (batch.size() >= maxSize || window == 0) {
+          pending = null;
+          full = true;
+        }
+      }
+      if (full) {
+        dispatch(execControl, batch);
+      } else if (first) {
+        execControl.getController().getExecutor().schedule(() -> flush(execControl, batch), window, TimeUnit.MILLISECONDS);
+      }
+    });
+  }
+
+  private void flush(ExecControl execControl, Map<T, List<Fulfiller<ActionResult<O>>>> batch) {
+    synchronized (this) {
+      if (pending != batch) {
+        // already dispatched as full batch
+        return;
+      }
+      pending = null;
+    }
+    dispatch(execControl, batch);
+  }
+
+  private void dispatch(ExecControl execControl, Map<T, List<Fulfiller<ActionResult<O>>>> batch) {
+    List<T> items = new ArrayList<>(batch.keySet());
+    execControl.exec().start(execution -> {
+      Promise<Map<T, ActionResult<O>>> promise;
+      try {
+        promise = func.apply(execution, items);
+      } catch (Exception ex) {
+        fail(batch, ex);
+        return;
+      }
+      promise
+        .onError(ex -> fail(batch, ex))
+        .then(results -> batch.forEach((item, fulfillers) -> {
+          ActionResult<O> result = results == null ? null : results.get(item);
+          if (result == null) {
+            result = ActionResult.error(new NoSuchElementException("No result in batch for: " + item));
+          }
+          for (Fulfiller<ActionResult<O>> fulfiller : fulfillers) {
+            fulfiller.success(result);
+          }
+        }));
+    });
+  }
+
+  private void fail(Map<T, List<Fulfiller<ActionResult<O>>>> batch, Throwable error) {
+    ActionResult<O> result = ActionResult.error(error);
+    batch.values().forEach(fulfillers -> fulfillers.forEach(fulfiller -> fulfiller.success(result)));
+  }
+}
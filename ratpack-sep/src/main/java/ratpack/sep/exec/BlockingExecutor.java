@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ratpack.sep.exec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.func.Function;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.PatternsModule;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The backend executing blocking operations of actions.
+ * <p>
+ * By default operations are executed by {@link ExecControl#blocking(Callable)} on the blocking thread pool of Ratpack.
+ * With {@link Type#VIRTUAL} every operation is executed on its own virtual thread, so thousands of actions waiting for
+ * JDBC or legacy clients at once do not occupy a platform thread each. Virtual threads are looked up at runtime,
+ * if the JVM does not support them the blocking thread pool is used.
+ * <p>
+ * In both cases the operation returns the promise, that is fulfilled on the event loop thread of the calling execution.
+ *
+ * <pre class="java">{@code
+ * BlockingExecutor blocking = BlockingExecutor.of(context);
+ * Action<String, String> action = blocking.action("foo", "data", data -> ActionResult.success(null, jdbcQuery(data)));
+ * }</pre>
+ */
+public class BlockingExecutor implements AutoCloseable {
+
+  /**
+   * The type of backend.
+   */
+  public enum Type {
+    /**
+     * The blocking thread pool of Ratpack.
+     */
+    POOL,
+    /**
+     * The virtual thread per operation.
+     */
+    VIRTUAL
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockingExecutor.class);
+
+  private static final BlockingExecutor DEFAULT = new BlockingExecutor(Type.POOL);
+
+  private final ExecutorService executor;
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public BlockingExecutor(PatternsModule.Config config) {
+    this(config.getBlockingExecutor());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param type the type of backend
+   */
+  public BlockingExecutor(Type type) {
+    this.executor = type == Type.VIRTUAL ? virtualThreadExecutor() : null;
+  }
+
+  /**
+   * The executor registered in the given registry.
+   *
+   * @param registry the registry
+   * @return the executor or the one using the blocking thread pool if not registered
+   */
+  public static BlockingExecutor of(Registry registry) {
+    return registry == null ? DEFAULT : registry.maybeGet(BlockingExecutor.class).orElse(DEFAULT);
+  }
+
+  /**
+   * The type of backend actually used.
+   *
+   * @return the type, {@link Type#POOL} if virtual threads are not supported
+   */
+  public Type getType() {
+    return executor == null ? Type.POOL : Type.VIRTUAL;
+  }
+
+  /**
+   * Executes the blocking operation.
+   *
+   * @param execControl an execution control
+   * @param operation the blocking operation
+   * @param <O> the type of the operation result
+   * @return the promise for the operation result
+   */
+  public <O> Promise<O> blocking(ExecControl execControl, Callable<O> operation) {
+    if (executor == null) {
+      return execControl.blocking(operation);
+    }
+    return execControl.promise(fulfiller -> executor.execute(() -> {
+      O value;
+      try {
+        value = operation.call();
+      } catch (Throwable ex) {
+        fulfiller.error(ex);
+        return;
+      }
+      fulfiller.success(value);
+    }));
+  }
+
+  /**
+   * Creates the action, which implementation is executed as blocking operation.
+   *
+   * @param name the name of the action
+   * @param data the data of the action
+   * @param func the blocking action implementation
+   * @param <T> the type of the action data
+   * @param <O> the type of the action result data
+   * @return the action
+   */
+  public <T, O> Action<T, O> action(String name, T data, Function<? super T, ActionResult<O>> func) {
+    return Action.of(name, data, (execControl, t) -> blocking(execControl, () -> func.apply(t)));
+  }
+
+  /**
+   * Stops accepting operations of virtual threads. Pending operations are finished.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      LOG.warn("Virtual threads are not supported by this JVM, blocking actions are executed on the blocking thread pool");
+      return null;
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.func.Function;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.metrics.PatternMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets actions of one group to execute in isolation from actions of other groups.
+ * <p>
+ * Every group has its own limit of concurrently executed actions and its own bounded queue of waiting actions,
+ * so one slow backend can not take all the capacity. Action that does not fit into the group is rejected immediately
+ * with {@link ActionResult#BULKHEAD_FULL_CODE} error. Queued action that waits longer than the max queue time of
+ * {@link Bulkheads} or the {@link Deadline} from registry is dropped with {@link ActionResult#TIMEOUT_CODE} error,
+ * without executing it. Running action is limited by the action timeout of {@link Bulkheads} and the deadline, so it
+ * releases its place in the group even if its backend hangs.
+ * <p>
+ * By default the group is the prefix of action name up to the first {@code '.'}, e.g. {@code "users.get"} belongs to
+ * {@code "users"} group.
+ * <p>
+ * Groups state is kept by {@link Bulkheads} found in the registry (bound by {@link ratpack.sep.PatternsModule}),
+ * so it is shared across requests. If registry does not contain {@link Bulkheads} the pattern's own instance is used.
+ *
+ * <pre class="java">{@code
+ * Bulkhead<String, String> bulkhead = new Bulkhead<>();
+ * ctx.render(new Parallel<String, String>().apply(ctx, ctx, bulkhead.wrap(ctx, actions)));
+ * }</pre>
+ *
+ * @see ratpack.sep.exec.Bulkheads
+ */
+public class Bulkhead<T, O> {
+
+  /**
+   * The name of the pattern that indicates pattern to execute in handler.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "bulkhead";
+
+  private final Bulkheads bulkheads;
+  private final Function<? super Action<T, O>, String> groupBy;
+
+  /**
+   * Constructor
+   * <p>
+   * Groups actions by the name prefix. Uses default limits if registry does not contain {@link Bulkheads}.
+   */
+  public Bulkhead() {
+    this(new Bulkheads(), byNamePrefix("."));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param bulkheads the groups used if registry does not contain {@link Bulkheads}
+   * @param groupBy the function that provides the group of the action
+   */
+  public Bulkhead(Bulkheads bulkheads, Function<? super Action<T, O>, String> groupBy) {
+    this.bulkheads = bulkheads;
+    this.groupBy = groupBy;
+  }
+
+  /**
+   * Groups actions by the name prefix up to the first {@code separator}.
+   * Action which name does not contain {@code separator} has its own group.
+   *
+   * @param separator the separator of the group in the action name
+   * @param <T> a type of data processed by action
+   * @param <O> a type of data returned by action
+   * @return the group of the action
+   */
+  public static <T, O> Function<Action<T, O>, String> byNamePrefix(String separator) {
+    return action -> {
+      String name = action.getName();
+      int idx = name.indexOf(separator);
+      return idx < 0 ? name : name.substring(0, idx);
+    };
+  }
+
+  /**
+   * The name of the pattern.
+   *
+   * @return the name of the pattern
+   */
+  public String getName() {
+    return PATTERN_NAME;
+  }
+
+  /**
+   * Executes {@code action} if there is room in its group.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param action an action to execute
+   * @return the promise for action results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, Action<T, O> action) throws Exception {
+    if (action == null) {
+      return execControl.promiseOf(new ActionResults<O>(ImmutableMap.of()));
+    }
+    return PatternMetrics.of(registry).time(PATTERN_NAME, Timeout.exec(execControl, registry, wrap(registry, action), 0)
+      .map(result -> new ActionResults<O>(ImmutableMap.of(action.getName(), result))));
+  }
+
+  /**
+   * Decorates every action with the bulkhead of its group.
+   *
+   * @param registry the server registry
+   * @param actions the actions to isolate
+   * @return the isolated actions
+   * @throws Exception any
+   */
+  public Iterable<Action<T, O>> wrap(Registry registry, Iterable<Action<T, O>> actions) throws Exception {
+    ImmutableList.Builder<Action<T, O>> wrapped = ImmutableList.builder();
+    for (Action<T, O> action : actions) {
+      wrapped.add(action == null || action.getName() == null ? action : wrap(registry, action));
+    }
+    return wrapped.build();
+  }
+
+  /**
+   * Decorates {@code action} with the bulkhead of its group, so it could be executed by other patterns.
+   *
+   * @param registry the server registry
+   * @param action the action to isolate
+   * @return the isolated action
+   * @throws Exception any
+   */
+  public Action<T, O> wrap(Registry registry, Action<T, O> action) throws Exception {
+    Bulkheads groups = registry == null ? bulkheads : registry.maybeGet(Bulkheads.class).orElse(bulkheads);
+    String group = groupBy.apply(action);
+    Bulkheads.Compartment compartment = groups.compartment(group);
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        return exec(execControl, getData());
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+        return execControl.promise(fulfiller -> {
+          AtomicBoolean started = new AtomicBoolean();
+          Runnable task = () -> {
+            started.set(true);
+            // the action is limited inside the slot, so abandoned hanging call can not hold it forever
+            execControl.exec().start(execution -> Timeout
+              .limit(execution, registry, groups.getActionTimeout(), ec -> action.exec(ec, t))
+              .then(result -> {
+                try {
+                  compartment.release();
+                } finally {
+                  fulfiller.success(result);
+                }
+              }));
+          };
+          if (!compartment.submit(task)) {
+            fulfiller.success(ActionResult.error(ActionResult.BULKHEAD_FULL_CODE, "Bulkhead is full for group: " + group));
+            return;
+          }
+          long maxWait = started.get() ? 0 : queueTime(registry, groups);
+          if (maxWait > 0) {
+            // the caller does not wait for queued action longer, so it is dropped instead of taking the slot
+            execControl.getController().getExecutor().schedule(() -> {
+              if (compartment.cancel(task)) {
+                fulfiller.success(ActionResult.error(ActionResult.TIMEOUT_CODE, "Action waited in bulkhead queue of group "
+                  + group + " for " + TimeUnit.NANOSECONDS.toMillis(maxWait) + " ms"));
+              }
+            }, maxWait, TimeUnit.NANOSECONDS);
+          }
+        });
+      }
+    };
+  }
+
+  private static long queueTime(Registry registry, Bulkheads groups) {
+    long wait = TimeUnit.MILLISECONDS.toNanos(groups.getMaxQueueTime());
+    Deadline deadline = Deadline.of(registry);
+    if (deadline != null) {
+      long remaining = Math.max(1, deadline.remainingNanos());
+      wait = wait > 0 ? Math.min(wait, remaining) : remaining;
+    }
+    return wait;
+  }
+}
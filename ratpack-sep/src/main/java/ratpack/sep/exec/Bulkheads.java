@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.Maps;
+import ratpack.sep.PatternsModule;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The compartments of concurrently executed actions, one for every group of actions.
+ * <p>
+ * Instance bound by {@link PatternsModule} is shared by all {@link Bulkhead} patterns, that find it in the registry.
+ * <p>
+ * Every group executes no more than {@code maxConcurrency} actions at once. Next {@code maxQueue} actions wait in the
+ * queue and start as soon as one of running actions finishes. Any other action is rejected immediately.
+ * <p>
+ * Queued action is dropped when it waits longer than {@code maxQueueTime} or the {@link Deadline} of its request passes,
+ * because its caller does not wait for it any more. Running action keeps its place no longer than {@code actionTimeout}
+ * and the deadline, so hanging backend calls do not fill the group forever.
+ *
+ * @see ratpack.sep.exec.Bulkhead
+ */
+public class Bulkheads {
+  private final ConcurrentMap<String, Compartment> compartments = Maps.newConcurrentMap();
+  private final int defaultMaxConcurrency;
+  private final int defaultMaxQueue;
+  private final long maxQueueTime;
+  private final long actionTimeout;
+  private final Map<String, PatternsModule.Config.BulkheadLimits> limits;
+
+  /**
+   * Constructor
+   * <p>
+   * Every group executes no more than 10 actions at once and queues no more than 10 actions.
+   */
+  public Bulkheads() {
+    this(new PatternsModule.Config());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public Bulkheads(PatternsModule.Config config) {
+    this(config.getBulkheadMaxConcurrency(),
+      config.getBulkheadMaxQueue(),
+      config.getBulkheadMaxQueueTime() > 0 ? config.getBulkheadMaxQueueTime() : config.getActionTimeout(),
+      config.getActionTimeout(),
+      config.getBulkheads());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultMaxConcurrency the maximum number of actions executed at once by a group without its own limits
+   * @param defaultMaxQueue the maximum number of actions waiting in a group without its own limits
+   * @param limits the limits of particular groups
+   */
+  public Bulkheads(int defaultMaxConcurrency, int defaultMaxQueue, Map<String, PatternsModule.Config.BulkheadLimits> limits) {
+    this(defaultMaxConcurrency, defaultMaxQueue, 0, 0, limits);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultMaxConcurrency the maximum number of actions executed at once by a group without its own limits
+   * @param defaultMaxQueue the maximum number of actions waiting in a group without its own limits
+   * @param maxQueueTime the maximum time in milliseconds action waits in the queue. If {@code 0} the time is limited by
+   *                     the deadline only.
+   * @param limits the limits of particular groups
+   */
+  public Bulkheads(int defaultMaxConcurrency,
+                   int defaultMaxQueue,
+                   long maxQueueTime,
+                   Map<String, PatternsModule.Config.BulkheadLimits> limits) {
+    this(defaultMaxConcurrency, defaultMaxQueue, maxQueueTime, 0, limits);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultMaxConcurrency the maximum number of actions executed at once by a group without its own limits
+   * @param defaultMaxQueue the maximum number of actions waiting in a group without its own limits
+   * @param maxQueueTime the maximum time in milliseconds action waits in the queue. If {@code 0} the time is limited by
+   *                     the deadline only.
+   * @param actionTimeout the maximum time in milliseconds action holds its place in the group. If {@code 0} the time is
+   *                      limited by the deadline only.
+   * @param limits the limits of particular groups
+   */
+  public Bulkheads(int defaultMaxConcurrency,
+                   int defaultMaxQueue,
+                   long maxQueueTime,
+                   long actionTimeout,
+                   Map<String, PatternsModule.Config.BulkheadLimits> limits) {
+    this.defaultMaxConcurrency = defaultMaxConcurrency;
+    this.defaultMaxQueue = defaultMaxQueue;
+    this.maxQueueTime = Math.max(0, maxQueueTime);
+    this.actionTimeout = Math.max(0, actionTimeout);
+    this.limits = limits;
+  }
+
+  /**
+   * The number of actions currently executed by the group.
+   *
+   * @param group the name of the group
+   * @return the number of running actions
+   */
+  public int getActive(String group) {
+    Compartment compartment = compartments.get(group);
+    return compartment == null ? 0 : compartment.active();
+  }
+
+  /**
+   * The number of actions currently waiting in the group queue.
+   *
+   * @param group the name of the group
+   * @return the number of queued actions
+   */
+  public int getQueued(String group) {
+    Compartment compartment = compartments.get(group);
+    return compartment == null ? 0 : compartment.queued();
+  }
+
+  /**
+   * The number of actions rejected by the group since start.
+   *
+   * @param group the name of the group
+   * @return the number of rejected actions
+   */
+  public long getRejected(String group) {
+    Compartment compartment = compartments.get(group);
+    return compartment == null ? 0 : compartment.rejected.get();
+  }
+
+  long getMaxQueueTime() {
+    return maxQueueTime;
+  }
+
+  long getActionTimeout() {
+    return actionTimeout;
+  }
+
+  Compartment compartment(String group) {
+    Compartment compartment = compartments.get(group);
+    if (compartment == null) {
+      PatternsModule.Config.BulkheadLimits groupLimits = limits == null ? null : limits.get(group);
+      compartment = groupLimits == null
+        ? new Compartment(defaultMaxConcurrency, defaultMaxQueue)
+        : new Compartment(groupLimits.getMaxConcurrency(), groupLimits.getMaxQueue());
+      Compartment current = compartments.putIfAbsent(group, compartment);
+      if (current != null) {
+        compartment = current;
+      }
+    }
+    return compartment;
+  }
+
+  static final class Compartment {
+    private final int maxConcurrency;
+    private final int maxQueue;
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private int active;
+
+    Compartment(int maxConcurrency, int maxQueue) {
+      this.maxConcurrency = Math.max(1, maxConcurrency);
+      this.maxQueue = Math.max(0, maxQueue);
+    }
+
+    /**
+     * Starts {@code task} now, queues it or rejects it.
+     *
+     * @param task the task that starts an action
+     * @return false if task was rejected
+     */
+    boolean submit(Runnable task) {
+      synchronized (this) {
+        if (active >= maxConcurrency) {
+          if (queue.size() >= maxQueue) {
+            rejected.incrementAndGet();
+            return false;
+          }
+          queue.add(task);
+          return true;
+        }
+        active++;
+      }
+      task.run();
+      return true;
+    }
+
+    /**
+     * Releases the slot of finished action and starts the next queued one.
+     */
+    void release() {
+      Runnable next;
+      synchronized (this) {
+        next = queue.poll();
+        if (next == null) {
+          active--;
+        }
+      }
+      if (next != null) {
+        next.run();
+      }
+    }
+
+    /**
+     * Removes {@code task} from the queue.
+     *
+     * @param task the queued task
+     * @return false if task is not queued any more, because it has already started
+     */
+    synchronized boolean cancel(Runnable task) {
+      return queue.remove(task);
+    }
+
+    synchronized int active() {
+      return active;
+    }
+
+    synchronized int queued() {
+      return queue.size();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.metrics.PatternMetrics;
+
+/**
+ * Lets idempotent action to return cached result instead of executing again.
+ *
+ * Results are cached across requests in {@link ResultCache} found in the registry, keyed by action name and data.
+ * Stale results are returned while the action executes again in background and concurrent executions of missing
+ * result are joined, so only one execution reaches the backend.
+ *
+ * <pre class="java">{@code
+ * Cache<String, String> cache = new Cache<>();
+ * ctx.render(parallel.apply(ctx, ctx, Arrays.asList(cache.wrap(ctx, countriesAction), ordersAction)));
+ * }</pre>
+ *
+ * @see ratpack.sep.exec.ResultCache
+ * @see ratpack.sep.Action
+ * @see ratpack.sep.ActionResults
+ */
+public class Cache<T, O> {
+
+  /**
+   * The name of the pattern that indicates pattern to execute in handler.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "cache";
+
+  private final ResultCache cache;
+
+  /**
+   * Constructor
+   * <p>
+   * Uses its own cache if registry does not contain {@link ResultCache}.
+   */
+  public Cache() {
+    this(new ResultCache());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param cache the cache used if registry does not contain {@link ResultCache}
+   */
+  public Cache(ResultCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * The name of the pattern.
+   *
+   * @return the name of the pattern
+   */
+  public String getName() {
+    return PATTERN_NAME;
+  }
+
+  /**
+   * Returns cached result of {@code action} or executes it.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param action an action to execute
+   * @return the promise for action results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, Action<T, O> action) throws Exception {
+    if (action == null) {
+      return execControl.promiseOf(new ActionResults<O>(ImmutableMap.of()));
+    }
+    return PatternMetrics.of(registry).time(PATTERN_NAME, Timeout.exec(execControl, registry, wrap(registry, action), 0)
+      .map(result -> new ActionResults<O>(ImmutableMap.of(action.getName(), result))));
+  }
+
+  /**
+   * Decorates {@code action} with the cache, so it could be executed by other patterns.
+   *
+   * @param registry the server registry
+   * @param action the action to decorate
+   * @return the cached action
+   */
+  public Action<T, O> wrap(Registry registry, Action<T, O> action) {
+    ResultCache results = registry == null ? cache : registry.maybeGet(ResultCache.class).orElse(cache);
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        return exec(execControl, getData());
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+        return results.exec(execControl, action, t);
+      }
+    };
+  }
+}
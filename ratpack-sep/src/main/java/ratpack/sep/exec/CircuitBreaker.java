@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.metrics.PatternMetrics;
+
+/**
+ * Lets action to execute only if its backend is not known to be down.
+ * <p>
+ * Every action name has its own breaker. Breaker opens when the failure rate of recent executions of the action is too high.
+ * Open breaker short-circuits executions to {@link ActionResult#CIRCUIT_OPEN_CODE} error without calling the action.
+ * After a while breaker becomes half open and lets a trial execution through. Breaker closes if trial execution succeeds.
+ * <p>
+ * Protected executions are limited by the call timeout of {@link CircuitBreakers} and the {@link Deadline}
+ * from registry. Timed out execution is recorded as failure, also when the pattern executing the protected action
+ * has already given up on it.
+ * <p>
+ * Breakers state is kept by {@link CircuitBreakers} found in the registry (bound by {@link ratpack.sep.PatternsModule}),
+ * so it is shared across requests. If registry does not contain {@link CircuitBreakers} the pattern's own instance is used.
+ * <p>
+ * Protected actions could be executed by other patterns, e.g. {@link Parallel} or {@link InvokeWithRetry}.
+ * {@link InvokeWithRetry} does not retry short-circuited executions.
+ *
+ * <pre class="java">{@code
+ * CircuitBreaker<String, String> breaker = new CircuitBreaker<>();
+ * InvokeWithRetry<String, String> pattern = new InvokeWithRetry<>(3);
+ * ctx.render(pattern.apply(ctx, ctx, breaker.wrap(ctx, action)));
+ * }</pre>
+ *
+ * @see ratpack.sep.exec.CircuitBreakers
+ */
+public class CircuitBreaker<T, O> {
+
+  /**
+   * The name of the pattern that indicates pattern to execute in handler.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "circuitbreaker";
+
+  /**
+   * The state of the breaker.
+   */
+  public enum State {
+    /**
+     * Executions are let through and their results are counted.
+     */
+    CLOSED,
+    /**
+     * Executions are rejected.
+     */
+    OPEN,
+    /**
+     * Limited number of trial executions are let through.
+     */
+    HALF_OPEN
+  }
+
+  private final CircuitBreakers circuitBreakers;
+
+  /**
+   * Constructor
+   * <p>
+   * Uses breakers with default settings if registry does not contain {@link CircuitBreakers}.
+   */
+  public CircuitBreaker() {
+    this(new CircuitBreakers());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param circuitBreakers the breakers used if registry does not contain {@link CircuitBreakers}
+   */
+  public CircuitBreaker(CircuitBreakers circuitBreakers) {
+    this.circuitBreakers = circuitBreakers;
+  }
+
+  /**
+   * The name of the pattern.
+   *
+   * @return the name of the pattern
+   */
+  public String getName() {
+    return PATTERN_NAME;
+  }
+
+  /**
+   * Executes {@code action} if its breaker is not open.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param action an action to execute
+   * @return the promise for action results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, Action<T, O> action) throws Exception {
+    if (action == null) {
+      return execControl.promiseOf(new ActionResults<O>(ImmutableMap.of()));
+    }
+    return PatternMetrics.of(registry).time(PATTERN_NAME, Timeout.exec(execControl, registry, wrap(registry, action), 0)
+      .map(result -> new ActionResults<O>(ImmutableMap.of(action.getName(), result))));
+  }
+
+  /**
+   * Decorates {@code action} with the breaker, so it could be executed by other patterns.
+   *
+   * @param registry the server registry
+   * @param action the action to protect
+   * @return the action protected by the breaker
+   */
+  public Action<T, O> wrap(Registry registry, Action<T, O> action) {
+    CircuitBreakers breakers = registry == null ? circuitBreakers : registry.maybeGet(CircuitBreakers.class).orElse(circuitBreakers);
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        return exec(execControl, getData());
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+        CircuitBreakers.Breaker breaker = breakers.breaker(action.getName());
+        CircuitBreakers.Status acquired = breaker.tryAcquire();
+        if (acquired == null) {
+          return execControl.promiseOf(ActionResult.error(ActionResult.CIRCUIT_OPEN_CODE,
+            "Circuit breaker is open for action: " + action.getName()));
+        }
+        // the timeout is applied here, so hanging execution is recorded even if the caller stops waiting for it
+        return Timeout.limit(execControl, registry, breakers.getCallTimeout(), ec -> action.exec(ec, t)).map(result -> {
+          breaker.record(acquired, result.isSuccess());
+          return result;
+        });
+      }
+    };
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.Maps;
+import ratpack.sep.PatternsModule;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * The state of circuit breakers, one for every action name.
+ * <p>
+ * Instance bound by {@link PatternsModule} is shared by all {@link CircuitBreaker} patterns, that find it in the registry.
+ * <p>
+ * Every breaker counts failures of the last {@code windowSize} executions of the action. If at least {@code minimumCalls}
+ * were recorded and the failure rate reaches {@code failureRate} percent, breaker opens and all subsequent executions
+ * are rejected for {@code openTime} milliseconds. Then breaker becomes half open and lets {@code halfOpenCalls}
+ * executions through. If all of them succeed breaker closes, otherwise it opens again. If trial executions do not finish
+ * within {@code openTime}, breaker opens again too, so hanging trials do not hold it half open forever.
+ * <p>
+ * Executions of protected actions are limited by {@code callTimeout}, so a hanging backend is recorded as a failure
+ * even if the pattern executing the action gives up on it earlier.
+ * <p>
+ * Results of executions started in a state the breaker has already left are ignored.
+ * Counting and state transitions are lock-free.
+ *
+ * @see ratpack.sep.exec.CircuitBreaker
+ */
+public class CircuitBreakers {
+  private final ConcurrentMap<String, Breaker> breakers = Maps.newConcurrentMap();
+  private final int windowSize;
+  private final int minimumCalls;
+  private final int failureRate;
+  private final long openTime;
+  private final int halfOpenCalls;
+  private final long callTimeout;
+  private final LongSupplier clock;
+
+  /**
+   * Constructor
+   * <p>
+   * Opens breaker if at least half of the last 20 executions failed. Breaker stays open for 5 seconds.
+   */
+  public CircuitBreakers() {
+    this(new PatternsModule.Config());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public CircuitBreakers(PatternsModule.Config config) {
+    this(config.getCircuitBreakerWindowSize(),
+      config.getCircuitBreakerMinimumCalls(),
+      config.getCircuitBreakerFailureRate(),
+      config.getCircuitBreakerOpenTime(),
+      config.getCircuitBreakerHalfOpenCalls(),
+      config.getCircuitBreakerCallTimeout() > 0 ? config.getCircuitBreakerCallTimeout() : config.getActionTimeout(),
+      System::currentTimeMillis);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param windowSize the number of the last executions taken into account
+   * @param minimumCalls the minimum number of executions required to calculate the failure rate
+   * @param failureRate the failure rate in percents that opens the breaker
+   * @param openTime the time in milliseconds the breaker stays open
+   * @param halfOpenCalls the number of executions let through by half open breaker
+   * @param clock the source of the current time in milliseconds
+   */
+  public CircuitBreakers(int windowSize, int minimumCalls, int failureRate, long openTime, int halfOpenCalls, LongSupplier clock) {
+    this(windowSize, minimumCalls, failureRate, openTime, halfOpenCalls, 0, clock);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param windowSize the number of the last executions taken into account
+   * @param minimumCalls the minimum number of executions required to calculate the failure rate
+   * @param failureRate the failure rate in percents that opens the breaker
+   * @param openTime the time in milliseconds the breaker stays open
+   * @param halfOpenCalls the number of executions let through by half open breaker
+   * @param callTimeout the time in milliseconds after which protected execution is recorded as failure. If {@code 0} the time is limited by the deadline only.
+   * @param clock the source of the current time in milliseconds
+   */
+  public CircuitBreakers(int windowSize, int minimumCalls, int failureRate, long openTime, int halfOpenCalls, long callTimeout, LongSupplier clock) {
+    this.windowSize = Math.max(1, windowSize);
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+    this.failureRate = failureRate;
+    this.openTime = openTime;
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    this.callTimeout = Math.max(0, callTimeout);
+    this.clock = clock;
+  }
+
+  /**
+   * The current state of the breaker for the given action.
+   *
+   * @param name the name of the action
+   * @return the state of the breaker
+   */
+  public CircuitBreaker.State getState(String name) {
+    Breaker breaker = breakers.get(name);
+    return breaker == null ? CircuitBreaker.State.CLOSED : breaker.state.get().state;
+  }
+
+  long getCallTimeout() {
+    return callTimeout;
+  }
+
+  Breaker breaker(String name) {
+    Breaker breaker = breakers.get(name);
+    if (breaker == null) {
+      breaker = new Breaker();
+      Breaker current = breakers.putIfAbsent(name, breaker);
+      if (current != null) {
+        breaker = current;
+      }
+    }
+    return breaker;
+  }
+
+  /**
+   * The state of the breaker. Immutable, except counters of half open executions.
+   */
+  static final class Status {
+    private final CircuitBreaker.State state;
+    private final long since;
+    private final AtomicInteger permits;
+    private final AtomicInteger successes;
+
+    Status(CircuitBreaker.State state, long since, int permits) {
+      this.state = state;
+      this.since = since;
+      this.permits = new AtomicInteger(permits);
+      this.successes = new AtomicInteger();
+    }
+  }
+
+  final class Breaker {
+    private final AtomicReference<Status> state = new AtomicReference<>(new Status(CircuitBreaker.State.CLOSED, 0, 0));
+    private final SlidingWindow window = new SlidingWindow(windowSize);
+
+    /**
+     * Lets execution through if breaker allows it.
+     *
+     * @return the state the execution was let through in, {@code null} if it is rejected
+     */
+    Status tryAcquire() {
+      while (true) {
+        Status current = state.get();
+        switch (current.state) {
+          case OPEN:
+            long now = clock.getAsLong();
+            if (now - current.since < openTime) {
+              return null;
+            }
+            state.compareAndSet(current, new Status(CircuitBreaker.State.HALF_OPEN, now, halfOpenCalls));
+            break;
+          case HALF_OPEN:
+            if (current.permits.getAndDecrement() > 0) {
+              return current;
+            }
+            if (clock.getAsLong() - current.since >= openTime) {
+              // trials did not finish in time, they are not waited for any longer
+              state.compareAndSet(current, new Status(CircuitBreaker.State.OPEN, clock.getAsLong(), 0));
+            }
+            return null;
+          default:
+            return current;
+        }
+      }
+    }
+
+    /**
+     * Records the result of execution let through by {@link #tryAcquire()}.
+     *
+     * @param acquired the state the execution was let through in
+     * @param success {@code true} if the execution succeeded
+     */
+    void record(Status acquired, boolean success) {
+      Status current = state.get();
+      if (current != acquired) {
+        // results of executions started before breaker changed its state are ignored
+        return;
+      }
+      switch (current.state) {
+        case HALF_OPEN:
+          if (!success) {
+            state.compareAndSet(current, new Status(CircuitBreaker.State.OPEN, clock.getAsLong(), 0));
+          } else if (current.successes.incrementAndGet() >= halfOpenCalls
+            && state.compareAndSet(current, new Status(CircuitBreaker.State.CLOSED, 0, 0))) {
+            window.reset();
+          }
+          break;
+        case CLOSED:
+          window.record(success);
+          if (!success && window.calls() >= minimumCalls && window.failureRate() >= failureRate
+            && state.compareAndSet(current, new Status(CircuitBreaker.State.OPEN, clock.getAsLong(), 0))) {
+            window.reset();
+          }
+          break;
+        default:
+          // executions are not let through open breaker
+      }
+    }
+  }
+
+  /**
+   * Lock-free ring of the last outcomes, with running counters of recorded calls and failures.
+   */
+  private static final class SlidingWindow {
+    private static final int EMPTY = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILURE = 2;
+
+    private final AtomicIntegerArray outcomes;
+    private final AtomicLong index = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    SlidingWindow(int size) {
+      this.outcomes = new AtomicIntegerArray(size);
+    }
+
+    void record(boolean success) {
+      int slot = (int) (index.getAndIncrement() % outcomes.length());
+      set(slot, success ? SUCCESS : FAILURE);
+    }
+
+    void reset() {
+      for (int i = 0; i < outcomes.length(); i++) {
+        set(i, EMPTY);
+      }
+    }
+
+    int calls() {
+      return calls.get();
+    }
+
+    int failureRate() {
+      int recorded = calls.get();
+      return recorded <= 0 ? 0 : failures.get() * 100 / recorded;
+    }
+
+    private void set(int slot, int outcome) {
+      int previous = outcomes.getAndSet(slot, outcome);
+      if (previous == EMPTY && outcome != EMPTY) {
+        calls.incrementAndGet();
+      } else if (previous != EMPTY && outcome == EMPTY) {
+        calls.decrementAndGet();
+      }
+      if (previous == FAILURE) {
+        failures.decrementAndGet();
+      }
+      if (outcome == FAILURE) {
+        failures.incrementAndGet();
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+/**
+ * The policy that decides when {@link Parallel} execution is complete.
+ * <p>
+ * Available policies:
+ * <ul>
+ *   <li><b>all</b> - all actions finished (the default)</li>
+ *   <li><b>first success</b> - one action succeeded</li>
+ *   <li><b>k successes</b> - {@code k} actions succeeded, e.g. quorum of replicas</li>
+ *   <li><b>any k</b> - {@code k} actions finished, successfully or not</li>
+ * </ul>
+ * If policy is met before all actions finished, actions still running are reported with
+ * {@link ratpack.sep.ActionResult#ABANDONED_CODE} result and actions not started yet are left out.
+ * If policy is never met, execution is complete when all actions finished.
+ *
+ * @see ratpack.sep.exec.Parallel
+ */
+public final class Completion {
+  private static final Completion ALL = new Completion(0, false);
+
+  private final int count;
+  private final boolean successesOnly;
+
+  private Completion(int count, boolean successesOnly) {
+    this.count = count;
+    this.successesOnly = successesOnly;
+  }
+
+  /**
+   * Completes when all actions finished.
+   *
+   * @return the policy
+   */
+  public static Completion all() {
+    return ALL;
+  }
+
+  /**
+   * Completes when the first action succeeded.
+   *
+   * @return the policy
+   */
+  public static Completion firstSuccess() {
+    return successes(1);
+  }
+
+  /**
+   * Completes when {@code k} actions succeeded.
+   *
+   * @param k the number of required successful actions
+   * @return the policy
+   */
+  public static Completion successes(int k) {
+    return new Completion(Math.max(1, k), true);
+  }
+
+  /**
+   * Completes when {@code k} actions finished, successfully or not.
+   *
+   * @param k the number of required finished actions
+   * @return the policy
+   */
+  public static Completion any(int k) {
+    return new Completion(Math.max(1, k), false);
+  }
+
+  /**
+   * Does the policy require all actions to finish?
+   *
+   * @return true if all actions have to finish
+   */
+  public boolean isAll() {
+    return count == 0;
+  }
+
+  /**
+   * Is the policy met?
+   *
+   * @param finished the number of finished actions
+   * @param succeeded the number of successfully finished actions
+   * @return true if execution is complete, even if some actions are still running
+   */
+  public boolean isMet(int finished, int succeeded) {
+    return count > 0 && (successesOnly ? succeeded : finished) >= count;
+  }
+}
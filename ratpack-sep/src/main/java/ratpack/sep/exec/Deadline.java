@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.registry.Registries;
+import ratpack.registry.Registry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time budget of the whole request.
+ * <p>
+ * Deadline added to the request registry is respected by every pattern. No action starts after the deadline and every
+ * running action times out when the deadline passes. Retries use the remaining budget instead of the fresh one.
+ *
+ * <pre class="java">{@code
+ * ctx.getRequest().add(Deadline.of(500));
+ * ctx.render(pattern.apply(ctx, ctx, actions));
+ * }</pre>
+ *
+ * @see ratpack.sep.exec.Timeout
+ */
+public final class Deadline {
+  private static final Deadline NONE = new Deadline(0);
+
+  private final long expiresAt;
+
+  private Deadline(long expiresAt) {
+    this.expiresAt = expiresAt;
+  }
+
+  /**
+   * Creates the deadline {@code timeout} milliseconds from now.
+   *
+   * @param timeout the time budget in milliseconds
+   * @return the deadline
+   */
+  public static Deadline of(long timeout) {
+    return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+  }
+
+  /**
+   * The deadline registered in the given registry.
+   *
+   * @param registry the registry
+   * @return the deadline or {@code null} if not registered
+   */
+  public static Deadline of(Registry registry) {
+    Deadline deadline = registry == null ? null : registry.maybeGet(Deadline.class).orElse(null);
+    return deadline == NONE ? null : deadline;
+  }
+
+  /**
+   * The registry that hides the deadline registered in the given registry, for executions that outlive the request,
+   * e.g. background retries.
+   *
+   * @param registry the registry
+   * @return the registry with all objects of the given registry except the deadline
+   */
+  static Registry without(Registry registry) {
+    return registry == null || of(registry) == null ? registry : registry.join(Registries.just(Deadline.class, NONE));
+  }
+
+  /**
+   * The remaining time budget.
+   *
+   * @return the remaining time in milliseconds, {@code 0} if the deadline passed
+   */
+  public long remaining() {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+  }
+
+  long remainingNanos() {
+    return expiresAt - System.nanoTime();
+  }
+
+  /**
+   * Has the deadline passed?
+   *
+   * @return true if there is no remaining time
+   */
+  public boolean isExpired() {
+    return expiresAt - System.nanoTime() <= 0;
+  }
+}
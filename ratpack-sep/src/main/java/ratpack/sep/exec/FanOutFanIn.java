@@ -18,6 +18,7 @@ package ratpack.sep.exec;
 
 import com.google.common.collect.ImmutableMap;
 import ratpack.sep.*;
+import ratpack.sep.metrics.PatternMetrics;
 import ratpack.exec.ExecControl;
 import ratpack.exec.Promise;
 import ratpack.registry.Registry;
@@ -30,6 +31,8 @@ import java.util.Objects;
  * Actions execute independently and asynchronously as {@code promises}. They are not notified about each other.
  * The post processing action execute as {@code promise} too, so it is non-blocking.
  *
+ * All actions, including the post processing action, are limited by the {@link Deadline} registered in the request registry.
+ *
  * [source, java]
  * --
  * include::{test-dir}/ratpack/sep/exec/FanOutFanInTest.java[tags=all]
@@ -48,6 +51,40 @@ public class FanOutFanIn<T, O, U> {
    */
   public static final String PATTERN_NAME = "fanoutfanin";
 
+  private final int maxConcurrency;
+  private final long actionTimeout;
+
+  /**
+   * Constructor
+   * <p>
+   * Number of actions executed at once and time of action execution are not limited.
+   */
+  public FanOutFanIn() {
+    this(0, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param maxConcurrency the maximum number of actions executed at once. If {@code 0} the number is not limited.
+   * @param actionTimeout the maximum time of every action execution in milliseconds. If {@code 0} the time is not limited.
+   */
+  public FanOutFanIn(int maxConcurrency, long actionTimeout) {
+    this.maxConcurrency = maxConcurrency;
+    this.actionTimeout = actionTimeout;
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Takes the maximum concurrency and action timeout from the module configuration.
+   *
+   * @param config the patterns module configuration
+   */
+  public FanOutFanIn(PatternsModule.Config config) {
+    this(config.getMaxConcurrency(), config.getActionTimeout());
+  }
+
   /**
    * The name of the pattern.
    *
@@ -74,15 +111,13 @@ public class FanOutFanIn<T, O, U> {
                                          Iterable<Action<T, O>> actions,
                                          Action<ActionResults<O>, U> postAction) throws Exception {
     Objects.requireNonNull(postAction);
-    return apply(execControl, registry, actions)
-      .flatMap(results -> postAction
-        .exec(execControl, results)
-        .mapError(ActionResult::error)
-        .map(result -> new ActionResults<U>(ImmutableMap.of(postAction.getName(), result))));
+    return PatternMetrics.of(registry).time(PATTERN_NAME, apply(execControl, registry, actions)
+      .flatMap(results -> Timeout.exec(execControl, registry, postAction, results, actionTimeout)
+        .map(result -> new ActionResults<U>(ImmutableMap.of(postAction.getName(), result)))));
   }
 
   private Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, Iterable<Action<T, O>> actions) throws Exception {
-    Parallel<T, O> parallel = new Parallel<>();
+    Parallel<T, O> parallel = new Parallel<>(maxConcurrency, actionTimeout);
     return parallel.apply(execControl, registry, actions);
   }
 }
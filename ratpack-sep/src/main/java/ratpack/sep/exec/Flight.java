@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.exec.ExecControl;
+import ratpack.exec.Fulfiller;
+import ratpack.exec.Promise;
+import ratpack.sep.ActionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One running execution of action, that other executions could join instead of executing the action again.
+ * <p>
+ * Every joining execution waits with its own fulfiller, so no promise is shared between executions.
+ */
+final class Flight {
+  private ActionResult<?> result;
+  private boolean completed;
+  private List<Fulfiller<ActionResult<?>>> waiting;
+
+  /**
+   * Promises the result of this flight.
+   *
+   * @param execControl an execution control of the joining execution
+   * @param <O> a type of data returned by action
+   * @return the promise for the result
+   */
+  @SuppressWarnings("unchecked")
+  <O> Promise<ActionResult<O>> join(ExecControl execControl) {
+    return execControl.promise(fulfiller -> join((Fulfiller<ActionResult<?>>) (Fulfiller<?>) fulfiller));
+  }
+
+  private void join(Fulfiller<ActionResult<?>> fulfiller) {
+    synchronized (this) {
+      if (!completed) {
+        if (waiting == null) {
+          waiting = new ArrayList<>(2);
+        }
+        waiting.add(fulfiller);
+        return;
+      }
+    }
+    fulfiller.success(result);
+  }
+
+  /**
+   * Completes the flight, passing the result to all joined executions.
+   *
+   * @param result the result of the action
+   */
+  void complete(ActionResult<?> result) {
+    List<Fulfiller<ActionResult<?>>> joined;
+    synchronized (this) {
+      this.result = result;
+      this.completed = true;
+      joined = waiting;
+      waiting = null;
+    }
+    if (joined != null) {
+      joined.forEach(fulfiller -> fulfiller.success(result));
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Fulfiller;
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.internal.IndexedResults;
+import ratpack.sep.metrics.PatternMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Lets actions to execute as soon as all actions they depend on are finished.
+ *
+ * Every action declares the names of actions it depends on. Action without dependencies starts immediately, other
+ * actions start as soon as the last of their dependencies finished, so the latency of the graph is the latency of its
+ * critical path. Every action gets {@link ActionResults} of its direct dependencies as parameter of
+ * {@link Action#exec(ExecControl, Object)}.
+ *
+ * If any dependency failed, action is not executed and its result is {@link ActionResult#SKIPPED_CODE} error.
+ * Cycles, unknown dependencies and duplicated names are detected when the graph is built.
+ *
+ * Graph is immutable, so it could be built once and applied to every request.
+ *
+ * <pre class="java">{@code
+ * Graph<String> graph = Graph.<String>builder()
+ *   .add(user)
+ *   .add(orders, "user")
+ *   .add(recommendations, "user")
+ *   .add(page, "orders", "recommendations")
+ *   .build();
+ * ctx.render(graph.apply(ctx, ctx));
+ * }</pre>
+ *
+ * @see ratpack.sep.Action
+ * @see ratpack.sep.ActionResult
+ * @see ratpack.sep.ActionResults
+ */
+public final class Graph<O> {
+
+  /**
+   * The name of the pattern that indicates pattern to execute in handler.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "graph";
+
+  private final List<Node<O>> nodes;
+  private final int[] roots;
+  private final long actionTimeout;
+
+  private Graph(List<Node<O>> nodes, int[] roots, long actionTimeout) {
+    this.nodes = nodes;
+    this.roots = roots;
+    this.actionTimeout = actionTimeout;
+  }
+
+  /**
+   * Creates builder of the graph.
+   *
+   * @param <O> a type of data returned by actions
+   * @return the builder
+   */
+  public static <O> Builder<O> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * The name of the pattern.
+   *
+   * @return the name of the pattern
+   */
+  public String getName() {
+    return PATTERN_NAME;
+  }
+
+  /**
+   * Executes actions of the graph.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @return a promise for the results of all actions
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry) throws Exception {
+    if (nodes.isEmpty()) {
+      return execControl.promiseOf(new ActionResults<O>(ImmutableMap.of()));
+    }
+    return PatternMetrics.of(registry).time(PATTERN_NAME, execControl.<IndexedResults<O>>promise(fulfiller ->
+      new Run(execControl, registry, fulfiller).start()
+    ).map(results -> new ActionResults<O>(results)));
+  }
+
+  /**
+   * The builder of {@link Graph}.
+   *
+   * @param <O> a type of data returned by actions
+   */
+  public static final class Builder<O> {
+    private final Map<String, Action<ActionResults<O>, O>> actions = new LinkedHashMap<>();
+    private final Map<String, String[]> dependencies = new HashMap<>();
+    private long actionTimeout;
+
+    private Builder() {
+    }
+
+    /**
+     * Adds action to the graph.
+     *
+     * @param action the action
+     * @param dependsOn the names of actions that have to finish before {@code action} starts
+     * @return this builder
+     */
+    public Builder<O> add(Action<ActionResults<O>, O> action, String... dependsOn) {
+      Objects.requireNonNull(action);
+      Objects.requireNonNull(action.getName());
+      if (actions.put(action.getName(), action) != null) {
+        throw new IllegalArgumentException("Duplicated action: " + action.getName());
+      }
+      dependencies.put(action.getName(), new LinkedHashSet<>(Arrays.asList(dependsOn)).toArray(new String[0]));
+      return this;
+    }
+
+    /**
+     * Limits every action execution.
+     *
+     * @param actionTimeout the maximum time of every action in milliseconds. If {@code 0} the time is not limited.
+     * @return this builder
+     */
+    public Builder<O> actionTimeout(long actionTimeout) {
+      this.actionTimeout = actionTimeout < 0 ? 0 : actionTimeout;
+      return this;
+    }
+
+    /**
+     * Builds the graph.
+     *
+     * @return the graph
+     * @throws IllegalArgumentException if dependency is unknown or actions depend on each other in a cycle
+     */
+    public Graph<O> build() {
+      List<String> names = new ArrayList<>(actions.keySet());
+      Map<String, Integer> positions = new HashMap<>();
+      for (int i = 0; i < names.size(); i++) {
+        positions.put(names.get(i), i);
+      }
+
+      int[][] upstream = new int[names.size()][];
+      List<List<Integer>> downstream = new ArrayList<>();
+      for (int i = 0; i < names.size(); i++) {
+        downstream.add(new ArrayList<>());
+      }
+      for (int i = 0; i < names.size(); i++) {
+        String[] dependsOn = dependencies.get(names.get(i));
+        upstream[i] = new int[dependsOn.length];
+        for (int j = 0; j < dependsOn.length; j++) {
+          Integer position = positions.get(dependsOn[j]);
+          if (position == null) {
+            throw new IllegalArgumentException("Action " + names.get(i) + " depends on unknown action: " + dependsOn[j]);
+          }
+          upstream[i][j] = position;
+          downstream.get(position).add(i);
+        }
+      }
+
+      // Kahn's algorithm, actions left unvisited are part of a cycle
+      int[] pending = new int[names.size()];
+      int[] queue = new int[names.size()];
+      int tail = 0;
+      for (int i = 0; i < names.size(); i++) {
+        pending[i] = upstream[i].length;
+        if (pending[i] == 0) {
+          queue[tail++] = i;
+        }
+      }
+      int roots = tail;
+      for (int head = 0; head < tail; head++) {
+        for (int next : downstream.get(queue[head])) {
+          if (--pending[next] == 0) {
+            queue[tail++] = next;
+          }
+        }
+      }
+      if (tail < names.size()) {
+        List<String> cycle = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+          if (pending[i] > 0) {
+            cycle.add(names.get(i));
+          }
+        }
+        throw new IllegalArgumentException("Actions depend on each other in a cycle: " + cycle);
+      }
+
+      ImmutableList.Builder<Node<O>> nodes = ImmutableList.builder();
+      for (int i = 0; i < names.size(); i++) {
+        List<Integer> dependents = downstream.get(i);
+        int[] down = new int[dependents.size()];
+        for (int j = 0; j < down.length; j++) {
+          down[j] = dependents.get(j);
+        }
+        nodes.add(new Node<>(actions.get(names.get(i)), upstream[i], down));
+      }
+      return new Graph<>(nodes.build(), Arrays.copyOf(queue, roots), actionTimeout);
+    }
+  }
+
+  private static final class Node<O> {
+    private final Action<ActionResults<O>, O> action;
+    private final int[] upstream;
+    private final int[] downstream;
+
+    Node(Action<ActionResults<O>, O> action, int[] upstream, int[] downstream) {
+      this.action = action;
+      this.upstream = upstream;
+      this.downstream = downstream;
+    }
+  }
+
+  /**
+   * One execution of the graph. Results are kept in slots indexed by node position, guarded by the run lock.
+   */
+  private final class Run {
+    private final ExecControl execControl;
+    private final Registry registry;
+    private final Fulfiller<IndexedResults<O>> fulfiller;
+    private final IndexedResults<O> results;
+    private final int[] pending;
+    private int remaining;
+
+    Run(ExecControl execControl, Registry registry, Fulfiller<IndexedResults<O>> fulfiller) {
+      this.execControl = execControl;
+      this.registry = registry;
+      this.fulfiller = fulfiller;
+      this.results = new IndexedResults<>(nodes.size());
+      this.pending = new int[nodes.size()];
+      for (int i = 0; i < nodes.size(); i++) {
+        results.add(nodes.get(i).action);
+        pending[i] = nodes.get(i).upstream.length;
+      }
+      this.remaining = nodes.size();
+    }
+
+    void start() {
+      for (int root : roots) {
+        start(root);
+      }
+    }
+
+    private void start(int position) {
+      Node<O> node = nodes.get(position);
+      ImmutableMap.Builder<String, ActionResult<O>> input = ImmutableMap.builder();
+      for (int dependency : node.upstream) {
+        ActionResult<O> result = results.result(dependency);
+        if (!result.isSuccess()) {
+          finished(position, ActionResult.error(ActionResult.SKIPPED_CODE,
+            "Action " + nodes.get(dependency).action.getName() + " failed"));
+          return;
+        }
+        input.put(nodes.get(dependency).action.getName(), result);
+      }
+      ActionResults<O> data = new ActionResults<>(input.build());
+      execControl.exec().start(execution ->
+          Timeout.exec(execution, registry, node.action, data, actionTimeout)
+            .then(result -> finished(position, result))
+      );
+    }
+
+    private void finished(int position, ActionResult<O> result) {
+      List<Integer> ready = null;
+      boolean complete;
+      synchronized (this) {
+        results.set(position, result);
+        remaining--;
+        for (int dependent : nodes.get(position).downstream) {
+          if (--pending[dependent] == 0) {
+            if (ready == null) {
+              ready = new ArrayList<>();
+            }
+            ready.add(dependent);
+          }
+        }
+        complete = remaining == 0;
+      }
+      if (complete) {
+        fulfiller.success(results);
+        return;
+      }
+      if (ready != null) {
+        ready.forEach(this::start);
+      }
+    }
+  }
+}
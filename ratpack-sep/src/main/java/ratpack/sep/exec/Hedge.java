@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Fulfiller;
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.PatternsModule;
+import ratpack.sep.metrics.PatternMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets idempotent action to execute again if the first execution did not finish in time.
+ *
+ * If action did not finish within {@code hedgeDelay}, the next execution starts, up to {@code maxAttempts} executions.
+ * The first successful execution provides the result, other executions are ignored. Failed execution starts the next
+ * one at once, without waiting for the delay. Error is returned only if all started executions failed.
+ *
+ * If {@code hedgeDelay} is {@code 0} the delay is the 95th percentile of recent latencies of the action, recorded in
+ * {@link Latencies} found in the registry, rounded up to whole milliseconds. Action is not hedged until at least
+ * {@code minimumSamples} latencies are recorded.
+ *
+ * The number of the execution that provided the result is available as {@link ActionResult#getAttempt()}.
+ *
+ * <pre class="java">{@code
+ * Hedge<String, String> pattern = new Hedge<>(50, 2);
+ * ctx.render(pattern.apply(ctx, ctx, action));
+ * }</pre>
+ *
+ * @see ratpack.sep.Action
+ * @see ratpack.sep.ActionResult
+ * @see ratpack.sep.ActionResults
+ */
+public class Hedge<T, O> {
+
+  /**
+   * The name of the pattern that indicates pattern to execute in handler.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "hedge";
+
+  private static final int MINIMUM_SAMPLES = 20;
+
+  private final long hedgeDelay;
+  private final int maxAttempts;
+  private final Latencies latencies;
+  private final RetryTimer timer;
+
+  /**
+   * Constructor
+   *
+   * @param hedgeDelay the delay in milliseconds after which next execution starts. If {@code 0} the 95th percentile of
+   *                   recent latencies is used.
+   * @param maxAttempts the maximum number of executions
+   */
+  public Hedge(long hedgeDelay, int maxAttempts) {
+    this(hedgeDelay, maxAttempts, new Latencies(), RetryTimer.EVENT_LOOP);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param hedgeDelay the delay in milliseconds after which next execution starts. If {@code 0} the 95th percentile of
+   *                   recent latencies is used.
+   * @param maxAttempts the maximum number of executions
+   * @param latencies the latencies used if registry does not contain {@link Latencies}
+   * @param timer the timer that schedules next executions
+   */
+  public Hedge(long hedgeDelay, int maxAttempts, Latencies latencies, RetryTimer timer) {
+    this.hedgeDelay = hedgeDelay;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.latencies = latencies;
+    this.timer = timer;
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Takes the hedge delay and maximum number of executions from the module configuration.
+   *
+   * @param config the patterns module configuration
+   */
+  public Hedge(PatternsModule.Config config) {
+    this(config.getHedgeDelay(), config.getHedgeMaxAttempts());
+  }
+
+  /**
+   * The name of the pattern.
+   *
+   * @return the name of the pattern
+   */
+  public String getName() {
+    return PATTERN_NAME;
+  }
+
+  /**
+   * Executes {@code action} and hedges it if it does not finish in time.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param action an action to execute
+   * @return the promise for action results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, Action<T, O> action) throws Exception {
+    if (action == null) {
+      return execControl.promiseOf(new ActionResults<O>(ImmutableMap.of()));
+    }
+    Latencies recent = registry == null ? latencies : registry.maybeGet(Latencies.class).orElse(latencies);
+    return PatternMetrics.of(registry).time(PATTERN_NAME, execControl.<ActionResult<O>>promise(fulfiller ->
+      new Race(execControl, registry, fulfiller, action, recent).attempt()
+    ).map(result -> new ActionResults<O>(ImmutableMap.of(action.getName(), result))));
+  }
+
+  /**
+   * Starts executions of the action one after another and completes with the first successful one.
+   */
+  private final class Race {
+    private final ExecControl execControl;
+    private final Registry registry;
+    private final Fulfiller<ActionResult<O>> fulfiller;
+    private final Action<T, O> action;
+    private final Latencies latencies;
+    private final long delay;
+    private final int limit;
+    private boolean completed;
+    private int attempts;
+    private int running;
+
+    Race(ExecControl execControl, Registry registry, Fulfiller<ActionResult<O>> fulfiller, Action<T, O> action, Latencies latencies) {
+      this.execControl = execControl;
+      this.registry = registry;
+      this.fulfiller = fulfiller;
+      this.action = action;
+      this.latencies = latencies;
+      if (hedgeDelay > 0) {
+        this.delay = hedgeDelay;
+      } else if (latencies.count(action.getName()) >= MINIMUM_SAMPLES) {
+        // latencies are in microseconds, the delay of sub-millisecond actions is rounded up, so it is never 0
+        this.delay = Math.max(1, TimeUnit.MICROSECONDS.toMillis(latencies.percentile(action.getName(), 95) + 999));
+      } else {
+        this.delay = 0;
+      }
+      this.limit = delay > 0 ? maxAttempts : 1;
+    }
+
+    void attempt() {
+      int attempt;
+      synchronized (this) {
+        if (completed || attempts >= limit) {
+          return;
+        }
+        attempt = ++attempts;
+        running++;
+      }
+      long start = System.nanoTime();
+      execControl.exec().start(execution -> Timeout.exec(execution, registry, action, 0)
+        .then(result -> finished(attempt, result, System.nanoTime() - start)));
+      if (attempt < limit) {
+        timer.schedule(execControl, delay, () -> {
+          boolean next;
+          synchronized (this) {
+            // the next execution may have already started, because this one failed
+            next = attempts == attempt;
+          }
+          if (next) {
+            attempt();
+          }
+        });
+      }
+    }
+
+    private void finished(int attempt, ActionResult<O> result, long latency) {
+      latencies.record(action.getName(), TimeUnit.NANOSECONDS.toMicros(latency));
+      boolean complete;
+      synchronized (this) {
+        running--;
+        // the last finished execution completes the race, if no other one can start
+        complete = !completed && (result.isSuccess() || running == 0 && attempts >= limit);
+        if (complete) {
+          completed = true;
+        }
+      }
+      if (complete) {
+        fulfiller.success(result.withAttempt(attempt));
+      } else if (!result.isSuccess()) {
+        // failed execution does not wait for the hedge delay
+        attempt();
+      }
+    }
+  }
+}
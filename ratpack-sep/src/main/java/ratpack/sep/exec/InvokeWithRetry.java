@@ -17,28 +17,41 @@
 package ratpack.sep.exec;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ratpack.sep.Action;
 import ratpack.sep.ActionResult;
 import ratpack.sep.ActionResults;
+import ratpack.sep.InlineAction;
+import ratpack.sep.PatternsModule;
+import ratpack.sep.metrics.PatternMetrics;
 import ratpack.exec.ExecControl;
 import ratpack.exec.Fulfiller;
 import ratpack.exec.Promise;
 import ratpack.registry.Registry;
 
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * Lets action to execute and in case of failure retry given number of times.
  *
  * Retry can be done synchronously, while still non blocking or asynchronously.
  *
+ * Delays between retries are defined by {@link Backoff} policy and are scheduled by {@link RetryTimer}, so no thread
+ * is blocked while waiting for the next retry.
+ *
+ * Every execution could be limited with {@code actionTimeout}. If {@link Deadline} is registered in the request registry,
+ * retries use the remaining time of the deadline and no retry starts after the deadline.
+ *
+ * Action rejected by open {@link CircuitBreaker} is not retried.
+ *
+ * Retries of all requests are limited by {@link RetryBudget} registered in the registry. Retry suppressed by the budget
+ * results in {@link ActionResult#RETRY_SUPPRESSED_CODE} error.
+ *
  * Asynchronous retry means, that action is executed and if fails, all subsequent retries are executed in separate execution.
  * Result is immediately returned to the caller.
  * Asynchronous retry usually requires correlation id but this should be implemented by custom actions.
+ * The final result of asynchronous retries is passed to {@link AsyncRetryListener} registered in the registry.
+ * The number of actions retried in background is bounded by {@link PendingRetries}.
+ * Actions retried in background can be written to {@link RetryJournal}, so their retries are resumed after restart.
  *
  * [source,java]
  * --
@@ -54,6 +67,10 @@ public class InvokeWithRetry<T, O> {
   private static final Logger LOG = LoggerFactory.getLogger(InvokeWithRetry.class);
 
   private final int defaultRetryCount;
+  private final Backoff backoff;
+  private final RetryTimer timer;
+  private final long actionTimeout;
+  private final PendingRetries pendingRetries;
 
   /**
    * The name of the pattern that indicates pattern to execute in handler
@@ -68,7 +85,73 @@ public class InvokeWithRetry<T, O> {
    * @param defaultRetryCount the default retry count for the failed action. Can be overridden on {@code apply} method level.
    */
   public InvokeWithRetry(int defaultRetryCount) {
+    this(defaultRetryCount, Backoff.none());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultRetryCount the default retry count for the failed action. Can be overridden on {@code apply} method level.
+   * @param backoff the policy of delays between retries
+   */
+  public InvokeWithRetry(int defaultRetryCount, Backoff backoff) {
+    this(defaultRetryCount, backoff, RetryTimer.EVENT_LOOP);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultRetryCount the default retry count for the failed action. Can be overridden on {@code apply} method level.
+   * @param backoff the policy of delays between retries
+   * @param timer the timer that schedules delayed retries
+   */
+  public InvokeWithRetry(int defaultRetryCount, Backoff backoff, RetryTimer timer) {
+    this(defaultRetryCount, backoff, timer, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultRetryCount the default retry count for the failed action. Can be overridden on {@code apply} method level.
+   * @param backoff the policy of delays between retries
+   * @param timer the timer that schedules delayed retries
+   * @param actionTimeout the maximum time of every action execution in milliseconds. If {@code 0} the time is not limited.
+   */
+  public InvokeWithRetry(int defaultRetryCount, Backoff backoff, RetryTimer timer, long actionTimeout) {
+    this(defaultRetryCount, backoff, timer, actionTimeout, new PendingRetries(PendingRetries.DEFAULT_MAX_PENDING));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultRetryCount the default retry count for the failed action. Can be overridden on {@code apply} method level.
+   * @param backoff the policy of delays between retries
+   * @param timer the timer that schedules delayed retries
+   * @param actionTimeout the maximum time of every action execution in milliseconds. If {@code 0} the time is not limited.
+   * @param pendingRetries the bound of asynchronous retries, used if {@link PendingRetries} is not registered
+   */
+  public InvokeWithRetry(int defaultRetryCount, Backoff backoff, RetryTimer timer, long actionTimeout, PendingRetries pendingRetries) {
     this.defaultRetryCount = defaultRetryCount;
+    this.backoff = backoff;
+    this.timer = timer;
+    this.actionTimeout = actionTimeout;
+    this.pendingRetries = pendingRetries;
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Takes the default retry count, backoff policy, action timeout and the maximum number of pending asynchronous retries
+   * from the module configuration.
+   *
+   * @param config the patterns module configuration
+   */
+  public InvokeWithRetry(PatternsModule.Config config) {
+    this(config.getDefaultRetryCount(),
+      Backoff.of(config.getRetryBackoff(), config.getRetryDelay(), config.getMaxRetryDelay(), config.getMaxRetryTime()),
+      RetryTimer.EVENT_LOOP,
+      config.getActionTimeout(),
+      new PendingRetries(config));
   }
 
   /**
@@ -115,70 +198,249 @@ public class InvokeWithRetry<T, O> {
     int retryCount = actionRetryCount != null ? actionRetryCount : defaultRetryCount;
     boolean asyncRetry = actionAsyncRetry != null ? actionAsyncRetry : false;
 
+    PatternMetrics metrics = PatternMetrics.of(registry);
     if (asyncRetry) {
-      return applyAsync(execControl, action, retryCount);
+      return metrics.time(PATTERN_NAME, applyAsync(execControl, registry, action, retryCount));
     } else {
-      return apply(execControl, action, retryCount);
+      return metrics.time(PATTERN_NAME, applySync(execControl, registry, action, retryCount));
     }
   }
 
   public Promise<ActionResults<O>> apply(ExecControl execControl,
                                          Action<T, O> action,
                                          Integer retryCount) throws Exception {
+    return applySync(execControl, null, action, retryCount);
+  }
 
-    return execControl.<Map<String, ActionResult<O>>>promise(fulfiller -> {
-      AtomicInteger repeatCounter = new AtomicInteger(retryCount + 1);
-      Map<String, ActionResult<O>> results = Maps.newConcurrentMap();
-      applyWithRetry(execControl, fulfiller, action, results, repeatCounter);
-    })
-      .map(ImmutableMap::copyOf)
-      .map(map -> new ActionResults<O>(map));
+  private Promise<ActionResults<O>> applySync(ExecControl execControl, Registry registry, Action<T, O> action, int retryCount) {
+    return execControl.<ActionResult<O>>promise(fulfiller ->
+      new Retry(execControl, registry, RetryBudget.of(registry), null, -1, fulfiller, action, retryCount + 1, 0).apply()
+    )
+      .map(result -> new ActionResults<O>(ImmutableMap.of(action.getName(), result)));
   }
 
-  private Promise<ActionResults<O>> applyAsync(ExecControl execControl, Action<T, O> action, int retryCount) throws Exception {
-    return execControl.<Map<String, ActionResult<O>>>promise(fulfiller -> {
-      AtomicInteger repeatCounter = new AtomicInteger(1);
-      Map<String, ActionResult<O>> results = Maps.newConcurrentMap();
-      applyWithRetry(execControl, fulfiller, action, results, repeatCounter);
-    })
-      .map(ImmutableMap::copyOf)
-      .map(map -> new ActionResults<O>(map))
+  private Promise<ActionResults<O>> applyAsync(ExecControl execControl, Registry registry, Action<T, O> action, int retryCount) throws Exception {
+    RetryBudget budget = RetryBudget.of(registry);
+    return execControl.<ActionResult<O>>promise(fulfiller ->
+      new Retry(execControl, registry, budget, null, -1, fulfiller, action, 1, 0).apply()
+    )
+      .map(result -> new ActionResults<O>(ImmutableMap.of(action.getName(), result)))
       .wiretap(result -> {
-        ActionResults<O> actionResults = result.getValue();
-        ActionResult<O> actionResult = actionResults.getResults().get(action.getName());
-        if (actionResult != null && !"0".equals(actionResult.getCode())) {
-          // execute retries asynchronously
-          apply(execControl, action, retryCount)
-            .defer(Runnable::run)
-            .then(retryActionResults -> {
-              // TODO: add logging and some special callback
-            });
+        ActionResult<O> actionResult = result.getValue().asMap().get(action.getName());
+        if (actionResult != null && !"0".equals(actionResult.getCode()) && retryCount > 0) {
+          retryAsync(execControl, registry, budget, action, actionResult, retryCount);
         }
       });
   }
 
-  private void applyWithRetry(ExecControl execControl, Fulfiller<Map<String, ActionResult<O>>> fulfiller, Action<T, O> action, Map<String, ActionResult<O>> results, AtomicInteger repeatCounter) {
-    execControl.exec().start(execution -> applyInternal(execution, action)
-      .then(result -> {
-        LOG.debug("APPLY retry from: {}", repeatCounter.get());
-        results.put(action.getName(), result);
-        if ("0".equals(result.getCode())) {
-          fulfiller.success(results);
-        } else {
-          if (repeatCounter.decrementAndGet() == 0) {
-            fulfiller.success(results);
-          } else {
-            applyWithRetry(execControl, fulfiller, action, results, repeatCounter);
+  private void retryAsync(ExecControl execControl,
+                          Registry registry,
+                          RetryBudget budget,
+                          Action<T, O> action,
+                          ActionResult<O> failed,
+                          int retryCount) {
+    AsyncRetryListener listener = registry == null ? null : registry.maybeGet(AsyncRetryListener.class).orElse(null);
+    PendingRetries pending = registry == null ? pendingRetries : registry.maybeGet(PendingRetries.class).orElse(pendingRetries);
+    if (!pending.tryAcquire()) {
+      completed(listener, action, suppressed("pending retries limit", failed));
+      return;
+    }
+    if (budget != null && !budget.tryRetry()) {
+      pending.release();
+      completed(listener, action, suppressed("retry budget", failed));
+      return;
+    }
+    RetryJournal journal = RetryJournal.of(registry);
+    long id = journal != null ? journal.append(action, retryCount) : -1;
+    retryInBackground(execControl, registry, budget, journal, id, pending, listener, action, retryCount, 0);
+  }
+
+  /**
+   * Resumes in background asynchronous retries of actions pending in {@link RetryJournal} before restart.
+   * <p>
+   * Called when the server starts by {@link RetryJournalService}, if the journal and {@link RetryJournal.ActionResolver}
+   * are registered. Actions are recreated by the resolver and retried the remaining journaled number of times, starting
+   * after the first delay of the backoff policy. Actions over {@link PendingRetries} limit wait in the journal and are resumed
+   * whenever background retries finish.
+   *
+   * @param execControl an execution control
+   * @param registry the registry with the journal and the resolver
+   * @return the number of resumed actions
+   */
+  public int resume(ExecControl execControl, Registry registry) {
+    RetryJournal journal = RetryJournal.of(registry);
+    RetryJournal.ActionResolver resolver = journal == null ? null
+      : registry.maybeGet(RetryJournal.ActionResolver.class).orElse(null);
+    if (resolver == null) {
+      return 0;
+    }
+    AsyncRetryListener listener = registry.maybeGet(AsyncRetryListener.class).orElse(null);
+    PendingRetries pending = registry.maybeGet(PendingRetries.class).orElse(pendingRetries);
+    long delay = Math.max(0, backoff.delay(1, 0, 0));
+    int resumed = 0;
+    while (journal.hasRecovered() && pending.tryResume()) {
+      RetryJournal.Entry entry = journal.pollRecovered();
+      Action<T, O> action = entry == null ? null : resolve(resolver, entry);
+      if (action == null) {
+        pending.release();
+        if (entry != null) {
+          LOG.warn("Journaled action {} can not be resolved", entry.getName());
+          journal.complete(entry.getId());
+        }
+      } else {
+        retryInBackground(execControl, registry, null, journal, entry.getId(), pending, listener, action, entry.getRetries(), delay);
+        resumed++;
+      }
+    }
+    return resumed;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Action<T, O> resolve(RetryJournal.ActionResolver resolver, RetryJournal.Entry entry) {
+    try {
+      return (Action<T, O>) resolver.resolve(entry.getName(), entry.getData());
+    } catch (Exception ex) {
+      LOG.warn("Journaled action " + entry.getName() + " can not be resolved", ex);
+      return null;
+    }
+  }
+
+  private void retryInBackground(ExecControl execControl,
+                                 Registry registry,
+                                 RetryBudget budget,
+                                 RetryJournal journal,
+                                 long id,
+                                 PendingRetries pending,
+                                 AsyncRetryListener listener,
+                                 Action<T, O> action,
+                                 int retryCount,
+                                 long delay) {
+    execControl.exec().start(execution -> execution.<ActionResult<O>>promise(fulfiller -> {
+      // background retries outlive the request, so its deadline does not apply to them
+      Retry retry = new Retry(execution, Deadline.without(registry), budget, journal, id, fulfiller, action, retryCount, 1);
+      if (delay > 0) {
+        timer.schedule(execution, delay, retry::apply);
+      } else {
+        retry.apply();
+      }
+    })
+      .then(retryResult -> {
+        pending.release();
+        if (journal != null) {
+          journal.complete(id);
+          if (journal.hasRecovered()) {
+            resume(execution, registry);
           }
         }
+        completed(listener, action, retryResult);
       }));
   }
 
-  private Promise<ActionResult<O>> applyInternal(ExecControl execControl, Action<T, O> action) {
+  private ActionResult<O> suppressed(String reason, ActionResult<O> failed) {
+    return ActionResult.<O>error(ActionResult.RETRY_SUPPRESSED_CODE,
+      "Retry suppressed by " + reason + " after " + failed.getCode() + ": " + failed.getMessage()).withAttempt(1);
+  }
+
+  private void completed(AsyncRetryListener listener, Action<T, O> action, ActionResult<O> result) {
+    int attempts = result.getAttempt() != null ? result.getAttempt() : 1;
+    LOG.debug("Async retry of {} finished with {} after {} attempts", action.getName(), result.getCode(), attempts);
+    if (listener == null) {
+      return;
+    }
     try {
-      return action.exec(execControl).mapError(ActionResult::error);
+      listener.completed(action, new ActionResults<O>(ImmutableMap.of(action.getName(), result)), attempts);
     } catch (Exception ex) {
-      return execControl.promiseOf(ActionResult.error(ex));
+      LOG.warn("Async retry listener failed for " + action.getName(), ex);
+    }
+  }
+
+  /**
+   * Executes the action until it succeeds or the number of executions is exhausted.
+   * Every retry is delayed according to the {@link Backoff} policy and must start before the {@link Deadline}.
+   * If {@link RetryBudget} is empty, the retry is suppressed and the result is {@link ActionResult#RETRY_SUPPRESSED_CODE} error.
+   * <p>
+   * Executions are sequential, so only the last result is kept. Result of retried action has the number of the execution
+   * that provided it as {@link ActionResult#getAttempt()}. {@link InlineAction} is computed in the calling thread,
+   * without forking new execution for every attempt.
+   */
+  private final class Retry {
+    private final ExecControl execControl;
+    private final Registry registry;
+    private final Deadline deadline;
+    private final RetryBudget budget;
+    private final RetryJournal journal;
+    private final long id;
+    private final PatternMetrics metrics;
+    private final Fulfiller<ActionResult<O>> fulfiller;
+    private final Action<T, O> action;
+    private int repeatCounter;
+    private final long startTime;
+    private int attempt;
+    private long delay;
+
+    Retry(ExecControl execControl,
+          Registry registry,
+          RetryBudget budget,
+          RetryJournal journal,
+          long id,
+          Fulfiller<ActionResult<O>> fulfiller,
+          Action<T, O> action,
+          int repeatCount,
+          int attempt) {
+      this.execControl = execControl;
+      this.registry = registry;
+      this.deadline = Deadline.of(registry);
+      this.budget = budget;
+      this.journal = journal;
+      this.id = id;
+      this.metrics = PatternMetrics.of(registry);
+      this.fulfiller = fulfiller;
+      this.action = action;
+      this.repeatCounter = repeatCount;
+      this.attempt = attempt;
+      this.startTime = timer.currentTimeMillis();
+    }
+
+    @SuppressWarnings("unchecked")
+    void apply() {
+      if (attempt == 0 && budget != null) {
+        budget.deposit();
+      }
+      if (action instanceof InlineAction) {
+        InlineAction<T, O> inline = (InlineAction<T, O>) action;
+        finished(Timeout.inline(registry, inline, inline.getData()));
+        return;
+      }
+      execControl.exec().start(execution -> Timeout.exec(execution, registry, action, actionTimeout)
+        .then(this::finished));
+    }
+
+    private void finished(ActionResult<O> result) {
+      LOG.debug("APPLY retry from: {}", repeatCounter);
+      attempt++;
+      if ("0".equals(result.getCode())
+        || ActionResult.CIRCUIT_OPEN_CODE.equals(result.getCode())
+        || ActionResult.LOAD_SHED_CODE.equals(result.getCode())
+        || --repeatCounter == 0) {
+        complete(result);
+        return;
+      }
+      delay = backoff.delay(attempt, delay, timer.currentTimeMillis() - startTime);
+      if (delay < 0 || deadline != null && delay >= deadline.remaining()) {
+        complete(result);
+      } else if (budget != null && !budget.tryRetry()) {
+        fulfiller.success(suppressed("retry budget", result).withAttempt(attempt));
+      } else {
+        metrics.actionRetried(action.getName());
+        if (journal != null) {
+          journal.retried(id, repeatCounter);
+        }
+        timer.schedule(execControl, delay, this::apply);
+      }
+    }
+
+    private void complete(ActionResult<O> result) {
+      fulfiller.success(attempt > 1 ? result.withAttempt(attempt) : result);
     }
   }
 }
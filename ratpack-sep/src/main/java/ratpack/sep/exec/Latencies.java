@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The recent latencies of actions, one sample for every action name.
+ * <p>
+ * Instance bound by {@link ratpack.sep.PatternsModule} is shared by all {@link Hedge} patterns, that find it in the registry.
+ * <p>
+ * Every sample keeps the last {@code sampleSize} latencies in a lock-free ring. Latencies are in microseconds, so
+ * percentiles of sub-millisecond actions are not rounded down to {@code 0}.
+ *
+ * @see ratpack.sep.exec.Hedge
+ */
+public class Latencies {
+  private final ConcurrentMap<String, Sample> samples = Maps.newConcurrentMap();
+  private final int sampleSize;
+
+  /**
+   * Constructor
+   * <p>
+   * Keeps the last 128 latencies of every action.
+   */
+  public Latencies() {
+    this(128);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sampleSize the number of the last latencies kept for every action
+   */
+  public Latencies(int sampleSize) {
+    this.sampleSize = Math.max(1, sampleSize);
+  }
+
+  /**
+   * Records the latency of the action execution.
+   *
+   * @param name the name of the action
+   * @param latency the latency in microseconds
+   */
+  public void record(String name, long latency) {
+    Sample sample = samples.get(name);
+    if (sample == null) {
+      sample = new Sample(sampleSize);
+      Sample current = samples.putIfAbsent(name, sample);
+      if (current != null) {
+        sample = current;
+      }
+    }
+    sample.record(latency);
+  }
+
+  /**
+   * The number of latencies recorded for the action, but no more than {@code sampleSize}.
+   *
+   * @param name the name of the action
+   * @return the number of recorded latencies
+   */
+  public int count(String name) {
+    Sample sample = samples.get(name);
+    return sample == null ? 0 : sample.count();
+  }
+
+  /**
+   * The percentile of recent latencies of the action.
+   *
+   * @param name the name of the action
+   * @param percentile the percentile, e.g. {@code 95}
+   * @return the latency in microseconds or {@code -1} if no latency was recorded
+   */
+  public long percentile(String name, double percentile) {
+    Sample sample = samples.get(name);
+    return sample == null ? -1 : sample.percentile(percentile);
+  }
+
+  private static final class Sample {
+    private final AtomicLongArray latencies;
+    private final AtomicLong index = new AtomicLong();
+
+    Sample(int size) {
+      this.latencies = new AtomicLongArray(size);
+    }
+
+    void record(long latency) {
+      latencies.set((int) (index.getAndIncrement() % latencies.length()), latency);
+    }
+
+    int count() {
+      return (int) Math.min(index.get(), latencies.length());
+    }
+
+    long percentile(double percentile) {
+      int count = count();
+      if (count == 0) {
+        return -1;
+      }
+      long[] sorted = new long[count];
+      for (int i = 0; i < count; i++) {
+        sorted[i] = latencies.get(i);
+      }
+      Arrays.sort(sorted);
+      int idx = (int) Math.ceil(percentile / 100 * count) - 1;
+      return sorted[Math.max(0, Math.min(count - 1, idx))];
+    }
+  }
+}
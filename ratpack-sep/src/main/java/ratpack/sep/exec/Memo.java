@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.Maps;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The results of actions memoized for the time of one request.
+ * <p>
+ * Memo added to the request registry is used by actions decorated with {@link #of(Registry, Action)}. The first
+ * execution of action with the given name and data executes the action, concurrent executions join it and executions
+ * after it finished get its result without executing the action again. Data is compared with {@code equals}.
+ * <p>
+ * Failed results are not memoized, so retries of failed action execute it again.
+ *
+ * <pre class="java">{@code
+ * ctx.getRequest().add(new Memo());
+ * Action<String, User> user = Memo.of(ctx, userAction);
+ * ctx.render(pattern.apply(ctx, ctx, Arrays.asList(user, orders), postAction));
+ * }</pre>
+ */
+public final class Memo {
+  private final ConcurrentMap<ActionKey, Flight> entries = Maps.newConcurrentMap();
+
+  /**
+   * Decorates {@code action}, so its results are memoized in the {@link Memo} found in the registry.
+   * If there is no memo in the registry, action executes as usual.
+   *
+   * @param registry the request registry
+   * @param action the action to decorate
+   * @param <T> a type of data processed by action
+   * @param <O> a type of data returned by action
+   * @return the memoized action
+   */
+  public static <T, O> Action<T, O> of(Registry registry, Action<T, O> action) {
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        return exec(execControl, getData());
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+        Memo memo = registry == null ? null : registry.maybeGet(Memo.class).orElse(null);
+        if (memo == null) {
+          return action.exec(execControl, t);
+        }
+        return memo.exec(execControl, action, t);
+      }
+    };
+  }
+
+  /**
+   * The number of memoized or running executions.
+   *
+   * @return the number of executions
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private <T, O> Promise<ActionResult<O>> exec(ExecControl execControl, Action<T, O> action, T data) {
+    ActionKey key = new ActionKey(action.getName(), data);
+    Flight entry = new Flight();
+    Flight current = entries.putIfAbsent(key, entry);
+    if (current != null) {
+      return current.join(execControl);
+    }
+    try {
+      return action.exec(execControl, data)
+        .mapError(ActionResult::error)
+        .wiretap(result -> complete(key, entry, result.getValue()));
+    } catch (Exception ex) {
+      ActionResult<O> result = ActionResult.error(ex);
+      complete(key, entry, result);
+      return execControl.promiseOf(result);
+    }
+  }
+
+  private void complete(ActionKey key, Flight entry, ActionResult<?> result) {
+    if (result == null || !result.isSuccess()) {
+      entries.remove(key, entry);
+    }
+    entry.complete(result);
+  }
+}
@@ -17,23 +17,45 @@
 package ratpack.sep.exec;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
+import org.reactivestreams.Publisher;
 import ratpack.sep.Action;
 import ratpack.sep.ActionResult;
 import ratpack.sep.ActionResults;
+import ratpack.sep.ActionResultsStream;
+import ratpack.sep.InlineAction;
+import ratpack.sep.PatternsModule;
+import ratpack.sep.internal.ActionResultsPublisher;
+import ratpack.sep.internal.IndexedResults;
+import ratpack.sep.metrics.PatternMetrics;
 import ratpack.exec.ExecControl;
+import ratpack.exec.Fulfiller;
 import ratpack.exec.Promise;
 import ratpack.registry.Registry;
 
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Lets actions to execute in parallel.
  *
  * Actions execute independently as {@code promises}. They are not notified about each other.
  *
+ * The number of actions executed at once could be limited with {@code maxConcurrency}. In such case the next action
+ * starts as soon as one of the running actions finishes.
+ *
+ * Every action could be limited with {@code actionTimeout} and all actions are limited by the {@link Deadline} registered
+ * in the request registry. Action that did not finish in time releases its slot with {@link ActionResult#TIMEOUT_CODE} result.
+ *
+ * By default execution is complete when all actions finished. {@link Completion} policy could complete it as soon as
+ * the first action, or the quorum of actions succeeded. Actions still running are then reported as abandoned.
+ *
+ * Results are collected by action name. If more actions have the same name, the result of the last one in the order of
+ * {@code actions} wins. {@code null} actions are reported as {@code ACTION_NULL_IDX_<position>} errors.
+ *
+ * Results could be collected into {@link ActionResults} or streamed one by one as soon as every action finishes.
+ * Streamed actions could be taken from lazy {@code Iterable} or Reactive Streams {@code Publisher}, pulling the next action
+ * only when it can start.
+ *
  * [source, java]
  * --
  * include::{test-dir}/ratpack/sep/exec/ParallelTest.java[tags=all]
@@ -52,6 +74,51 @@ public class Parallel<T, O> {
    */
   public static final String PATTERN_NAME = "parallel";
 
+  private final int defaultMaxConcurrency;
+  private final long actionTimeout;
+
+  /**
+   * Constructor
+   * <p>
+   * Number of actions executed at once is not limited.
+   */
+  public Parallel() {
+    this(0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultMaxConcurrency the default maximum number of actions executed at once. If {@code 0} the number is not limited.
+   *                              Can be overridden on {@code apply} method level.
+   */
+  public Parallel(int defaultMaxConcurrency) {
+    this(defaultMaxConcurrency, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param defaultMaxConcurrency the default maximum number of actions executed at once. If {@code 0} the number is not limited.
+   *                              Can be overridden on {@code apply} method level.
+   * @param actionTimeout the maximum time of every action execution in milliseconds. If {@code 0} the time is not limited.
+   */
+  public Parallel(int defaultMaxConcurrency, long actionTimeout) {
+    this.defaultMaxConcurrency = defaultMaxConcurrency;
+    this.actionTimeout = actionTimeout;
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Takes the default maximum concurrency and action timeout from the module configuration.
+   *
+   * @param config the patterns module configuration
+   */
+  public Parallel(PatternsModule.Config config) {
+    this(config.getMaxConcurrency(), config.getActionTimeout());
+  }
+
   /**
    * The name of the pattern
    *
@@ -75,49 +142,274 @@ public class Parallel<T, O> {
    * @throws Exception any
    */
   public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, Iterable<Action<T, O>> actions) throws Exception {
+    return apply(execControl, registry, actions, null, Completion.all());
+  }
+
+  /**
+   * Executes {@code actions} in parallel, but no more than {@code actionMaxConcurrency} at once.
+   * <p>
+   * Default maximum concurrency could be set as {@link ratpack.sep.PatternsModule.Config#maxConcurrency} but could be
+   * overridden as {@code actionMaxConcurrency}.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the collections of actions to execute in parallel
+   * @param actionMaxConcurrency the maximum number of actions executed at once. If {@code 0} the number is not limited.
+   * @return a promise for the results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl,
+                                         Registry registry,
+                                         Iterable<Action<T, O>> actions,
+                                         Integer actionMaxConcurrency) throws Exception {
+    return apply(execControl, registry, actions, actionMaxConcurrency, Completion.all());
+  }
+
+  /**
+   * Executes {@code actions} in parallel, but no more than {@code actionMaxConcurrency} at once, until {@code completion}
+   * policy is met.
+   * <p>
+   * Actions still running when policy is met are reported with {@link ActionResult#ABANDONED_CODE} result.
+   * Actions not started yet are not executed and are not reported.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the collections of actions to execute in parallel
+   * @param actionMaxConcurrency the maximum number of actions executed at once. If {@code 0} the number is not limited.
+   * @param completion the policy that decides when execution is complete
+   * @return a promise for the results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl,
+                                         Registry registry,
+                                         Iterable<Action<T, O>> actions,
+                                         Integer actionMaxConcurrency,
+                                         Completion completion) throws Exception {
     Iterator<Action<T, O>> iterator = actions.iterator();
     if (!iterator.hasNext()) {
       return execControl.promiseOf(new ActionResults<>(ImmutableMap.of()));
     }
 
-    return execControl.<Map<String, ActionResult<O>>>promise(fulfiller -> {
-      AtomicInteger counter = new AtomicInteger();
-      Map<String, ActionResult<O>> results = Maps.newConcurrentMap();
-      while (iterator.hasNext()) {
-        counter.incrementAndGet();
-        Action<T, O> action = iterator.next();
-        if (action == null || action.getName() == null) {
-          int i = counter.decrementAndGet();
-          results.put("ACTION_NULL_IDX_" + i, ActionResult.error(new NullPointerException()));
-          if (i == 0 && !iterator.hasNext()) {
-            fulfiller.success(results);
+    int maxConcurrency = actionMaxConcurrency != null ? actionMaxConcurrency : defaultMaxConcurrency;
+
+    int capacity = actions instanceof Collection ? ((Collection<?>) actions).size() : 0;
+
+    return PatternMetrics.of(registry).time(PATTERN_NAME, execControl.<IndexedResults<O>>promise(fulfiller ->
+      new Window(execControl, registry, iterator, maxConcurrency, completion, capacity, fulfiller).release(-1, null)
+    ).map(results -> new ActionResults<O>(results)));
+  }
+
+  /**
+   * Executes {@code actions} in parallel and streams the result of every action as soon as it finishes.
+   * <p>
+   * Actions are started on subscriber demand, so only the results not yet rendered are kept in memory.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the collections of actions to execute in parallel
+   * @param actionMaxConcurrency the maximum number of actions executed at once. If {@code 0} the number is limited by
+   *                             subscriber demand only.
+   * @return a stream of results rendered as new line delimited {@code JSON}
+   * @see #stream(ExecControl, Registry, Iterable, Integer, ActionResultsStream.Format)
+   */
+  public ActionResultsStream<O> stream(ExecControl execControl,
+                                       Registry registry,
+                                       Iterable<Action<T, O>> actions,
+                                       Integer actionMaxConcurrency) {
+    return stream(execControl, registry, actions, actionMaxConcurrency, ActionResultsStream.Format.NDJSON);
+  }
+
+  /**
+   * Executes {@code actions} in parallel and streams the result of every action as soon as it finishes.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the collections of actions to execute in parallel
+   * @param actionMaxConcurrency the maximum number of actions executed at once. If {@code 0} the number is limited by
+   *                             subscriber demand only.
+   * @param format the format of the rendered stream
+   * @return a stream of results
+   */
+  public ActionResultsStream<O> stream(ExecControl execControl,
+                                       Registry registry,
+                                       Iterable<Action<T, O>> actions,
+                                       Integer actionMaxConcurrency,
+                                       ActionResultsStream.Format format) {
+    int maxConcurrency = actionMaxConcurrency != null ? actionMaxConcurrency : defaultMaxConcurrency;
+    return new ActionResultsStream<>(new ActionResultsPublisher<>(execControl, registry, actions, maxConcurrency, actionTimeout), format);
+  }
+
+  /**
+   * Executes actions published by {@code actions} in parallel and streams the result of every action as soon as it finishes.
+   * <p>
+   * Actions are requested from the publisher only when they can start, i.e. when subscriber requested results and fewer
+   * than {@code actionMaxConcurrency} actions are running. So actions generated from a large source, e.g. paged query,
+   * are never all in memory at once.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the publisher of actions to execute in parallel
+   * @param actionMaxConcurrency the maximum number of actions executed at once. If {@code 0} the number is limited by
+   *                             subscriber demand only.
+   * @return a stream of results rendered as new line delimited {@code JSON}
+   * @see #stream(ExecControl, Registry, Publisher, Integer, ActionResultsStream.Format)
+   */
+  public ActionResultsStream<O> stream(ExecControl execControl,
+                                       Registry registry,
+                                       Publisher<Action<T, O>> actions,
+                                       Integer actionMaxConcurrency) {
+    return stream(execControl, registry, actions, actionMaxConcurrency, ActionResultsStream.Format.NDJSON);
+  }
+
+  /**
+   * Executes actions published by {@code actions} in parallel and streams the result of every action as soon as it finishes.
+   * <p>
+   * Error of {@code actions} publisher ends the stream with the error, after results of actions already started.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the publisher of actions to execute in parallel
+   * @param actionMaxConcurrency the maximum number of actions executed at once. If {@code 0} the number is limited by
+   *                             subscriber demand only.
+   * @param format the format of the rendered stream
+   * @return a stream of results
+   */
+  public ActionResultsStream<O> stream(ExecControl execControl,
+                                       Registry registry,
+                                       Publisher<Action<T, O>> actions,
+                                       Integer actionMaxConcurrency,
+                                       ActionResultsStream.Format format) {
+    int maxConcurrency = actionMaxConcurrency != null ? actionMaxConcurrency : defaultMaxConcurrency;
+    return new ActionResultsStream<>(new ActionResultsPublisher<>(execControl, registry, actions, maxConcurrency, actionTimeout), format);
+  }
+
+  /**
+   * Keeps at most {@code limit} actions running. Every finished action releases its slot for the next one.
+   * <p>
+   * Results are collected into slots indexed by the position of started action, guarded by the window lock.
+   */
+  private final class Window {
+    private final ExecControl execControl;
+    private final Registry registry;
+    private final Iterator<Action<T, O>> iterator;
+    private final int limit;
+    private final Completion completion;
+    private final Fulfiller<IndexedResults<O>> fulfiller;
+    private final IndexedResults<O> results;
+    private int active;
+    private int finished;
+    private int succeeded;
+    private boolean completed;
+
+    Window(ExecControl execControl,
+           Registry registry,
+           Iterator<Action<T, O>> iterator,
+           int limit,
+           Completion completion,
+           int capacity,
+           Fulfiller<IndexedResults<O>> fulfiller) {
+      this.execControl = execControl;
+      this.registry = registry;
+      this.iterator = iterator;
+      this.limit = limit;
+      this.completion = completion;
+      this.fulfiller = fulfiller;
+      this.results = new IndexedResults<>(capacity);
+    }
+
+    void release(int position, ActionResult<O> result) {
+      int finishedPosition = position;
+      ActionResult<O> finishedResult = result;
+      while (true) {
+        int from;
+        int to;
+        boolean complete;
+        synchronized (this) {
+          if (completed) {
+            // abandoned action finished after completion
             return;
           }
-          continue;
+          if (finishedPosition >= 0) {
+            record(finishedPosition, finishedResult);
+          }
+          from = results.length();
+          complete = refill();
+          to = results.length();
+        }
+        if (complete) {
+          fulfiller.success(results);
+          return;
+        }
+        boolean inline = false;
+        for (int next = from; next < to; next++) {
+          inline |= start(next);
         }
-        execControl.exec().start(execution ->
-            apply(execution, action)
-              .defer(Runnable::run)
-              .wiretap(result -> {
-
-              })
-              .then(result -> {
-                results.put(action.getName(), result);
-                if (counter.decrementAndGet() == 0 && !iterator.hasNext()) {
-                  fulfiller.success(results);
-                }
-              })
-        );
+        if (!inline) {
+          return;
+        }
+        // inline actions finished, so their slots are released by the next pass, without recursion
+        finishedPosition = -1;
+        finishedResult = null;
       }
-    }).map(ImmutableMap::copyOf)
-      .map(map -> new ActionResults<O>(map));
-  }
+    }
 
-  private Promise<ActionResult<O>> apply(ExecControl execControl, Action<T, O> action) {
-    try {
-      return action.exec(execControl).mapError(ActionResult::error);
-    } catch (Exception ex) {
-      return execControl.promiseOf(ActionResult.error(ex));
+    private void record(int position, ActionResult<O> result) {
+      active--;
+      finished++;
+      if (result.isSuccess()) {
+        succeeded++;
+      }
+      results.set(position, result);
+    }
+
+    private boolean refill() {
+      if (completion.isMet(finished, succeeded)) {
+        results.fill(ActionResult.error(ActionResult.ABANDONED_CODE, "Action abandoned on completion"));
+        completed = true;
+      } else {
+        while ((limit <= 0 || active < limit) && iterator.hasNext()) {
+          Action<T, O> nextAction = iterator.next();
+          if (nextAction == null || nextAction.getName() == null) {
+            results.set(results.add("ACTION_NULL_IDX_" + results.length()), ActionResult.error(new NullPointerException()));
+            continue;
+          }
+          active++;
+          results.add(nextAction);
+        }
+        completed = active == 0 && !iterator.hasNext();
+      }
+      return completed;
+    }
+
+    /**
+     * Starts the action in the given slot.
+     *
+     * @return {@code true} if the action was inline and its result is already recorded
+     */
+    @SuppressWarnings("unchecked")
+    private boolean start(int position) {
+      Action<T, O> action;
+      synchronized (this) {
+        action = results.action(position);
+      }
+      if (action == null) {
+        return false;
+      }
+      if (action instanceof InlineAction) {
+        InlineAction<T, O> inline = (InlineAction<T, O>) action;
+        ActionResult<O> result = Timeout.inline(registry, inline, inline.getData());
+        synchronized (this) {
+          if (!completed) {
+            record(position, result);
+          }
+        }
+        return true;
+      }
+      execControl.exec().start(execution ->
+          Timeout.exec(execution, registry, action, actionTimeout)
+            .then(result -> release(position, result))
+      );
+      return false;
     }
   }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.sep.PatternsModule;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The bound of asynchronous retries of {@link InvokeWithRetry} pending in background.
+ * <p>
+ * Every action retried asynchronously holds one place until its retries finish. If all places are taken, e.g. during
+ * backend outage, new asynchronous retries are suppressed instead of accumulating in memory.
+ * Instance bound by {@link PatternsModule} is shared by all patterns, otherwise every pattern uses its own.
+ *
+ * @see ratpack.sep.exec.AsyncRetryListener
+ */
+public class PendingRetries {
+
+  /**
+   * The default maximum number of pending retries.
+   *
+   * Value: {@value}
+   */
+  public static final int DEFAULT_MAX_PENDING = 1000;
+
+  private final int maxPending;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public PendingRetries(PatternsModule.Config config) {
+    this(config.getMaxPendingRetries());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param maxPending the maximum number of actions retried in background at once. If {@code 0} the number is not limited.
+   */
+  public PendingRetries(int maxPending) {
+    this.maxPending = Math.max(0, maxPending);
+  }
+
+  /**
+   * The number of actions retried in background now.
+   *
+   * @return the number of pending retries
+   */
+  public int getPending() {
+    return pending.get();
+  }
+
+  /**
+   * The number of actions not retried, because too many retries were pending.
+   *
+   * @return the number of rejected retries
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Tries to take the place for background retries.
+   *
+   * @return true if retries can start
+   */
+  public boolean tryAcquire() {
+    if (!tryResume()) {
+      rejected.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Tries to take the place for retries resumed from {@link RetryJournal}. If all places are taken the entry waits in
+   * the journal, so it is not counted as rejected.
+   *
+   * @return true if retries can start
+   */
+  boolean tryResume() {
+    if (pending.incrementAndGet() > maxPending && maxPending > 0) {
+      pending.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Releases the place taken by finished retries.
+   */
+  public void release() {
+    pending.decrementAndGet();
+  }
+}
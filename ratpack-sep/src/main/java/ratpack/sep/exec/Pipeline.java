@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.PatternsModule;
+import ratpack.sep.internal.IndexedResults;
+import ratpack.sep.metrics.PatternMetrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets actions to execute one after another, passing the data of every result to the next action.
+ *
+ * Typical pipeline is VETO: <b>V</b>erify, <b>E</b>nrich, <b>T</b>ransform and <b>O</b>perate.
+ * Every step gets {@link ActionResult#getData()} of the previous step as parameter of {@link Action#exec(ExecControl, Object)}.
+ * The first step gets the pipeline data or, if there is none, its own data.
+ *
+ * Pipeline stops at the first failed step and its result is the result of the pipeline.
+ * Steps execute one after another, every step starts when the previous one finished. By default only the result of the
+ * last executed step is kept, results of all executed steps are kept if {@code keepResults} is requested.
+ * Kept results of intermediate steps are returned as {@code ActionResult<O>}, although their data are of the types
+ * returned by those steps, so only the data of the last step is safe to read as {@code O}.
+ *
+ * Every step could be limited with {@code actionTimeout} and all steps are limited by the {@link Deadline} registered in
+ * the request registry. Every step executes in the calling execution.
+ *
+ * <pre class="java">{@code
+ * Pipeline<Request, Response> pattern = new Pipeline<>();
+ * ctx.render(pattern.apply(ctx, ctx, Arrays.asList(verify, enrich, transform, operate), request, null));
+ * }</pre>
+ *
+ * @see ratpack.sep.Action
+ * @see ratpack.sep.ActionResult
+ * @see ratpack.sep.ActionResults
+ */
+public class Pipeline<T, O> {
+
+  /**
+   * The name of the pattern that indicates pattern to execute in handler.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "pipeline";
+
+  private final boolean keepResults;
+  private final long actionTimeout;
+
+  /**
+   * Constructor
+   * <p>
+   * Keeps the result of the last executed step only and does not limit the time of steps.
+   */
+  public Pipeline() {
+    this(false, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param keepResults if true results of all executed steps are returned, otherwise the result of the last executed step
+   * @param actionTimeout the maximum time of every step in milliseconds. If {@code 0} the time is not limited.
+   */
+  public Pipeline(boolean keepResults, long actionTimeout) {
+    this.keepResults = keepResults;
+    this.actionTimeout = actionTimeout;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public Pipeline(PatternsModule.Config config) {
+    this(false, config.getActionTimeout());
+  }
+
+  /**
+   * The name of the pattern.
+   *
+   * @return the name of the pattern
+   */
+  public String getName() {
+    return PATTERN_NAME;
+  }
+
+  /**
+   * Executes {@code actions} one after another, the first one with its own data.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the steps of the pipeline
+   * @return a promise for the results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Registry registry, List<? extends Action<?, ?>> actions) throws Exception {
+    return apply(execControl, registry, actions, null, null);
+  }
+
+  /**
+   * Executes {@code actions} one after another, passing {@code data} to the first one.
+   *
+   * @param execControl an execution control
+   * @param registry the server registry
+   * @param actions the steps of the pipeline
+   * @param data the data passed to the first step. If {@code null} the first step executes with its own data.
+   * @param actionKeepResults if true results of all executed steps are returned, otherwise the result of the last
+   *                          executed step. If {@code null} the default from constructor is used. Data of intermediate
+   *                          results are not checked to be {@code O}.
+   * @return a promise for the results
+   * @throws Exception any
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl,
+                                         Registry registry,
+                                         List<? extends Action<?, ?>> actions,
+                                         T data,
+                                         Boolean actionKeepResults) throws Exception {
+    if (actions == null || actions.isEmpty()) {
+      return execControl.promiseOf(new ActionResults<O>(ImmutableMap.of()));
+    }
+
+    boolean keep = actionKeepResults != null ? actionKeepResults : keepResults;
+    IndexedResults<Object> results = keep ? new IndexedResults<>(actions.size()) : null;
+    return PatternMetrics.of(registry).time(PATTERN_NAME, step(execControl, registry, actions, 0, data, results));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Promise<ActionResults<O>> step(ExecControl execControl,
+                                         Registry registry,
+                                         List<? extends Action<?, ?>> actions,
+                                         int position,
+                                         Object data,
+                                         IndexedResults<Object> results) {
+    Action<Object, Object> action = (Action<Object, Object>) actions.get(position);
+    if (action == null || action.getName() == null) {
+      return execControl.promiseOf(finish(results, "ACTION_NULL_IDX_" + position, ActionResult.error(new NullPointerException())));
+    }
+
+    Promise<ActionResult<Object>> promise = position == 0 && data == null
+      ? Timeout.exec(execControl, registry, action, actionTimeout)
+      : Timeout.exec(execControl, registry, action, data, actionTimeout);
+    return promise.flatMap(result -> {
+      if (!result.isSuccess() || position == actions.size() - 1) {
+        return execControl.promiseOf(finish(results, action.getName(), result));
+      }
+      if (results != null) {
+        results.set(results.add(action), result);
+      }
+      return step(execControl, registry, actions, position + 1, result.getData(), results);
+    });
+  }
+
+  // results of intermediate steps are cast unchecked, their data are of the types of the steps
+  @SuppressWarnings("unchecked")
+  private ActionResults<O> finish(IndexedResults<Object> results, String name, ActionResult<Object> result) {
+    if (results == null) {
+      return new ActionResults<>(ImmutableMap.of(name, (ActionResult<O>) (ActionResult<?>) result));
+    }
+    results.set(results.add(name), result);
+    return new ActionResults<>((Map<String, ActionResult<O>>) (Map<String, ?>) results);
+  }
+}
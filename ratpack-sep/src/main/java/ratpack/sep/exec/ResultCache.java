@@ -0,0 +1,288 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.PatternsModule;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * The results of idempotent actions cached across requests, keyed by action name and data.
+ * <p>
+ * Instance bound by {@link PatternsModule} is shared by all {@link Cache} patterns, that find it in the registry.
+ * <p>
+ * Result is fresh for {@code ttl} milliseconds. For the next {@code staleTtl} milliseconds stale result is returned
+ * immediately while the action executes again in background (stale-while-revalidate). Older results are loaded again.
+ * Concurrent loads of the same action and data are executed once (single-flight), other executions join the running one.
+ * Failed results are not cached, unless {@code cacheErrors} is set.
+ * <p>
+ * Load times out after {@code loadTimeout} milliseconds, so action that never completes does not keep its flight,
+ * and next execution loads the result again instead of joining it. Timed out results are never cached.
+ * <p>
+ * Cache is bounded by {@code maxWeight}. The least recently used results are evicted first. Weight of every result
+ * is given by {@code weigher}, by default {@code 1}. Results are removed when their stale time passes, so expired
+ * results do not take the place of live ones.
+ *
+ * @see ratpack.sep.exec.Cache
+ */
+public class ResultCache {
+  /**
+   * The default time in milliseconds after which load of result times out.
+   * Value: {@value}
+   */
+  public static final long DEFAULT_LOAD_TIMEOUT = 10000;
+
+  private final com.google.common.cache.Cache<ActionKey, Entry> entries;
+  private final ConcurrentMap<ActionKey, Flight> flights = Maps.newConcurrentMap();
+  private final Settings defaults;
+  private final Map<String, Settings> settings = new HashMap<>();
+  private final LongSupplier clock;
+  private final long loadTimeout;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructor
+   * <p>
+   * Caches up to 10000 successful results for 1 minute.
+   */
+  public ResultCache() {
+    this(new PatternsModule.Config());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public ResultCache(PatternsModule.Config config) {
+    this(config.getCacheTtl(),
+      config.getCacheStaleTtl(),
+      config.isCacheErrors(),
+      config.getCacheMaxWeight(),
+      config.getCacheLoadTimeout(),
+      config.getCaches(),
+      result -> 1,
+      System::currentTimeMillis);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param ttl the time in milliseconds result is fresh
+   * @param staleTtl the time in milliseconds after {@code ttl} stale result is returned while it is loaded again
+   * @param cacheErrors if true failed results are cached too
+   * @param maxWeight the maximum weight of all cached results
+   * @param caches the settings of particular actions by action name, overriding the defaults above
+   * @param weigher the weight of every result
+   * @param clock the source of the current time in milliseconds
+   */
+  public ResultCache(long ttl,
+                     long staleTtl,
+                     boolean cacheErrors,
+                     long maxWeight,
+                     Map<String, PatternsModule.Config.CacheSettings> caches,
+                     ToIntFunction<ActionResult<?>> weigher,
+                     LongSupplier clock) {
+    this(ttl, staleTtl, cacheErrors, maxWeight, DEFAULT_LOAD_TIMEOUT, caches, weigher, clock);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param ttl the time in milliseconds result is fresh
+   * @param staleTtl the time in milliseconds after {@code ttl} stale result is returned while it is loaded again
+   * @param cacheErrors if true failed results are cached too
+   * @param maxWeight the maximum weight of all cached results
+   * @param loadTimeout the time in milliseconds after which load of result times out, if {@code 0} load is not limited
+   * @param caches the settings of particular actions by action name, overriding the defaults above
+   * @param weigher the weight of every result
+   * @param clock the source of the current time in milliseconds
+   */
+  public ResultCache(long ttl,
+                     long staleTtl,
+                     boolean cacheErrors,
+                     long maxWeight,
+                     long loadTimeout,
+                     Map<String, PatternsModule.Config.CacheSettings> caches,
+                     ToIntFunction<ActionResult<?>> weigher,
+                     LongSupplier clock) {
+    this.defaults = new Settings(ttl, staleTtl, cacheErrors);
+    caches.forEach((name, cache) -> settings.put(name, new Settings(cache.getTtl(), cache.getStaleTtl(), cache.isCacheErrors())));
+    long expireAfter = defaults.lifetime();
+    for (Settings cache : settings.values()) {
+      expireAfter = Math.max(expireAfter, cache.lifetime());
+    }
+    this.entries = CacheBuilder.newBuilder()
+      .maximumWeight(Math.max(0, maxWeight))
+      .weigher((ActionKey key, Entry entry) -> Math.max(0, weigher.applyAsInt(entry.result)))
+      .expireAfterWrite(expireAfter, TimeUnit.MILLISECONDS)
+      .ticker(new Ticker() {
+        @Override
+        public long read() {
+          return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+        }
+      })
+      .recordStats()
+      .build();
+    this.clock = clock;
+    this.loadTimeout = Math.max(0, loadTimeout);
+  }
+
+  /**
+   * The number of fresh results returned.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * The number of stale results returned while loaded again.
+   *
+   * @return the number of stale hits
+   */
+  public long getStaleHits() {
+    return staleHits.get();
+  }
+
+  /**
+   * The number of executions that had to wait for the action, including executions joining the running one.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * The number of results evicted to keep the weight of cache below {@code maxWeight} or removed when their stale
+   * time passed.
+   *
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return entries.stats().evictionCount();
+  }
+
+  /**
+   * The number of cached results, fresh or stale.
+   *
+   * @return the number of results
+   */
+  public long size() {
+    entries.cleanUp();
+    return entries.size();
+  }
+
+  /**
+   * Removes all cached results.
+   */
+  public void invalidateAll() {
+    entries.invalidateAll();
+  }
+
+  @SuppressWarnings("unchecked")
+  <T, O> Promise<ActionResult<O>> exec(ExecControl execControl, Action<T, O> action, T data) {
+    ActionKey key = new ActionKey(action.getName(), data);
+    Entry entry = entries.getIfPresent(key);
+    long now = clock.getAsLong();
+    if (entry != null && now < entry.expiresAt) {
+      hits.incrementAndGet();
+      return execControl.promiseOf((ActionResult<O>) entry.result);
+    }
+    if (entry != null && now < entry.staleUntil) {
+      staleHits.incrementAndGet();
+      if (!flights.containsKey(key)) {
+        execControl.exec().start(execution -> load(execution, key, action, data).then(result -> {
+        }));
+      }
+      return execControl.promiseOf((ActionResult<O>) entry.result);
+    }
+    if (entry != null) {
+      // results of actions with shorter lifetime than the longest one are not removed by the cache itself
+      entries.asMap().remove(key, entry);
+    }
+    misses.incrementAndGet();
+    return load(execControl, key, action, data);
+  }
+
+  private <T, O> Promise<ActionResult<O>> load(ExecControl execControl, ActionKey key, Action<T, O> action, T data) {
+    Flight flight = new Flight();
+    Flight current = flights.putIfAbsent(key, flight);
+    if (current != null) {
+      return current.join(execControl);
+    }
+    // the flight is shared by requests, so the deadline of the request that started it does not limit the load
+    return Timeout.limit(execControl, null, loadTimeout, execution -> action.exec(execution, data))
+      .wiretap(result -> loaded(key, flight, result.getValue()));
+  }
+
+  private void loaded(ActionKey key, Flight flight, ActionResult<?> result) {
+    Settings cache = settings.getOrDefault(key.getName(), defaults);
+    if (result != null && (result.isSuccess() || cache.cacheErrors && !ActionResult.TIMEOUT_CODE.equals(result.getCode()))) {
+      long now = clock.getAsLong();
+      entries.put(key, new Entry(result, now + cache.ttl, now + cache.ttl + cache.staleTtl));
+    }
+    flights.remove(key, flight);
+    flight.complete(result);
+  }
+
+  private static final class Settings {
+    private final long ttl;
+    private final long staleTtl;
+    private final boolean cacheErrors;
+
+    Settings(long ttl, long staleTtl, boolean cacheErrors) {
+      this.ttl = ttl;
+      this.staleTtl = staleTtl;
+      this.cacheErrors = cacheErrors;
+    }
+
+    long lifetime() {
+      return Math.max(0, ttl) + Math.max(0, staleTtl);
+    }
+  }
+
+  private static final class Entry {
+    private final ActionResult<?> result;
+    private final long expiresAt;
+    private final long staleUntil;
+
+    Entry(ActionResult<?> result, long expiresAt, long staleUntil) {
+      this.result = result;
+      this.expiresAt = expiresAt;
+      this.staleUntil = staleUntil;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.registry.Registry;
+import ratpack.sep.PatternsModule;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The token bucket that limits retries of all requests to the given percentage of normal traffic.
+ * <p>
+ * Instance bound by {@link PatternsModule} is found by {@link InvokeWithRetry} in the registry. It is disabled by default.
+ * Every first execution of action deposits {@code percent / 100} of a token and every retry withdraws one token.
+ * Retry is suppressed if less than one token is left, so during an outage backend receives no more than
+ * {@code percent} more executions than without retries, instead of {@code retryCount + 1} times more.
+ * The bucket holds no more than {@code maxTokens} and starts full, which allows short bursts of retries.
+ * <p>
+ * The balance is updated lock-free. Deposits to the full bucket, the usual state of a healthy system, do not write at all.
+ *
+ * @see ratpack.sep.exec.InvokeWithRetry
+ */
+public class RetryBudget {
+  private static final long TOKEN = 1000;
+
+  private final boolean enabled;
+  private final long deposit;
+  private final long maxBalance;
+  private final AtomicLong balance;
+  private final LongAdder suppressed = new LongAdder();
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public RetryBudget(PatternsModule.Config config) {
+    this(config.isRetryBudget(), config.getRetryBudgetPercent(), config.getRetryBudgetMaxTokens());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param enabled if false retries are never suppressed
+   * @param percent the percentage of first executions that can be retried
+   * @param maxTokens the maximum number of retries that can be saved for later
+   */
+  public RetryBudget(boolean enabled, int percent, int maxTokens) {
+    this.enabled = enabled;
+    this.deposit = Math.max(0, percent) * TOKEN / 100;
+    this.maxBalance = Math.max(1, maxTokens) * TOKEN;
+    this.balance = new AtomicLong(maxBalance);
+  }
+
+  /**
+   * The enabled budget registered in the given registry.
+   *
+   * @param registry the registry
+   * @return the budget or {@code null} if not registered or disabled
+   */
+  public static RetryBudget of(Registry registry) {
+    RetryBudget budget = registry == null ? null : registry.maybeGet(RetryBudget.class).orElse(null);
+    return budget != null && budget.enabled ? budget : null;
+  }
+
+  /**
+   * The number of retries currently allowed.
+   *
+   * @return the number of whole tokens in the bucket
+   */
+  public int getTokens() {
+    return (int) (balance.get() / TOKEN);
+  }
+
+  /**
+   * The number of retries suppressed, because the bucket was empty.
+   *
+   * @return the number of suppressed retries
+   */
+  public long getSuppressed() {
+    return suppressed.sum();
+  }
+
+  /**
+   * Records the first execution of action.
+   */
+  public void deposit() {
+    long current = balance.get();
+    while (current < maxBalance && !balance.compareAndSet(current, Math.min(maxBalance, current + deposit))) {
+      current = balance.get();
+    }
+  }
+
+  /**
+   * Tries to withdraw one token for the retry.
+   *
+   * @return true if retry is allowed, false if it has to be suppressed
+   */
+  public boolean tryRetry() {
+    long current = balance.get();
+    while (current >= TOKEN) {
+      if (balance.compareAndSet(current, current - TOKEN)) {
+        return true;
+      }
+      current = balance.get();
+    }
+    suppressed.increment();
+    return false;
+  }
+}
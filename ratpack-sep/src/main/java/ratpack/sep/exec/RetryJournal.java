@@ -0,0 +1,475 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.PatternsModule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The durable journal of actions retried asynchronously by {@link InvokeWithRetry}.
+ * <p>
+ * Before background retries start, the action name, its data serialized to JSON and the number of remaining retries are
+ * appended to the memory-mapped file. After every failed attempt the number of remaining retries is appended again, and
+ * when retries finish, the completion is appended. After restart, actions not completed are read from the file and
+ * {@link InvokeWithRetry} resumes them in background with the remaining retries and its backoff policy,
+ * when the server starts ({@link RetryJournalService}). Actions are recreated from name and data by {@link ActionResolver}
+ * registered in the registry. Recovered actions over {@link PendingRetries} limit wait in the journal and are resumed
+ * as background retries finish.
+ * <p>
+ * Appending copies the record to the mapped memory only. The file is synced every {@code syncInterval} milliseconds by
+ * a background thread started with the first append, so the request path does not wait for the disk. If
+ * {@code syncInterval} is {@code 0} every append is synced immediately. Disabled journal does not start the thread.
+ * <p>
+ * The journal is compacted when all entries are completed, by starting from the beginning of the file, or when the file
+ * is full, by rewriting the pending entries to the new file. If pending entries do not fit, the action is retried without
+ * the journal.
+ * <p>
+ * Every record is {@code [int length][int crc32][byte type][long id][int retries][payload]}. Reading stops at the first
+ * record that is incomplete or its checksum does not match.
+ *
+ * @see ratpack.sep.exec.InvokeWithRetry
+ */
+public class RetryJournal implements AutoCloseable {
+
+  /**
+   * Recreates the journaled action from its name and data.
+   */
+  @FunctionalInterface
+  public interface ActionResolver {
+
+    /**
+     * Recreates the action.
+     *
+     * @param name the name of the action
+     * @param data the data of the action serialized to JSON
+     * @return the action or {@code null} if the action is not known any more
+     * @throws Exception any
+     */
+    Action<?, ?> resolve(String name, JsonNode data) throws Exception;
+  }
+
+  /**
+   * The pending entry of the journal.
+   */
+  public static final class Entry {
+    private final long id;
+    private final String name;
+    private final JsonNode data;
+    private final int retries;
+    private final byte[] payload;
+
+    private Entry(long id, String name, JsonNode data, int retries, byte[] payload) {
+      this.id = id;
+      this.name = name;
+      this.data = data;
+      this.retries = retries;
+      this.payload = payload;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public JsonNode getData() {
+      return data;
+    }
+
+    public int getRetries() {
+      return retries;
+    }
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(RetryJournal.class);
+
+  private static final byte APPEND = 1;
+  private static final byte COMPLETE = 2;
+  private static final byte RETRIED = 3;
+  private static final int HEADER = 8;
+  private static final int BODY = 13;
+
+  private final Path file;
+  private final int capacity;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Map<Long, Entry> pending = new LinkedHashMap<>();
+  private final Deque<Entry> recovered = new ArrayDeque<>();
+  private final long syncInterval;
+  private ScheduledExecutorService syncer;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private long nextId;
+  private boolean dirty;
+
+  /**
+   * Constructor
+   * <p>
+   * Opens the journal file given as {@code retryJournal} configuration option.
+   *
+   * @param config the patterns module configuration
+   * @throws IOException if the journal file can not be opened
+   */
+  public RetryJournal(PatternsModule.Config config) throws IOException {
+    this(config.getRetryJournal() != null ? Paths.get(config.getRetryJournal()) : null,
+      config.getRetryJournalSize(),
+      config.getRetryJournalSyncInterval());
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Opens the journal file and reads entries pending before restart.
+   *
+   * @param file the journal file. If {@code null} the journal is disabled.
+   * @param capacity the size of the journal file in bytes
+   * @param syncInterval the time in milliseconds between syncs of the file. If {@code 0} every append is synced.
+   * @throws IOException if the journal file can not be opened
+   */
+  public RetryJournal(Path file, int capacity, long syncInterval) throws IOException {
+    this.file = file;
+    this.capacity = Math.max(1024, capacity);
+    this.syncInterval = Math.max(0, syncInterval);
+    if (file == null) {
+      return;
+    }
+    map(file);
+    recover();
+    recovered.addAll(pending.values());
+  }
+
+  /**
+   * The enabled journal registered in the given registry.
+   *
+   * @param registry the registry
+   * @return the journal or {@code null} if not registered or disabled
+   */
+  public static RetryJournal of(Registry registry) {
+    RetryJournal journal = registry == null ? null : registry.maybeGet(RetryJournal.class).orElse(null);
+    return journal != null && journal.file != null ? journal : null;
+  }
+
+  /**
+   * The number of pending entries.
+   *
+   * @return the number of actions not completed
+   */
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  /**
+   * Takes the entries pending before restart. The entries are returned only once.
+   *
+   * @return the entries read from the journal file when it was opened and not taken yet
+   */
+  public synchronized List<Entry> takeRecovered() {
+    if (recovered.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Entry> entries = new ArrayList<>(recovered);
+    recovered.clear();
+    return entries;
+  }
+
+  /**
+   * Takes the next entry pending before restart.
+   *
+   * @return the entry read from the journal file when it was opened or {@code null} if all were taken
+   */
+  public synchronized Entry pollRecovered() {
+    return recovered.pollFirst();
+  }
+
+  /**
+   * Are there entries pending before restart and not taken yet?
+   *
+   * @return true if {@link #pollRecovered()} returns an entry
+   */
+  public synchronized boolean hasRecovered() {
+    return !recovered.isEmpty();
+  }
+
+  /**
+   * Appends the action to the journal.
+   *
+   * @param action the action retried in background
+   * @param retries the number of remaining retries
+   * @return the id of the entry or {@code -1} if the action could not be journaled
+   */
+  public long append(Action<?, ?> action, int retries) {
+    byte[] payload;
+    try {
+      ObjectNode node = mapper.createObjectNode();
+      node.put("name", action.getName());
+      node.set("data", mapper.valueToTree(action.getData()));
+      payload = mapper.writeValueAsBytes(node);
+    } catch (Exception ex) {
+      LOG.warn("Action " + action.getName() + " can not be journaled", ex);
+      return -1;
+    }
+    synchronized (this) {
+      if (buffer == null) {
+        // closed, the action is retried without the journal
+        return -1;
+      }
+      long id = nextId++;
+      Entry entry = new Entry(id, action.getName(), null, retries, payload);
+      if (!fits(payload.length)) {
+        compact();
+        if (!fits(payload.length)) {
+          LOG.warn("Retry journal {} is full, action {} is not journaled", file, action.getName());
+          return -1;
+        }
+      }
+      write(buffer, APPEND, id, retries, payload);
+      pending.put(id, entry);
+      written();
+      return id;
+    }
+  }
+
+  /**
+   * Records the number of remaining retries of the entry after failed attempt, so the action resumed after restart does
+   * not retry from the beginning.
+   *
+   * @param id the id of the entry
+   * @param retries the number of remaining retries
+   */
+  public synchronized void retried(long id, int retries) {
+    Entry entry = id < 0 || buffer == null ? null : pending.get(id);
+    if (entry == null) {
+      return;
+    }
+    pending.put(id, new Entry(id, entry.name, entry.data, retries, entry.payload));
+    if (!fits(0)) {
+      // compaction rewrites the entry with the remaining retries
+      compact();
+      return;
+    }
+    write(buffer, RETRIED, id, retries, new byte[0]);
+    written();
+  }
+
+  /**
+   * Marks the entry as completed.
+   *
+   * @param id the id of the entry
+   */
+  public synchronized void complete(long id) {
+    if (id < 0 || buffer == null || pending.remove(id) == null) {
+      return;
+    }
+    if (pending.isEmpty()) {
+      buffer.putInt(0, 0);
+      buffer.position(0);
+    } else {
+      if (!fits(0)) {
+        compact();
+        return;
+      }
+      write(buffer, COMPLETE, id, 0, new byte[0]);
+    }
+    written();
+  }
+
+  /**
+   * Syncs the journal file with the storage device.
+   */
+  public synchronized void sync() {
+    if (dirty && buffer != null) {
+      buffer.force();
+      dirty = false;
+    }
+  }
+
+  /**
+   * Syncs and closes the journal file. Called when the server stops by {@link RetryJournalService}.
+   * Entries pending at that time are resumed after restart.
+   *
+   * @throws IOException if the file can not be closed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (syncer != null) {
+      syncer.shutdown();
+      syncer = null;
+    }
+    if (channel != null) {
+      sync();
+      channel.close();
+      channel = null;
+      buffer = null;
+    }
+  }
+
+  private void map(Path path) throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+  }
+
+  private void recover() {
+    CRC32 crc = new CRC32();
+    int position = 0;
+    while (position + HEADER + BODY <= capacity) {
+      int length = buffer.getInt(position);
+      if (length < BODY || position + HEADER + length > capacity) {
+        break;
+      }
+      byte[] body = new byte[length];
+      ByteBuffer view = buffer.duplicate();
+      view.position(position + HEADER);
+      view.get(body);
+      crc.reset();
+      crc.update(body);
+      if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.wrap(body);
+      byte type = record.get();
+      long id = record.getLong();
+      int retries = record.getInt();
+      nextId = Math.max(nextId, id + 1);
+      if (type == APPEND) {
+        byte[] payload = new byte[record.remaining()];
+        record.get(payload);
+        try {
+          JsonNode node = mapper.readTree(payload);
+          pending.put(id, new Entry(id, node.path("name").asText(), node.path("data"), retries, payload));
+        } catch (IOException ex) {
+          LOG.warn("Retry journal entry " + id + " can not be read", ex);
+        }
+      } else if (type == RETRIED) {
+        Entry entry = pending.get(id);
+        if (entry != null) {
+          pending.put(id, new Entry(id, entry.name, entry.data, retries, entry.payload));
+        }
+      } else {
+        pending.remove(id);
+      }
+      position += HEADER + length;
+    }
+    buffer.position(position);
+    if (position + 4 <= capacity) {
+      buffer.putInt(position, 0);
+    }
+  }
+
+  private boolean fits(int payload) {
+    return buffer.position() + HEADER + BODY + payload + 4 <= capacity;
+  }
+
+  private void compact() {
+    Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+    boolean moved = false;
+    try {
+      int end;
+      try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        MappedByteBuffer mapped = target.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        for (Entry entry : pending.values()) {
+          if (mapped.position() + HEADER + BODY + entry.payload.length + 4 > capacity) {
+            LOG.warn("Pending entries do not fit retry journal {}", file);
+            return;
+          }
+          write(mapped, APPEND, entry.id, entry.retries, entry.payload);
+        }
+        mapped.force();
+        end = mapped.position();
+      }
+      Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      moved = true;
+      map(file);
+      buffer.position(end);
+      dirty = false;
+    } catch (IOException ex) {
+      LOG.warn("Retry journal " + file + " can not be compacted", ex);
+    } finally {
+      if (!moved) {
+        delete(compacted);
+      }
+    }
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException ex) {
+      LOG.warn("Retry journal file " + path + " can not be deleted", ex);
+    }
+  }
+
+  private void written() {
+    dirty = true;
+    if (syncInterval == 0) {
+      sync();
+    } else if (syncer == null) {
+      syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "retry-journal-sync");
+        thread.setDaemon(true);
+        return thread;
+      });
+      syncer.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void write(ByteBuffer target, byte type, long id, int retries, byte[] payload) {
+    int position = target.position();
+    ByteBuffer body = ByteBuffer.allocate(BODY + payload.length);
+    body.put(type).putLong(id).putInt(retries).put(payload);
+    CRC32 crc = new CRC32();
+    crc.update(body.array());
+    ByteBuffer view = target.duplicate();
+    view.position(position + HEADER);
+    view.put(body.array()).putInt(0);
+    target.putInt(position + 4, (int) crc.getValue());
+    target.putInt(position, body.capacity());
+    target.position(position + HEADER + body.capacity());
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.exec.ExecController;
+import ratpack.registry.Registry;
+import ratpack.sep.PatternsModule;
+import ratpack.server.Service;
+import ratpack.server.StartEvent;
+import ratpack.server.StopEvent;
+
+/**
+ * Resumes retries pending in {@link RetryJournal} when the server starts and closes the journal when it stops.
+ * <p>
+ * Instance bound by {@link PatternsModule} resumes journaled actions with the backoff policy from the module
+ * configuration, if {@link RetryJournal.ActionResolver} is registered. Actions over {@link PendingRetries} limit are
+ * resumed later, as background retries finish.
+ *
+ * @see ratpack.sep.exec.RetryJournal
+ */
+public class RetryJournalService implements Service {
+  private final InvokeWithRetry<?, ?> pattern;
+
+  /**
+   * Constructor
+   *
+   * @param config the patterns module configuration
+   */
+  public RetryJournalService(PatternsModule.Config config) {
+    this(new InvokeWithRetry<>(config));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param pattern the pattern that resumes journaled retries
+   */
+  public RetryJournalService(InvokeWithRetry<?, ?> pattern) {
+    this.pattern = pattern;
+  }
+
+  @Override
+  public void onStart(StartEvent event) throws Exception {
+    Registry registry = event.getRegistry();
+    if (RetryJournal.of(registry) != null) {
+      pattern.resume(registry.get(ExecController.class).getControl(), registry);
+    }
+  }
+
+  @Override
+  public void onStop(StopEvent event) throws Exception {
+    RetryJournal journal = event.getRegistry().maybeGet(RetryJournal.class).orElse(null);
+    if (journal != null) {
+      journal.close();
+    }
+  }
+}
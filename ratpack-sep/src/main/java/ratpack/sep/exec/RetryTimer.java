@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.exec.ExecControl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clock and the timer used to delay retries.
+ * <p>
+ * The default {@link #EVENT_LOOP} timer schedules delayed tasks on the event loop, so no thread is blocked while waiting.
+ * Custom implementation could be used to control time in tests.
+ *
+ * @see ratpack.sep.exec.Backoff
+ * @see ratpack.sep.exec.InvokeWithRetry
+ */
+public interface RetryTimer {
+
+  /**
+   * The timer based on the system clock, that schedules tasks on the event loop.
+   */
+  RetryTimer EVENT_LOOP = new RetryTimer() {
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public void schedule(ExecControl execControl, long delay, Runnable task) {
+      if (delay <= 0) {
+        task.run();
+      } else {
+        execControl.getController().getExecutor().schedule(task, delay, TimeUnit.MILLISECONDS);
+      }
+    }
+  };
+
+  /**
+   * The current time.
+   *
+   * @return the current time in milliseconds
+   */
+  long currentTimeMillis();
+
+  /**
+   * Schedules {@code task} to run after {@code delay}.
+   *
+   * @param execControl an execution control
+   * @param delay the delay in milliseconds
+   * @param task the task to run
+   */
+  void schedule(ExecControl execControl, long delay, Runnable task);
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec;
+
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.func.Function;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.InlineAction;
+import ratpack.sep.metrics.PatternMetrics;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets action to execute no longer than the given time.
+ * <p>
+ * If action does not finish in time, its result is {@link ActionResult#TIMEOUT_CODE} error and the pattern does not
+ * wait for it any more. The timeout is limited by the {@link Deadline} registered in the request registry.
+ * Action executes in the calling execution, timeout only schedules a timer on the event loop.
+ * <p>
+ * Every execution is recorded by {@link PatternMetrics} found in the registry, with the result observed by the pattern,
+ * so timed out execution is recorded with {@link ActionResult#TIMEOUT_CODE}.
+ * <p>
+ * The number of executions at once is limited by the enabled {@link AdaptiveLimiter} found in the registry. Execution
+ * above the limit is not started and its result is {@link ActionResult#LOAD_SHED_CODE} error. Executions short-circuited
+ * by other patterns, e.g. {@link ActionResult#CIRCUIT_OPEN_CODE}, do not adjust the limit.
+ * <p>
+ * {@link InlineAction} executed by patterns is computed in the calling thread, limited and recorded the same way, but
+ * not timed out.
+ *
+ * <pre class="java">{@code
+ * Parallel<String, String> pattern = new Parallel<>();
+ * ctx.render(pattern.apply(ctx, ctx, Arrays.asList(Timeout.of(fooAction, 100), Timeout.of(barAction, 500))));
+ * }</pre>
+ *
+ * @see ratpack.sep.exec.Deadline
+ * @see ratpack.sep.exec.AdaptiveLimiter
+ */
+public final class Timeout {
+
+  private Timeout() {
+  }
+
+  /**
+   * Decorates {@code action} with the timeout.
+   *
+   * @param action the action to decorate
+   * @param timeout the timeout in milliseconds. If {@code 0} the time is not limited.
+   * @param <T> a type of data processed by action
+   * @param <O> a type of data returned by action
+   * @return the action that does not execute longer than {@code timeout}
+   */
+  public static <T, O> Action<T, O> of(Action<T, O> action, long timeout) {
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        return exec(execControl, getData());
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl, T t) throws Exception {
+        return Timeout.exec(execControl, null, action.getName(), timeout, ec -> action.exec(ec, t));
+      }
+    };
+  }
+
+  /**
+   * Executes {@code action} no longer than {@code timeout} and the remaining time of the {@link Deadline} from registry.
+   * <p>
+   * If {@code action} throws an exception it is equivalent to error result.
+   *
+   * @param execControl an execution control
+   * @param registry the registry with optional {@link Deadline}
+   * @param action the action to execute
+   * @param timeout the timeout in milliseconds. If {@code 0} the time is limited by the deadline only.
+   * @param <T> a type of data processed by action
+   * @param <O> a type of data returned by action
+   * @return a promise for the result
+   */
+  public static <T, O> Promise<ActionResult<O>> exec(ExecControl execControl, Registry registry, Action<T, O> action, long timeout) {
+    return exec(execControl, registry, action.getName(), timeout, action::exec);
+  }
+
+  /**
+   * Executes {@code action} with the given {@code data} no longer than {@code timeout} and the remaining time of the
+   * {@link Deadline} from registry.
+   *
+   * @param execControl an execution control
+   * @param registry the registry with optional {@link Deadline}
+   * @param action the action to execute
+   * @param data the data passed to the action
+   * @param timeout the timeout in milliseconds. If {@code 0} the time is limited by the deadline only.
+   * @param <T> a type of data processed by action
+   * @param <O> a type of data returned by action
+   * @return a promise for the result
+   */
+  public static <T, O> Promise<ActionResult<O>> exec(ExecControl execControl, Registry registry, Action<T, O> action, T data, long timeout) {
+    return exec(execControl, registry, action.getName(), timeout, ec -> action.exec(ec, data));
+  }
+
+  private static <O> Promise<ActionResult<O>> exec(ExecControl execControl,
+                                                  Registry registry,
+                                                  String name,
+                                                  long timeout,
+                                                  Function<ExecControl, Promise<ActionResult<O>>> action) {
+    PatternMetrics metrics = PatternMetrics.of(registry);
+    if (metrics == PatternMetrics.NOOP) {
+      return shed(execControl, registry, name, timeout, action);
+    }
+    long start = System.nanoTime();
+    metrics.actionStarted(name);
+    return shed(execControl, registry, name, timeout, action).map(result -> {
+      metrics.actionFinished(name, result.getCode(), System.nanoTime() - start);
+      return result;
+    });
+  }
+
+  private static <O> Promise<ActionResult<O>> shed(ExecControl execControl,
+                                                  Registry registry,
+                                                  String name,
+                                                  long timeout,
+                                                  Function<ExecControl, Promise<ActionResult<O>>> action) {
+    AdaptiveLimiter limiter = AdaptiveLimiter.of(registry);
+    if (limiter == null) {
+      return limit(execControl, registry, timeout, action);
+    }
+    if (!limiter.tryAcquire()) {
+      return execControl.promiseOf(shedResult(limiter));
+    }
+    long start = System.nanoTime();
+    return limit(execControl, registry, timeout, action).map(result -> {
+      if (shortCircuited(result)) {
+        limiter.cancel();
+      } else {
+        limiter.release(name, System.nanoTime() - start, !result.isError());
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Executes {@code action} no longer than {@code timeout} and the remaining time of the {@link Deadline} from registry,
+   * without recording metrics and without {@link AdaptiveLimiter}.
+   */
+  static <O> Promise<ActionResult<O>> limit(ExecControl execControl,
+                                                   Registry registry,
+                                                   long timeout,
+                                                   Function<ExecControl, Promise<ActionResult<O>>> action) {
+    Deadline deadline = Deadline.of(registry);
+    // nanoseconds, so less than a millisecond left before the deadline does not turn into no timeout at all
+    long effectiveTimeout = timeout > 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+    if (deadline != null) {
+      long remaining = deadline.remainingNanos();
+      if (remaining <= 0) {
+        return execControl.promiseOf(timeoutResult(0));
+      }
+      effectiveTimeout = effectiveTimeout > 0 ? Math.min(effectiveTimeout, remaining) : remaining;
+    }
+    if (effectiveTimeout <= 0) {
+      return apply(execControl, action);
+    }
+
+    long limit = effectiveTimeout;
+    return execControl.promise(fulfiller -> {
+      AtomicBoolean completed = new AtomicBoolean();
+      ScheduledFuture<?> timer = execControl.getController().getExecutor().schedule(() -> {
+        if (completed.compareAndSet(false, true)) {
+          fulfiller.success(timeoutResult(TimeUnit.NANOSECONDS.toMillis(limit)));
+        }
+      }, limit, TimeUnit.NANOSECONDS);
+      // the action runs in the calling execution, only the timer is scheduled, as callers already fork if they need to
+      apply(execControl, action).then(result -> {
+        if (completed.compareAndSet(false, true)) {
+          timer.cancel(false);
+          fulfiller.success(result);
+        }
+      });
+    });
+  }
+
+  /**
+   * Computes the result of inline {@code action} in the calling thread, without forking new execution.
+   * The action is limited by {@link AdaptiveLimiter} and the {@link Deadline} from registry, but not timed out.
+   * Its latency does not adjust the limit.
+   *
+   * @param registry the registry with optional {@link Deadline}
+   * @param action the action to compute
+   * @param data the data passed to the action
+   * @param <T> a type of data processed by action
+   * @param <O> a type of data returned by action
+   * @return the result
+   */
+  static <T, O> ActionResult<O> inline(Registry registry, InlineAction<T, O> action, T data) {
+    PatternMetrics metrics = PatternMetrics.of(registry);
+    long start = System.nanoTime();
+    metrics.actionStarted(action.getName());
+    ActionResult<O> result = compute(registry, action, data);
+    metrics.actionFinished(action.getName(), result.getCode(), System.nanoTime() - start);
+    return result;
+  }
+
+  private static <T, O> ActionResult<O> compute(Registry registry, InlineAction<T, O> action, T data) {
+    AdaptiveLimiter limiter = AdaptiveLimiter.of(registry);
+    if (limiter != null && !limiter.tryAcquire()) {
+      return shedResult(limiter);
+    }
+    Deadline deadline = Deadline.of(registry);
+    ActionResult<O> result;
+    if (deadline != null && deadline.isExpired()) {
+      result = timeoutResult(0);
+    } else {
+      try {
+        result = action.apply(data);
+      } catch (Exception ex) {
+        result = ActionResult.error(ex);
+      }
+    }
+    if (limiter != null) {
+      // inline action does not reach the backend, so its latency says nothing about backend load
+      limiter.cancel();
+    }
+    return result;
+  }
+
+  private static <O> Promise<ActionResult<O>> apply(ExecControl execControl, Function<ExecControl, Promise<ActionResult<O>>> action) {
+    try {
+      return action.apply(execControl).mapError(ActionResult::error);
+    } catch (Exception ex) {
+      return execControl.promiseOf(ActionResult.error(ex));
+    }
+  }
+
+  private static boolean shortCircuited(ActionResult<?> result) {
+    String code = result.getCode();
+    return ActionResult.CIRCUIT_OPEN_CODE.equals(code)
+      || ActionResult.BULKHEAD_FULL_CODE.equals(code)
+      || ActionResult.LOAD_SHED_CODE.equals(code)
+      || ActionResult.RETRY_SUPPRESSED_CODE.equals(code)
+      || ActionResult.SKIPPED_CODE.equals(code)
+      || ActionResult.ABANDONED_CODE.equals(code);
+  }
+
+  private static <O> ActionResult<O> shedResult(AdaptiveLimiter limiter) {
+    return ActionResult.error(ActionResult.LOAD_SHED_CODE, "Action shed at concurrency limit " + limiter.getLimit());
+  }
+
+  private static <O> ActionResult<O> timeoutResult(long timeout) {
+    return ActionResult.error(ActionResult.TIMEOUT_CODE, "Action timed out after " + timeout + " ms");
+  }
+}
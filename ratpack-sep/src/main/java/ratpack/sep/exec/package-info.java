@@ -20,5 +20,19 @@
  * @see ratpack.sep.exec.FanOutFanIn
  * @see ratpack.sep.exec.Parallel
  * @see ratpack.sep.exec.InvokeWithRetry
+ * @see ratpack.sep.exec.RetryBudget
+ * @see ratpack.sep.exec.AsyncRetryListener
+ * @see ratpack.sep.exec.RetryJournal
+ * @see ratpack.sep.exec.Timeout
+ * @see ratpack.sep.exec.AdaptiveLimiter
+ * @see ratpack.sep.exec.CircuitBreaker
+ * @see ratpack.sep.exec.Bulkhead
+ * @see ratpack.sep.exec.Hedge
+ * @see ratpack.sep.exec.Pipeline
+ * @see ratpack.sep.exec.Graph
+ * @see ratpack.sep.exec.Memo
+ * @see ratpack.sep.exec.Cache
+ * @see ratpack.sep.exec.Batch
+ * @see ratpack.sep.exec.BlockingExecutor
  */
 package ratpack.sep.exec;
\ No newline at end of file
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal;
+
+import com.google.common.collect.ImmutableMap;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import ratpack.exec.ExecControl;
+import ratpack.registry.Registry;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+import ratpack.sep.exec.Timeout;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the result of every action as soon as the action finishes.
+ * <p>
+ * Actions are started only when subscriber requested results, and no more than {@code limit} at once.
+ * So the number of running actions plus results waiting for delivery never exceeds the subscriber demand.
+ * <p>
+ * Actions are taken from lazy {@link Iterable} or from upstream {@link Publisher}. The next action is pulled only when
+ * it can start, so neither all actions nor all results have to be kept in memory.
+ * <p>
+ * Every published element is {@link ActionResults} with exactly one result.
+ *
+ * @param <T> a type of data processed by actions
+ * @param <O> a type of data returned by actions
+ */
+public class ActionResultsPublisher<T, O> implements Publisher<ActionResults<O>> {
+  private final ExecControl execControl;
+  private final Registry registry;
+  private final Iterable<Action<T, O>> actions;
+  private final Publisher<Action<T, O>> upstream;
+  private final int limit;
+  private final long actionTimeout;
+
+  /**
+   * Constructor
+   *
+   * @param execControl an execution control
+   * @param registry the registry with optional {@link ratpack.sep.exec.Deadline}
+   * @param actions the actions to execute
+   * @param limit the maximum number of actions executed at once. If {@code 0} the number is limited by subscriber demand only.
+   * @param actionTimeout the maximum time of every action execution in milliseconds. If {@code 0} the time is not limited.
+   */
+  public ActionResultsPublisher(ExecControl execControl, Registry registry, Iterable<Action<T, O>> actions, int limit, long actionTimeout) {
+    this(execControl, registry, actions, null, limit, actionTimeout);
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Actions are requested from {@code actions} publisher only when they can start. Error of the upstream publisher is
+   * signalled to subscriber after results of already started actions.
+   *
+   * @param execControl an execution control
+   * @param registry the registry with optional {@link ratpack.sep.exec.Deadline}
+   * @param actions the publisher of actions to execute
+   * @param limit the maximum number of actions executed at once. If {@code 0} the number is limited by subscriber demand only.
+   * @param actionTimeout the maximum time of every action execution in milliseconds. If {@code 0} the time is not limited.
+   */
+  public ActionResultsPublisher(ExecControl execControl, Registry registry, Publisher<Action<T, O>> actions, int limit, long actionTimeout) {
+    this(execControl, registry, null, actions, limit, actionTimeout);
+  }
+
+  private ActionResultsPublisher(ExecControl execControl,
+                                 Registry registry,
+                                 Iterable<Action<T, O>> actions,
+                                 Publisher<Action<T, O>> upstream,
+                                 int limit,
+                                 long actionTimeout) {
+    this.execControl = execControl;
+    this.registry = registry;
+    this.actions = actions;
+    this.upstream = upstream;
+    this.limit = limit;
+    this.actionTimeout = actionTimeout;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super ActionResults<O>> subscriber) {
+    if (upstream == null) {
+      subscriber.onSubscribe(new ActionResultsSubscription(subscriber, new IteratorSource(actions.iterator())));
+    } else {
+      PublisherSource source = new PublisherSource();
+      ActionResultsSubscription subscription = new ActionResultsSubscription(subscriber, source);
+      source.subscription = subscription;
+      subscriber.onSubscribe(subscription);
+      upstream.subscribe(source);
+    }
+  }
+
+  /**
+   * The source of actions. Queried under the subscription lock, requested and cancelled outside of it.
+   */
+  private interface Source<A> {
+    boolean hasNext();
+
+    A next();
+
+    boolean isExhausted();
+
+    Throwable getError();
+
+    void request(long n);
+
+    void cancel();
+  }
+
+  private final class IteratorSource implements Source<Action<T, O>> {
+    private final Iterator<Action<T, O>> iterator;
+
+    IteratorSource(Iterator<Action<T, O>> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public Action<T, O> next() {
+      return iterator.next();
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return !iterator.hasNext();
+    }
+
+    @Override
+    public Throwable getError() {
+      return null;
+    }
+
+    @Override
+    public void request(long n) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+
+  /**
+   * Buffers actions received from upstream publisher. No more actions are requested than can start.
+   */
+  private final class PublisherSource implements Source<Action<T, O>>, Subscriber<Action<T, O>> {
+    private final Deque<Action<T, O>> buffer = new ArrayDeque<>();
+    private ActionResultsSubscription subscription;
+    private Subscription upstreamSubscription;
+    private long outstanding;
+    private boolean done;
+    private Throwable error;
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      boolean cancelled;
+      synchronized (subscription) {
+        upstreamSubscription = s;
+        cancelled = subscription.cancelled;
+      }
+      if (cancelled) {
+        s.cancel();
+      } else {
+        subscription.drain();
+      }
+    }
+
+    @Override
+    public void onNext(Action<T, O> action) {
+      synchronized (subscription) {
+        outstanding--;
+        buffer.add(action);
+      }
+      subscription.drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      synchronized (subscription) {
+        error = t;
+        done = true;
+      }
+      subscription.drain();
+    }
+
+    @Override
+    public void onComplete() {
+      synchronized (subscription) {
+        done = true;
+      }
+      subscription.drain();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !buffer.isEmpty();
+    }
+
+    @Override
+    public Action<T, O> next() {
+      return buffer.poll();
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return done && buffer.isEmpty();
+    }
+
+    @Override
+    public Throwable getError() {
+      return error;
+    }
+
+    @Override
+    public void request(long n) {
+      Subscription s;
+      long more;
+      synchronized (subscription) {
+        s = upstreamSubscription;
+        more = n - buffer.size() - outstanding;
+        if (s == null || done || more <= 0) {
+          return;
+        }
+        outstanding += more;
+      }
+      s.request(more);
+    }
+
+    @Override
+    public void cancel() {
+      Subscription s;
+      synchronized (subscription) {
+        s = upstreamSubscription;
+      }
+      if (s != null) {
+        s.cancel();
+      }
+    }
+  }
+
+  private final class ActionResultsSubscription implements Subscription {
+    private final Subscriber<? super ActionResults<O>> subscriber;
+    private final Source<Action<T, O>> source;
+    private final Deque<ActionResults<O>> ready = new ArrayDeque<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private long demand;
+    private int active;
+    private int position;
+    private boolean cancelled;
+    private boolean completed;
+
+    ActionResultsSubscription(Subscriber<? super ActionResults<O>> subscriber, Source<Action<T, O>> source) {
+      this.subscriber = subscriber;
+      this.source = source;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+        return;
+      }
+      synchronized (this) {
+        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (this) {
+        cancelled = true;
+        ready.clear();
+      }
+      source.cancel();
+    }
+
+    private void finished(String name, ActionResult<O> result) {
+      synchronized (this) {
+        active--;
+        if (!cancelled) {
+          ready.add(new ActionResults<>(ImmutableMap.of(name, result)));
+        }
+      }
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        List<ActionResults<O>> emit = new LinkedList<>();
+        List<Action<T, O>> next = new LinkedList<>();
+        boolean complete;
+        Throwable error = null;
+        long wanted;
+        synchronized (this) {
+          if (cancelled) {
+            return;
+          }
+          while (demand > 0 && !ready.isEmpty()) {
+            emit.add(ready.poll());
+            demand--;
+          }
+          while ((limit <= 0 || active < limit) && active + ready.size() < demand && source.hasNext()) {
+            Action<T, O> action = source.next();
+            int index = position++;
+            if (action == null || action.getName() == null) {
+              ready.add(new ActionResults<>(ImmutableMap.of("ACTION_NULL_IDX_" + index, ActionResult.error(new NullPointerException()))));
+              continue;
+            }
+            active++;
+            next.add(action);
+          }
+          wanted = demand - active - ready.size();
+          if (limit > 0) {
+            wanted = Math.min(wanted, limit - active);
+          }
+          complete = !completed && active == 0 && ready.isEmpty() && source.isExhausted();
+          if (complete) {
+            completed = true;
+            error = source.getError();
+          }
+        }
+        emit.forEach(subscriber::onNext);
+        next.forEach(this::start);
+        if (wanted > 0) {
+          source.request(wanted);
+        }
+        if (complete) {
+          if (error != null) {
+            subscriber.onError(error);
+          } else {
+            subscriber.onComplete();
+          }
+        }
+        synchronized (this) {
+          if (!ready.isEmpty() && demand > 0 || source.hasNext() && (limit <= 0 || active < limit) && active + ready.size() < demand) {
+            continue;
+          }
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void start(Action<T, O> action) {
+      execControl.exec().start(execution ->
+          Timeout.exec(execution, registry, action, actionTimeout)
+            .then(result -> finished(action.getName(), result))
+      );
+    }
+  }
+}
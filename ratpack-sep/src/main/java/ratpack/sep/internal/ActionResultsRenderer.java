@@ -16,27 +16,56 @@
 
 package ratpack.sep.internal;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import ratpack.sep.ActionResult;
 import ratpack.sep.ActionResults;
+import ratpack.sep.ActionResultsEncoding;
 import ratpack.handling.Context;
 import ratpack.render.RendererSupport;
 
-import static ratpack.jackson.Jackson.json;
+import java.util.Map;
 
 /**
  * Serializes {@link ActionResults} to {@code JSON} and sends it to the handler {@code response}.
  * <p>
+ * Results are written by {@link ActionResultsWriter} straight into pooled buffer, that is sent as the response body.
+ * If the {@code Accept} header of the request prefers binary Smile or CBOR format, results are written in that format,
+ * see {@link ActionResultsEncoding}.
+ * <p>
  * This renderer requires {@code ratpack.dependency(jackson)}
  */
 public class ActionResultsRenderer extends RendererSupport<ActionResults> {
+
+  private volatile ActionResultsWriter writer;
+
   /**
-   * Renders {@link ActionResults} as {@code JSON} string.
+   * Renders {@link ActionResults} as {@code JSON} or the binary format accepted by the client.
    *
    * @param context handler context
    * @param actionResults a collection of the action results
    * @throws Exception any
    */
   @Override
+  @SuppressWarnings("unchecked")
   public void render(Context context, ActionResults actionResults) throws Exception {
-    context.render(json(actionResults.getResults()));
+    ActionResultsEncoding encoding = ActionResultsEncoding.negotiate(context.getRequest().getHeaders().get("Accept"));
+    ObjectMapper mapper = context.get(ObjectMapper.class);
+    ByteBufAllocator allocator = context.maybeGet(ByteBufAllocator.class).orElse(PooledByteBufAllocator.DEFAULT);
+    ByteBuf buffer = writer(mapper)
+      .write(allocator, encoding.getFactory(mapper), (Map<String, ? extends ActionResult<?>>) actionResults.asMap());
+    context.getResponse().getHeaders().set("Vary", "Accept");
+    context.getResponse().contentType(encoding.getContentType()).send(buffer);
+  }
+
+  private ActionResultsWriter writer(ObjectMapper mapper) {
+    ActionResultsWriter current = writer;
+    if (current == null || current.getMapper() != mapper) {
+      current = new ActionResultsWriter(mapper);
+      writer = current;
+    }
+    return current;
   }
 }
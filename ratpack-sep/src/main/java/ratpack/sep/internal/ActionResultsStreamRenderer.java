@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import ratpack.handling.Context;
+import ratpack.render.RendererSupport;
+import ratpack.sep.ActionResults;
+import ratpack.sep.ActionResultsStream;
+import ratpack.stream.Streams;
+
+import static ratpack.http.ResponseChunks.stringChunks;
+import static ratpack.sse.ServerSentEvents.serverSentEvents;
+
+/**
+ * Serializes every element of {@link ActionResultsStream} to {@code JSON} and sends it to the handler {@code response}
+ * as soon as it is published.
+ * <p>
+ * Only the results not yet written to the response are kept in memory.
+ * <p>
+ * This renderer requires {@code ratpack.dependency(jackson)}
+ */
+public class ActionResultsStreamRenderer extends RendererSupport<ActionResultsStream> {
+
+  /**
+   * The content type of the new line delimited {@code JSON} stream.
+   *
+   * Value: {@value}
+   */
+  public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+  /**
+   * Renders {@link ActionResultsStream} as chunked new line delimited {@code JSON} or server sent events.
+   *
+   * @param context handler context
+   * @param stream a stream of the action results
+   * @throws Exception any
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void render(Context context, ActionResultsStream stream) throws Exception {
+    ObjectWriter writer = context.get(ObjectMapper.class).writer();
+    ActionResultsStream<Object> actionResultsStream = (ActionResultsStream<Object>) stream;
+    if (actionResultsStream.getFormat() == ActionResultsStream.Format.SSE) {
+      context.render(serverSentEvents(actionResultsStream.getPublisher(), event -> event
+        .id(event.getItem().asMap().keySet().iterator().next())
+        .data(writer.writeValueAsString(event.getItem().asMap()))));
+    } else {
+      context.render(stringChunks(NDJSON_CONTENT_TYPE, Streams.map(actionResultsStream.getPublisher(),
+        (ActionResults<Object> actionResults) -> writer.writeValueAsString(actionResults.asMap()) + "\n")));
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import ratpack.sep.ActionResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serializes action results with Jackson streaming generator straight into Netty {@link ByteBuf}.
+ * <p>
+ * The output is the same as {@link ObjectMapper} serialization of the results map, but no intermediate strings or
+ * byte arrays are created. Field names of {@link ActionResult} and the most recent action names are kept encoded,
+ * and the writer of every data type is created once and reused.
+ * <p>
+ * Data is serialized with the given {@link ObjectMapper}, so its modules and features apply to data only.
+ * The writer is thread safe.
+ */
+public class ActionResultsWriter {
+  private static final SerializedString CODE = new SerializedString("code");
+  private static final SerializedString MESSAGE = new SerializedString("message");
+  private static final SerializedString DATA = new SerializedString("data");
+  private static final SerializedString ATTEMPT = new SerializedString("attempt");
+  private static final SerializedString SUCCESS = new SerializedString("success");
+  private static final int MAX_NAMES = 1024;
+  private static final int BYTES_PER_RESULT = 64;
+
+  private final ObjectMapper mapper;
+  private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, SerializedString> names = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor
+   *
+   * @param mapper the mapper that serializes data of results
+   */
+  public ActionResultsWriter(ObjectMapper mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * The mapper that serializes data of results.
+   *
+   * @return the mapper
+   */
+  public ObjectMapper getMapper() {
+    return mapper;
+  }
+
+  /**
+   * Serializes {@code results} to the new buffer.
+   *
+   * @param allocator the allocator of the buffer, preferably pooled
+   * @param results the results to serialize
+   * @return the buffer with {@code JSON} object of the results, to be released by the caller
+   * @throws IOException if data could not be serialized
+   */
+  public ByteBuf write(ByteBufAllocator allocator, Map<String, ? extends ActionResult<?>> results) throws IOException {
+    return write(allocator, mapper.getFactory(), results);
+  }
+
+  /**
+   * Serializes {@code results} to the new buffer in the format of the given factory, e.g. binary Smile or CBOR.
+   *
+   * @param allocator the allocator of the buffer, preferably pooled
+   * @param factory the factory of the generator of the format
+   * @param results the results to serialize
+   * @return the buffer with the results, to be released by the caller
+   * @throws IOException if data could not be serialized
+   * @see ratpack.sep.ActionResultsEncoding
+   */
+  public ByteBuf write(ByteBufAllocator allocator, JsonFactory factory, Map<String, ? extends ActionResult<?>> results) throws IOException {
+    ByteBuf buffer = allocator.buffer(Math.max(256, results.size() * BYTES_PER_RESULT));
+    try (JsonGenerator generator = factory.createGenerator((OutputStream) new ByteBufOutputStream(buffer))) {
+      write(generator, results);
+    } catch (IOException | RuntimeException ex) {
+      buffer.release();
+      throw ex;
+    }
+    return buffer;
+  }
+
+  /**
+   * Serializes {@code results} as object with the given generator.
+   *
+   * @param generator the generator
+   * @param results the results to serialize
+   * @throws IOException if data could not be serialized
+   */
+  public void write(JsonGenerator generator, Map<String, ? extends ActionResult<?>> results) throws IOException {
+    generator.writeStartObject();
+    for (Map.Entry<String, ? extends ActionResult<?>> entry : results.entrySet()) {
+      generator.writeFieldName(name(entry.getKey()));
+      write(generator, entry.getValue());
+    }
+    generator.writeEndObject();
+  }
+
+  private void write(JsonGenerator generator, ActionResult<?> result) throws IOException {
+    if (result == null) {
+      generator.writeNull();
+      return;
+    }
+    generator.writeStartObject();
+    generator.writeFieldName(CODE);
+    writeString(generator, result.getCode());
+    generator.writeFieldName(MESSAGE);
+    writeString(generator, result.getMessage());
+    generator.writeFieldName(DATA);
+    Object data = result.getData();
+    if (data == null) {
+      generator.writeNull();
+    } else {
+      writer(data.getClass()).writeValue(generator, data);
+    }
+    if (result.getAttempt() != null) {
+      generator.writeFieldName(ATTEMPT);
+      generator.writeNumber(result.getAttempt());
+    }
+    generator.writeFieldName(SUCCESS);
+    generator.writeBoolean(result.isSuccess());
+    generator.writeEndObject();
+  }
+
+  private static void writeString(JsonGenerator generator, String value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else {
+      generator.writeString(value);
+    }
+  }
+
+  private SerializedString name(String name) {
+    SerializedString serialized = names.get(name);
+    if (serialized == null) {
+      serialized = new SerializedString(name);
+      if (names.size() < MAX_NAMES) {
+        names.putIfAbsent(name, serialized);
+      }
+    }
+    return serialized;
+  }
+
+  private ObjectWriter writer(Class<?> type) {
+    ObjectWriter writer = writers.get(type);
+    if (writer == null) {
+      writer = mapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+      ObjectWriter existing = writers.putIfAbsent(type, writer);
+      if (existing != null) {
+        writer = existing;
+      }
+    }
+    return writer;
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal;
+
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Collects results of actions into slots indexed by the position of action, as read-only map of action name to its result.
+ * <p>
+ * Slots are pre-sized to the number of actions and names are resolved from actions only when the map is read,
+ * so results can be wrapped by {@link ratpack.sep.ActionResults} without copying.
+ * Slots without result (actions not finished) are not visible in the map.
+ * <p>
+ * If more slots are reserved with the same name, the last one wins: earlier slots of the name are not visible in the map,
+ * so names stay unique and {@link #size()} matches the number of entries.
+ * <p>
+ * This class is not thread safe. The pattern filling slots is responsible for guarding them and the map must not be
+ * modified after it is passed to the caller.
+ *
+ * @param <O> a data type of action results
+ */
+public final class IndexedResults<O> extends AbstractMap<String, ActionResult<O>> {
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final int INDEX_THRESHOLD = 8;
+
+  private Object[] keys;
+  private ActionResult<O>[] results;
+  private int length;
+  private int size;
+  private volatile View view;
+  private Set<Entry<String, ActionResult<O>>> entrySet;
+
+  /**
+   * Constructor
+   *
+   * @param capacity the expected number of actions, if {@code 0} or less the default capacity is used
+   */
+  @SuppressWarnings("unchecked")
+  public IndexedResults(int capacity) {
+    int initial = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+    this.keys = new Object[initial];
+    this.results = new ActionResult[initial];
+  }
+
+  /**
+   * Reserves the next slot for the action.
+   *
+   * @param action the action
+   * @return the position of the slot
+   */
+  public int add(Action<?, ?> action) {
+    return reserve(action);
+  }
+
+  /**
+   * Reserves the next slot for the result with explicit name, e.g. result of {@code null} action.
+   *
+   * @param name the name of the result
+   * @return the position of the slot
+   */
+  public int add(String name) {
+    return reserve(name);
+  }
+
+  /**
+   * The action which reserved the slot.
+   *
+   * @param position the position of the slot
+   * @param <T> a type of action data
+   * @return the action or {@code null} if slot was reserved by name
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Action<T, O> action(int position) {
+    Object key = keys[position];
+    return key instanceof Action ? (Action<T, O>) key : null;
+  }
+
+  /**
+   * The result of the slot.
+   *
+   * @param position the position of the slot
+   * @return the result or {@code null} if it is not set yet
+   */
+  public ActionResult<O> result(int position) {
+    return results[position];
+  }
+
+  /**
+   * Sets the result of the slot.
+   *
+   * @param position the position of the slot
+   * @param result the result
+   */
+  public void set(int position, ActionResult<O> result) {
+    if (results[position] == null) {
+      size++;
+    }
+    results[position] = result;
+  }
+
+  /**
+   * Sets the result of all slots that do not have result yet.
+   *
+   * @param result the result
+   */
+  public void fill(ActionResult<O> result) {
+    for (int i = 0; i < length; i++) {
+      if (results[i] == null) {
+        results[i] = result;
+        size++;
+      }
+    }
+  }
+
+  /**
+   * The number of reserved slots.
+   *
+   * @return the number of slots
+   */
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public int size() {
+    View current = view();
+    if (current.hidden == null) {
+      return size;
+    }
+    int visible = 0;
+    for (int i = 0; i < length; i++) {
+      if (results[i] != null && !current.hidden[i]) {
+        visible++;
+      }
+    }
+    return visible;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public ActionResult<O> get(Object key) {
+    if (length > INDEX_THRESHOLD) {
+      Integer position = view().index.get(key);
+      return position != null ? results[position] : null;
+    }
+    for (int i = length - 1; i >= 0; i--) {
+      if (name(i).equals(key)) {
+        return results[i];
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Set<Entry<String, ActionResult<O>>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  private int reserve(Object key) {
+    if (length == keys.length) {
+      int capacity = length + (length >> 1) + 1;
+      keys = Arrays.copyOf(keys, capacity);
+      results = Arrays.copyOf(results, capacity);
+    }
+    keys[length] = key;
+    view = null;
+    return length++;
+  }
+
+  private String name(int position) {
+    Object key = keys[position];
+    return key instanceof Action ? ((Action<?, ?>) key).getName() : (String) key;
+  }
+
+  private View view() {
+    View current = view;
+    if (current == null) {
+      Map<String, Integer> index = new HashMap<>(length * 4 / 3 + 1);
+      boolean[] hidden = null;
+      for (int i = 0; i < length; i++) {
+        Integer previous = index.put(name(i), i);
+        if (previous != null) {
+          if (hidden == null) {
+            hidden = new boolean[length];
+          }
+          hidden[previous] = true;
+        }
+      }
+      current = new View(index, hidden);
+      view = current;
+    }
+    return current;
+  }
+
+  /**
+   * The position of the last slot of every name and the slots hidden by later slots of the same name,
+   * {@code null} if names are unique.
+   */
+  private static final class View {
+    private final Map<String, Integer> index;
+    private final boolean[] hidden;
+
+    View(Map<String, Integer> index, boolean[] hidden) {
+      this.index = index;
+      this.hidden = hidden;
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<String, ActionResult<O>>> {
+    @Override
+    public int size() {
+      return IndexedResults.this.size();
+    }
+
+    @Override
+    public Iterator<Entry<String, ActionResult<O>>> iterator() {
+      boolean[] hidden = view().hidden;
+      return new Iterator<Entry<String, ActionResult<O>>>() {
+        private int next = advance(0);
+
+        @Override
+        public boolean hasNext() {
+          return next < length;
+        }
+
+        @Override
+        public Entry<String, ActionResult<O>> next() {
+          if (next >= length) {
+            throw new NoSuchElementException();
+          }
+          Entry<String, ActionResult<O>> entry = new SimpleImmutableEntry<>(name(next), results[next]);
+          next = advance(next + 1);
+          return entry;
+        }
+
+        private int advance(int from) {
+          int position = from;
+          while (position < length && (results[position] == null || hidden != null && hidden[position])) {
+            position++;
+          }
+          return position;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal;
+
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.sep.metrics.PatternMetrics;
+
+import static ratpack.jackson.Jackson.json;
+
+/**
+ * Renders the snapshot of {@link PatternMetrics} found in the context registry as {@code JSON}.
+ * <p>
+ * This handler requires {@code ratpack.dependency(jackson)}
+ *
+ * <pre class="java">{@code
+ * chain.get("metrics", new PatternMetricsHandler());
+ * }</pre>
+ */
+public class PatternMetricsHandler implements Handler {
+  /**
+   * Renders metrics snapshot.
+   *
+   * @param context handler context
+   * @throws Exception any
+   */
+  @Override
+  public void handle(Context context) throws Exception {
+    context.render(json(PatternMetrics.of(context).snapshot()));
+  }
+}
@@ -18,5 +18,9 @@
  * The helper classes.
  *
  * @see ratpack.sep.internal.ActionResultsRenderer
+ * @see ratpack.sep.internal.ActionResultsWriter
+ * @see ratpack.sep.internal.ActionResultsStreamRenderer
+ * @see ratpack.sep.internal.IndexedResults
+ * @see ratpack.sep.internal.PatternMetricsHandler
  */
 package ratpack.sep.internal;
\ No newline at end of file
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import ratpack.sep.PatternsModule;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link PatternMetrics}, kept in-process in HDR histograms.
+ * <p>
+ * Latencies are recorded in microseconds, with {@code significantDigits} precision, into auto-resizing histograms,
+ * one for every action and pattern name. Histograms are not reset, so the snapshot covers the whole lifetime of the server.
+ * <p>
+ * The memory is bounded: at most {@code maxActions} action names are tracked, further actions are recorded together as
+ * {@value #OTHER_ACTIONS}. Result codes of errors created from exceptions contain the exception message, so codes are
+ * recorded up to the first {@code ':'}, i.e. as the exception class name, and at most {@value #MAX_CODES} codes are
+ * tracked per action, further ones are counted as {@value #OTHER_CODE}.
+ */
+public class HdrPatternMetrics implements PatternMetrics {
+
+  /**
+   * The default maximum number of tracked action names.
+   *
+   * Value: {@value}
+   */
+  public static final int DEFAULT_MAX_ACTIONS = 1000;
+
+  /**
+   * The maximum number of tracked result codes of one action.
+   *
+   * Value: {@value}
+   */
+  public static final int MAX_CODES = 32;
+
+  /**
+   * The name of actions recorded over the {@code maxActions} limit.
+   *
+   * Value: {@value}
+   */
+  public static final String OTHER_ACTIONS = "ACTION_OTHER";
+
+  /**
+   * The code of results recorded over the {@link #MAX_CODES} limit.
+   *
+   * Value: {@value}
+   */
+  public static final String OTHER_CODE = "OTHER";
+
+  private static final String NULL_NAME = "ACTION_NULL";
+
+  private final ConcurrentMap<String, ActionStats> actions = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Histogram> patterns = Maps.newConcurrentMap();
+  private final int significantDigits;
+  private final int maxActions;
+
+  /**
+   * Constructor
+   * <p>
+   * Records latencies with 2 significant digits.
+   */
+  public HdrPatternMetrics() {
+    this(2);
+  }
+
+  /**
+   * Constructor
+   * <p>
+   * Records latencies with 2 significant digits.
+   *
+   * @param config the patterns module configuration
+   */
+  public HdrPatternMetrics(PatternsModule.Config config) {
+    this(2, config.getMetricsMaxActions());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param significantDigits the number of significant digits of recorded latencies, from {@code 0} to {@code 5}
+   */
+  public HdrPatternMetrics(int significantDigits) {
+    this(significantDigits, DEFAULT_MAX_ACTIONS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param significantDigits the number of significant digits of recorded latencies, from {@code 0} to {@code 5}
+   * @param maxActions the maximum number of tracked action names
+   */
+  public HdrPatternMetrics(int significantDigits, int maxActions) {
+    this.significantDigits = Math.max(0, Math.min(5, significantDigits));
+    this.maxActions = Math.max(1, maxActions);
+  }
+
+  @Override
+  public void actionStarted(String action) {
+    stats(action).inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void actionFinished(String action, String code, long latency) {
+    ActionStats stats = stats(action);
+    stats.inFlight.decrementAndGet();
+    stats.latency.recordValue(micros(latency));
+    String key = code(code);
+    AtomicLong counter = stats.codes.get(key);
+    if (counter == null) {
+      // over the limit the shared counter is looked up first, so no counter is allocated just to be dropped
+      counter = stats.codes.computeIfAbsent(stats.codes.size() >= MAX_CODES ? OTHER_CODE : key, k -> new AtomicLong());
+    }
+    counter.incrementAndGet();
+  }
+
+  @Override
+  public void actionRetried(String action) {
+    stats(action).retries.incrementAndGet();
+  }
+
+  @Override
+  public void patternFinished(String pattern, long latency) {
+    Histogram histogram = patterns.get(pattern);
+    if (histogram == null) {
+      histogram = new ConcurrentHistogram(significantDigits);
+      Histogram current = patterns.putIfAbsent(pattern, histogram);
+      if (current != null) {
+        histogram = current;
+      }
+    }
+    histogram.recordValue(micros(latency));
+  }
+
+  @Override
+  public MetricsSnapshot snapshot() {
+    ImmutableMap.Builder<String, MetricsSnapshot.ActionSnapshot> actionSnapshots = ImmutableMap.builder();
+    for (Map.Entry<String, ActionStats> entry : actions.entrySet()) {
+      ActionStats stats = entry.getValue();
+      ImmutableMap.Builder<String, Long> codes = ImmutableMap.builder();
+      for (Map.Entry<String, AtomicLong> code : stats.codes.entrySet()) {
+        codes.put(code.getKey(), code.getValue().get());
+      }
+      actionSnapshots.put(entry.getKey(), new MetricsSnapshot.ActionSnapshot(
+        stats.inFlight.get(), stats.retries.get(), codes.build(), latency(stats.latency)
+      ));
+    }
+    ImmutableMap.Builder<String, MetricsSnapshot.LatencySnapshot> patternSnapshots = ImmutableMap.builder();
+    for (Map.Entry<String, Histogram> entry : patterns.entrySet()) {
+      patternSnapshots.put(entry.getKey(), latency(entry.getValue()));
+    }
+    return new MetricsSnapshot(actionSnapshots.build(), patternSnapshots.build());
+  }
+
+  private ActionStats stats(String action) {
+    String name = action != null ? action : NULL_NAME;
+    ActionStats stats = actions.get(name);
+    if (stats == null) {
+      // over the limit the shared stats are looked up first, so no histogram is allocated just to be dropped
+      stats = actions.computeIfAbsent(actions.size() >= maxActions ? OTHER_ACTIONS : name, n -> new ActionStats(significantDigits));
+    }
+    return stats;
+  }
+
+  private static String code(String code) {
+    if (code == null) {
+      return OTHER_CODE;
+    }
+    int message = code.indexOf(':');
+    return message < 0 ? code : code.substring(0, message);
+  }
+
+  private static long micros(long nanos) {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  private static MetricsSnapshot.LatencySnapshot latency(Histogram histogram) {
+    Histogram copy = histogram.copy();
+    long count = copy.getTotalCount();
+    return new MetricsSnapshot.LatencySnapshot(
+      count,
+      count == 0 ? 0 : copy.getMinValue(),
+      count == 0 ? 0 : copy.getMean(),
+      copy.getValueAtPercentile(50),
+      copy.getValueAtPercentile(90),
+      copy.getValueAtPercentile(99),
+      copy.getValueAtPercentile(99.9),
+      copy.getMaxValue()
+    );
+  }
+
+  private static final class ActionStats {
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> codes = Maps.newConcurrentMap();
+    private final Histogram latency;
+
+    ActionStats(int significantDigits) {
+      this.latency = new ConcurrentHistogram(significantDigits);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * The point in time copy of {@link PatternMetrics}, serialized to {@code JSON} by
+ * {@link ratpack.sep.internal.PatternMetricsHandler}.
+ * <p>
+ * Latencies are in microseconds.
+ */
+public class MetricsSnapshot {
+  /**
+   * The snapshot without any metrics.
+   */
+  public static final MetricsSnapshot EMPTY = new MetricsSnapshot(ImmutableMap.of(), ImmutableMap.of());
+
+  private final Map<String, ActionSnapshot> actions;
+  private final Map<String, LatencySnapshot> patterns;
+
+  /**
+   * Constructor
+   *
+   * @param actions the metrics of actions by action name
+   * @param patterns the end-to-end latencies of patterns by pattern name
+   */
+  public MetricsSnapshot(Map<String, ActionSnapshot> actions, Map<String, LatencySnapshot> patterns) {
+    this.actions = actions;
+    this.patterns = patterns;
+  }
+
+  /**
+   * The metrics of actions by action name.
+   *
+   * @return the metrics of actions
+   */
+  public Map<String, ActionSnapshot> getActions() {
+    return actions;
+  }
+
+  /**
+   * The end-to-end latencies of patterns by pattern name.
+   *
+   * @return the latencies of patterns
+   */
+  public Map<String, LatencySnapshot> getPatterns() {
+    return patterns;
+  }
+
+  /**
+   * The metrics of one action.
+   */
+  public static class ActionSnapshot {
+    private final long inFlight;
+    private final long retries;
+    private final Map<String, Long> codes;
+    private final LatencySnapshot latency;
+
+    /**
+     * Constructor
+     *
+     * @param inFlight the number of executions not finished yet
+     * @param retries the number of retries
+     * @param codes the number of finished executions by result code
+     * @param latency the latency of finished executions
+     */
+    public ActionSnapshot(long inFlight, long retries, Map<String, Long> codes, LatencySnapshot latency) {
+      this.inFlight = inFlight;
+      this.retries = retries;
+      this.codes = codes;
+      this.latency = latency;
+    }
+
+    public long getInFlight() {
+      return inFlight;
+    }
+
+    public long getRetries() {
+      return retries;
+    }
+
+    public Map<String, Long> getCodes() {
+      return codes;
+    }
+
+    public LatencySnapshot getLatency() {
+      return latency;
+    }
+  }
+
+  /**
+   * The latency distribution in microseconds.
+   */
+  public static class LatencySnapshot {
+    private final long count;
+    private final long min;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    /**
+     * Constructor
+     *
+     * @param count the number of recorded latencies
+     * @param min the minimum latency
+     * @param mean the mean latency
+     * @param p50 the median latency
+     * @param p90 the 90th percentile latency
+     * @param p99 the 99th percentile latency
+     * @param p999 the 99.9th percentile latency
+     * @param max the maximum latency
+     */
+    public LatencySnapshot(long count, long min, double mean, long p50, long p90, long p99, long p999, long max) {
+      this.count = count;
+      this.min = min;
+      this.mean = mean;
+      this.p50 = p50;
+      this.p90 = p90;
+      this.p99 = p99;
+      this.p999 = p999;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMin() {
+      return min;
+    }
+
+    public double getMean() {
+      return mean;
+    }
+
+    public long getP50() {
+      return p50;
+    }
+
+    public long getP90() {
+      return p90;
+    }
+
+    public long getP99() {
+      return p99;
+    }
+
+    public long getP999() {
+      return p999;
+    }
+
+    public long getMax() {
+      return max;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.metrics;
+
+import ratpack.exec.Promise;
+import ratpack.registry.Registry;
+
+/**
+ * The metrics recorded by patterns while executing actions.
+ * <p>
+ * Instance bound by {@link ratpack.sep.PatternsModule} is found by patterns in the registry passed to their
+ * {@code apply} methods. If registry does not contain metrics, nothing is recorded.
+ * <p>
+ * Every method has empty default implementation, so custom metrics (e.g. bridge to external backend) could implement
+ * only the ones they need. All methods are called concurrently and must not block.
+ *
+ * @see ratpack.sep.metrics.HdrPatternMetrics
+ * @see ratpack.sep.internal.PatternMetricsHandler
+ */
+public interface PatternMetrics {
+  /**
+   * Metrics that record nothing.
+   */
+  PatternMetrics NOOP = new PatternMetrics() {
+    @Override
+    public <T> Promise<T> time(String pattern, Promise<T> promise) {
+      return promise;
+    }
+  };
+
+  /**
+   * Finds metrics in the registry.
+   *
+   * @param registry the registry, could be {@code null}
+   * @return metrics from registry or {@link #NOOP} if there are none
+   */
+  static PatternMetrics of(Registry registry) {
+    return registry == null ? NOOP : registry.maybeGet(PatternMetrics.class).orElse(NOOP);
+  }
+
+  /**
+   * Action execution started.
+   *
+   * @param action the name of the action
+   */
+  default void actionStarted(String action) {
+  }
+
+  /**
+   * Action execution finished, successfully or not.
+   *
+   * @param action the name of the action
+   * @param code the code of the action result, see {@link ratpack.sep.ActionResult#getCode()}
+   * @param latency the latency of the action in nanoseconds
+   */
+  default void actionFinished(String action, String code, long latency) {
+  }
+
+  /**
+   * Action is going to be executed again after failure.
+   *
+   * @param action the name of the action
+   */
+  default void actionRetried(String action) {
+  }
+
+  /**
+   * Pattern finished.
+   *
+   * @param pattern the name of the pattern
+   * @param latency the end-to-end latency of the pattern in nanoseconds
+   */
+  default void patternFinished(String pattern, long latency) {
+  }
+
+  /**
+   * Records the end-to-end latency of the pattern promise, from now until the promise is fulfilled.
+   *
+   * @param pattern the name of the pattern
+   * @param promise the promise of the pattern
+   * @param <T> a type of promised value
+   * @return the promise recording the latency
+   */
+  default <T> Promise<T> time(String pattern, Promise<T> promise) {
+    long start = System.nanoTime();
+    return promise.wiretap(result -> patternFinished(pattern, System.nanoTime() - start));
+  }
+
+  /**
+   * The snapshot of recorded metrics.
+   *
+   * @return the snapshot, empty if metrics are not kept in-process
+   */
+  default MetricsSnapshot snapshot() {
+    return MetricsSnapshot.EMPTY;
+  }
+}
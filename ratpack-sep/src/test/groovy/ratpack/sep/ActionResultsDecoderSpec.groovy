@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ratpack.sep
+
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.UnpooledByteBufAllocator
+import ratpack.sep.internal.ActionResultsWriter
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ActionResultsDecoderSpec extends Specification {
+
+  ObjectMapper mapper = new ObjectMapper()
+  ActionResultsWriter writer = new ActionResultsWriter(mapper)
+  ActionResultsDecoder decoder = new ActionResultsDecoder(mapper)
+
+  Map<String, ActionResult<Map>> results = [
+    foo: ActionResult.success("done", [name: "foo", values: [1, 2]]),
+    bar: ActionResult.<Map> error(new IOException("failed")).withAttempt(3),
+    baz: ActionResult.<Map> error(ActionResult.TIMEOUT_CODE, "timed out"),
+    empty: ActionResult.<Map> success()
+  ]
+
+  @Unroll
+  def "results are decoded from #encoding"() {
+    given:
+    ByteBuf buffer = writer.write(UnpooledByteBufAllocator.DEFAULT, encoding.getFactory(mapper), results)
+
+    when:
+    ActionResults<Map> decoded = decoder.decode(encoding.contentType, buffer, Map)
+
+    then:
+    decoded.results.keySet() as List == results.keySet() as List
+    mapper.writeValueAsString(decoded.results) == mapper.writeValueAsString(results)
+    decoded.results.bar.attempt == 3
+    !decoded.results.bar.success
+    decoded.results.bar.error == null
+
+    cleanup:
+    buffer?.release()
+
+    where:
+    encoding << ActionResultsEncoding.values()
+  }
+
+  def "binary formats are smaller than json"() {
+    given:
+    Map<ActionResultsEncoding, Integer> sizes = ActionResultsEncoding.values().collectEntries { encoding ->
+      ByteBuf buffer = writer.write(UnpooledByteBufAllocator.DEFAULT, encoding.getFactory(mapper), results)
+      try {
+        [(encoding): buffer.readableBytes()]
+      } finally {
+        buffer.release()
+      }
+    }
+
+    expect:
+    sizes[ActionResultsEncoding.SMILE] < sizes[ActionResultsEncoding.JSON]
+    sizes[ActionResultsEncoding.CBOR] < sizes[ActionResultsEncoding.JSON]
+  }
+
+  def "unknown properties and null results are skipped"() {
+    given:
+    String body = '{"foo":{"code":"0","extra":{"nested":[1,{"a":2}]},"data":{"name":"foo"},"success":true},"bar":null}'
+
+    when:
+    ActionResults<Map> decoded = decoder.decode("application/json; charset=UTF-8", new ByteArrayInputStream(body.bytes), Map)
+
+    then:
+    decoded.results.keySet() == ["foo"] as Set
+    decoded.results.foo.success
+    decoded.results.foo.data == [name: "foo"]
+  }
+
+  def "invalid body is rejected"() {
+    when:
+    decoder.decode("application/json", new ByteArrayInputStream('[{"code":"0"}]'.bytes), Map)
+
+    then:
+    thrown(JsonParseException)
+  }
+
+  @Unroll
+  def "accept header '#accept' is negotiated to #encoding"() {
+    expect:
+    ActionResultsEncoding.negotiate(accept) == encoding
+
+    where:
+    accept                                                 | encoding
+    null                                                   | ActionResultsEncoding.JSON
+    "*/*"                                                  | ActionResultsEncoding.JSON
+    "application/json"                                     | ActionResultsEncoding.JSON
+    "application/x-jackson-smile"                          | ActionResultsEncoding.SMILE
+    "application/CBOR"                                     | ActionResultsEncoding.CBOR
+    "application/cbor, application/x-jackson-smile;q=0.5"  | ActionResultsEncoding.CBOR
+    "application/cbor;q=0, application/json"               | ActionResultsEncoding.JSON
+    ActionResultsEncoding.ACCEPT_BINARY                    | ActionResultsEncoding.SMILE
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.sep.InlineAction
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.LongSupplier
+
+class AdaptiveLimiterSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  long now
+
+  AdaptiveLimiter limiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double latencyTolerance,
+                          long latencyWindow = AdaptiveLimiter.DEFAULT_LATENCY_WINDOW) {
+    new AdaptiveLimiter(true, initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance, latencyWindow, { now } as LongSupplier)
+  }
+
+  /**
+   * Simulates rounds of saturated load: every round the whole limit is acquired and after the given latency released.
+   */
+  void simulate(AdaptiveLimiter limiter, int rounds, long latencyMillis, boolean success = true, String action = null) {
+    rounds.times {
+      int acquired = limiter.limit
+      acquired.times { assert limiter.tryAcquire() }
+      now += TimeUnit.MILLISECONDS.toNanos(latencyMillis)
+      acquired.times { limiter.release(action, TimeUnit.MILLISECONDS.toNanos(latencyMillis), success) }
+    }
+  }
+
+  def "limit follows simulated latency curve"() {
+    given:
+    AdaptiveLimiter limiter = limiter(10, 5, 50, 0.9, 2.0)
+
+    when: "latency is stable"
+    simulate(limiter, 100, 10)
+
+    then: "limit grows to maximum"
+    limiter.limit == 50
+
+    when: "latency grows within tolerance"
+    simulate(limiter, 10, 15)
+
+    then: "limit stays"
+    limiter.limit == 50
+
+    when: "latency grows above tolerance"
+    simulate(limiter, 3, 50)
+
+    then: "limit drops once per round trip"
+    limiter.limit == 36
+
+    when: "latency stays above tolerance"
+    simulate(limiter, 30, 50)
+
+    then: "limit drops to minimum"
+    limiter.limit == 5
+
+    when: "latency recovers"
+    simulate(limiter, 20, 10)
+
+    then: "limit grows again"
+    limiter.limit > 10
+    limiter.inFlight == 0
+  }
+
+  def "fast action does not collapse the limit of actions with normal latency"() {
+    given:
+    AdaptiveLimiter limiter = limiter(20, 1, 50, 0.9, 2.0)
+
+    when: "cache hit is served in microseconds"
+    limiter.tryAcquire()
+    limiter.release("cache", TimeUnit.MICROSECONDS.toNanos(1), true)
+
+    and: "backend responds in 10 ms"
+    simulate(limiter, 50, 10, true, "backend")
+
+    then:
+    limiter.limit > 20
+  }
+
+  def "lowest latency of action expires after the window"() {
+    given:
+    AdaptiveLimiter limiter = limiter(20, 1, 50, 0.9, 2.0, 1000)
+
+    when: "backend was once very fast"
+    limiter.tryAcquire()
+    limiter.release("backend", TimeUnit.MILLISECONDS.toNanos(1), true)
+    simulate(limiter, 1, 10, true, "backend")
+
+    then: "usual latency looks like overload"
+    limiter.limit < 20
+
+    when: "the fast latency is older than two windows"
+    int dropped = limiter.limit
+    now += TimeUnit.MILLISECONDS.toNanos(2000)
+    simulate(limiter, 50, 10, true, "backend")
+
+    then: "usual latency is the new baseline"
+    limiter.limit > dropped
+  }
+
+  def "short-circuited and inline executions do not adjust the limit"() {
+    given:
+    AdaptiveLimiter limiter = new AdaptiveLimiter(true, 4, 1, 50, 0.5, 2.0)
+    Registry registry = Registries.just(limiter)
+    def actions = [
+      Action.of("open", "data") { execControl, data ->
+        execControl.promiseOf(ActionResult.error(ActionResult.CIRCUIT_OPEN_CODE, "open"))
+      },
+      Action.of("full", "data") { execControl, data ->
+        execControl.promiseOf(ActionResult.error(ActionResult.BULKHEAD_FULL_CODE, "full"))
+      },
+      InlineAction.of("inline", "data") { data -> ActionResult.error("1", "failed") }
+    ]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    result.getValue().results.size() == 3
+    limiter.limit == 4
+    limiter.inFlight == 0
+  }
+
+  def "limit drops on errors"() {
+    given:
+    AdaptiveLimiter limiter = limiter(40, 1, 50, 0.5, 2.0)
+
+    when:
+    simulate(limiter, 1, 10, false)
+
+    then:
+    limiter.limit == 20
+
+    when:
+    simulate(limiter, 5, 10, false)
+
+    then:
+    limiter.limit == 1
+  }
+
+  def "concurrent burst of failures decreases the limit once per round trip"() {
+    given:
+    AdaptiveLimiter limiter = limiter(40, 1, 50, 0.5, 2.0)
+    simulate(limiter, 5, 10)
+    int limit = limiter.limit
+
+    when: "all executions in flight time out at once"
+    limit.times { assert limiter.tryAcquire() }
+    now += TimeUnit.MILLISECONDS.toNanos(100)
+    CountDownLatch start = new CountDownLatch(1)
+    def threads = (0..<limit).collect {
+      Thread.start {
+        start.await()
+        limiter.release("backend", TimeUnit.MILLISECONDS.toNanos(100), false)
+      }
+    }
+    start.countDown()
+    threads*.join()
+
+    then:
+    limiter.limit == (int) (limit * 0.5)
+    limiter.inFlight == 0
+
+    when: "executions started after the decrease fail too"
+    simulate(limiter, 1, 100, false, "backend")
+
+    then:
+    limiter.limit == (int) (limit * 0.25)
+  }
+
+  def "limit does not grow when not used"() {
+    given:
+    AdaptiveLimiter limiter = limiter(20, 1, 50, 0.9, 2.0)
+
+    when:
+    100.times {
+      limiter.tryAcquire()
+      limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true)
+    }
+
+    then:
+    limiter.limit == 20
+  }
+
+  def "actions above the limit are shed"() {
+    given:
+    AdaptiveLimiter limiter = new AdaptiveLimiter(true, 2, 2, 2, 0.9, 2.0)
+    Registry registry = Registries.just(limiter)
+    AtomicInteger executed = new AtomicInteger()
+    def actions = (0..<5).collect { i ->
+      Action.of("action_$i", "data") { execControl, data -> execControl.blocking {
+        executed.incrementAndGet()
+        while (limiter.shed < 3) {
+          Thread.sleep(1)
+        }
+        ActionResult.success()
+      }}
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.values().count { it.code == ActionResult.LOAD_SHED_CODE } == 3
+    actionResults.results.values().count { it.code == "0" } == 2
+    executed.get() == 2
+    limiter.inFlight == 0
+  }
+
+  def "shed action is not retried"() {
+    given:
+    AdaptiveLimiter limiter = new AdaptiveLimiter(true, 1, 1, 1, 0.9, 2.0)
+    limiter.tryAcquire()
+    Registry registry = Registries.just(limiter)
+    AtomicInteger executed = new AtomicInteger()
+    Action<String, String> action = Action.of("action", "data") { execControl, data ->
+      executed.incrementAndGet()
+      execControl.promiseOf(ActionResult.success())
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new InvokeWithRetry<String, String>(3).apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["action"].code == ActionResult.LOAD_SHED_CODE
+    executed.get() == 0
+    limiter.shed == 1
+  }
+
+  def "disabled limiter is not used"() {
+    expect:
+    AdaptiveLimiter.of(Registries.just(new AdaptiveLimiter(false, 1, 1, 1, 0.9, 2.0))) == null
+    AdaptiveLimiter.of(Registries.empty()) == null
+  }
+}
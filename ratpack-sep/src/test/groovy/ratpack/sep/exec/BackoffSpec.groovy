@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import spock.lang.Specification
+
+class BackoffSpec extends Specification {
+
+  def "none backoff retries immediately"() {
+    expect:
+    Backoff.none().delay(retry, 0, 0) == 0
+
+    where:
+    retry << [1, 2, 10]
+  }
+
+  def "fixed backoff waits the same delay"() {
+    expect:
+    Backoff.fixed(100).delay(retry, 100, 1000) == 100
+
+    where:
+    retry << [1, 2, 10]
+  }
+
+  def "exponential backoff doubles the delay"() {
+    given:
+    Backoff backoff = Backoff.exponential(10, 2)
+
+    expect:
+    backoff.delay(retry, 0, 0) == delay
+
+    where:
+    retry | delay
+    1     | 10
+    2     | 20
+    3     | 40
+    4     | 80
+  }
+
+  def "exponential backoff is limited by max delay"() {
+    given:
+    Backoff backoff = Backoff.exponential(10, 2).withMaxDelay(50)
+
+    expect:
+    backoff.delay(10, 0, 0) == 50
+  }
+
+  def "decorrelated jitter stays between base delay and three times previous delay"() {
+    given:
+    Backoff backoff = Backoff.decorrelatedJitter(10, 1000)
+    long previous = 0
+
+    expect:
+    (1..100).every { retry ->
+      long delay = backoff.delay(retry, previous, 0)
+      boolean inRange = delay >= 10 && delay <= Math.min(1000, Math.max(10, previous * 3))
+      previous = delay
+      inRange
+    }
+  }
+
+  def "max time stops retries"() {
+    given:
+    Backoff backoff = Backoff.fixed(100).withMaxTime(250)
+
+    expect:
+    backoff.delay(1, 0, 0) == 100
+    backoff.delay(2, 100, 150) == 100
+    backoff.delay(3, 100, 200) == Backoff.STOP
+  }
+
+  def "backoff created from configuration type"() {
+    expect:
+    Backoff.of(type, 10, 30, 0).delay(3, 10, 0) == delay
+
+    where:
+    type                      | delay
+    null                      | 0
+    Backoff.Type.NONE         | 0
+    Backoff.Type.FIXED        | 10
+    Backoff.Type.EXPONENTIAL  | 30
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+class BatchSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Registry registry
+  List<List<Integer>> calls
+
+  def setup() {
+    registry = Registries.empty()
+    calls = new CopyOnWriteArrayList<>()
+  }
+
+  Batch<Integer, String> batch(int maxSize, long window) {
+    new Batch<Integer, String>(maxSize, window, { execControl, List<Integer> ids ->
+      calls << new ArrayList<>(ids)
+      execControl.blocking {
+        ids.findAll { it >= 0 }.collectEntries { [(it): ActionResult.success(null, "user" + it)] }
+      }
+    })
+  }
+
+  def "single item actions are executed in batches no larger than max size"() {
+    given:
+    Batch<Integer, String> users = batch(4, 1000)
+    def actions = (0..<10).collect { users.action("user_$it".toString(), it) }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<Integer, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 10
+    (0..<10).every { actionResults.results["user_$it".toString()].data == "user" + it }
+    calls.every { it.size() <= 4 }
+    calls.flatten().sort() == (0..<10).toList()
+  }
+
+  def "executions collected within window are executed as one batch"() {
+    given:
+    Batch<Integer, String> users = batch(100, 50)
+    def actions = [users.action("a", 1), users.action("b", 2), users.action("c", 1)]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<Integer, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    calls.size() == 1
+    calls[0] == [1, 2]
+    result.getValue().results["a"].data == "user1"
+    result.getValue().results["c"].data == "user1"
+  }
+
+  def "zero window executes every item on its own"() {
+    given:
+    Batch<Integer, String> users = batch(100, 0)
+    def actions = [users.action("a", 1), users.action("b", 2)]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<Integer, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    calls.sort { it[0] } == [[1], [2]]
+    result.getValue().results["a"].data == "user1"
+    result.getValue().results["b"].data == "user2"
+  }
+
+  def "missing and failed items are reported as errors"() {
+    given:
+    Batch<Integer, String> users = batch(2, 0)
+    Batch<Integer, String> failing = new Batch<Integer, String>(10, 10, { execControl, List<Integer> ids ->
+      execControl.promise { f -> f.error(new IllegalStateException("backend down")) }
+    })
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<Integer, String>().apply(execControl, registry, [
+        users.action("missing", -1), failing.wrap(users.action("failing", 1))
+      ])
+    }
+
+    then:
+    result.getValue().results["missing"].error
+    result.getValue().results["failing"].error
+    result.getValue().results["failing"].message == "backend down"
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ratpack.sep.exec
+
+import ratpack.registry.Registries
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class BlockingExecutorSpec extends Specification {
+
+  static boolean virtualThreads() {
+    Executors.methods.any { it.name == "newVirtualThreadPerTaskExecutor" }
+  }
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+
+  @Unroll
+  def "blocking action of #type backend is executed off the execution thread"() {
+    given:
+    BlockingExecutor executor = new BlockingExecutor(type)
+    Thread executionThread = null
+    Thread blockingThread = null
+    Action<String, String> action = executor.action("foo", "data") { data ->
+      blockingThread = Thread.currentThread()
+      ActionResult.success(null, data.toUpperCase())
+    }
+
+    when:
+    ActionResult<String> result = harness.yield { execControl ->
+      executionThread = Thread.currentThread()
+      action.exec(execControl)
+    }.value
+
+    then:
+    result.success
+    result.data == "DATA"
+    blockingThread != null
+    blockingThread != executionThread
+
+    cleanup:
+    executor.close()
+
+    where:
+    type << BlockingExecutor.Type.values()
+  }
+
+  @Unroll
+  def "error of blocking operation of #type backend fails the promise"() {
+    given:
+    BlockingExecutor executor = new BlockingExecutor(type)
+
+    when:
+    def result = harness.yield { execControl ->
+      executor.blocking(execControl) { throw new IllegalStateException("failed") }
+    }
+
+    then:
+    result.failure
+    result.throwable instanceof IllegalStateException
+
+    cleanup:
+    executor.close()
+
+    where:
+    type << BlockingExecutor.Type.values()
+  }
+
+  def "virtual backend falls back to blocking thread pool if not supported"() {
+    given:
+    BlockingExecutor executor = new BlockingExecutor(BlockingExecutor.Type.VIRTUAL)
+
+    expect:
+    executor.type == (virtualThreads() ? BlockingExecutor.Type.VIRTUAL : BlockingExecutor.Type.POOL)
+
+    cleanup:
+    executor.close()
+  }
+
+  @IgnoreIf({ !BlockingExecutorSpec.virtualThreads() })
+  def "all blocking actions wait on virtual threads at once"() {
+    given:
+    int count = 1000
+    CountDownLatch started = new CountDownLatch(count)
+    BlockingExecutor executor = new BlockingExecutor(BlockingExecutor.Type.VIRTUAL)
+    List<Action<String, String>> actions = (0..<count).collect { i ->
+      executor.action("action_$i".toString(), "data") { data ->
+        started.countDown()
+        ActionResult.success(null, started.await(10, TimeUnit.SECONDS) ? data : null)
+      }
+    }
+
+    when:
+    ActionResults<String> results = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, Registries.empty(), actions)
+    }.value
+
+    then:
+    results.results.size() == count
+    results.results.values().every { it.data == "data" }
+
+    cleanup:
+    executor.close()
+  }
+
+  def "executor using blocking thread pool is used if not registered"() {
+    given:
+    BlockingExecutor executor = new BlockingExecutor(BlockingExecutor.Type.VIRTUAL)
+
+    expect:
+    BlockingExecutor.of(Registries.empty()).type == BlockingExecutor.Type.POOL
+    BlockingExecutor.of(Registries.just(BlockingExecutor, executor)).is(executor)
+
+    cleanup:
+    executor.close()
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.sep.PatternsModule
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class BulkheadSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Bulkheads bulkheads
+  Registry registry
+  Bulkhead<String, String> pattern
+
+  def setup() {
+    PatternsModule.Config.BulkheadLimits slowLimits = new PatternsModule.Config.BulkheadLimits()
+    slowLimits.maxConcurrency = 2
+    slowLimits.maxQueue = 1
+    bulkheads = new Bulkheads(10, 10, [slow: slowLimits])
+    registry = Registries.just(bulkheads)
+    pattern = new Bulkhead<>()
+  }
+
+  def "pattern name is defined"() {
+    expect:
+    pattern.name == Bulkhead.PATTERN_NAME
+    pattern.name == "bulkhead"
+  }
+
+  def "group is the prefix of action name"() {
+    expect:
+    Bulkhead.byNamePrefix(".").apply(Action.of(name, null) { ec, data -> null }) == group
+
+    where:
+    name          | group
+    "slow.get"    | "slow"
+    "slow.put.v2" | "slow"
+    "fast"        | "fast"
+  }
+
+  def "actions over the group limit and queue are rejected"() {
+    given:
+    CountDownLatch releaser = new CountDownLatch(1)
+    AtomicInteger inFlight = new AtomicInteger()
+    AtomicInteger peak = new AtomicInteger()
+    def actions = (0..<5).collect { i ->
+      Action.of("slow.action_$i", "data") { execControl, data ->
+        execControl.blocking {
+          peak.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> Math.max(a, b) }
+          releaser.await()
+          inFlight.decrementAndGet()
+          ActionResult.success()
+        }
+      }
+    }
+    actions.add(Action.of("fast.action", "data") { execControl, data -> execControl.blocking {
+      while (bulkheads.getRejected("slow") < 2) {
+        Thread.sleep(1)
+      }
+      releaser.countDown()
+      ActionResult.success()
+    }})
+    Parallel<String, String> parallel = new Parallel<>()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      parallel.apply(execControl, registry, pattern.wrap(registry, actions))
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 6
+    actionResults.results.values().count { it.code == ActionResult.BULKHEAD_FULL_CODE } == 2
+    actionResults.results.values().count { it.code == "0" } == 4
+    actionResults.results["fast.action"].code == "0"
+    peak.get() <= 2
+    bulkheads.getRejected("slow") == 2
+    bulkheads.getRejected("fast") == 0
+    bulkheads.getActive("slow") == 0
+    bulkheads.getQueued("slow") == 0
+  }
+
+  def "queued action is dropped when its caller times out"() {
+    given:
+    Bulkheads bulkheads = new Bulkheads(1, 5, 50, [:])
+    Registry registry = Registries.just(bulkheads)
+    CountDownLatch releaser = new CountDownLatch(1)
+    AtomicInteger executions = new AtomicInteger()
+    Action<String, String> hanging = Action.of("backend.hanging", "data") { execControl, data -> execControl.blocking {
+      executions.incrementAndGet()
+      releaser.await()
+      ActionResult.success()
+    }}
+    Action<String, String> queued = Action.of("backend.queued", "data") { execControl, data ->
+      executions.incrementAndGet()
+      execControl.promiseOf(ActionResult.success())
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, registry, [
+        Timeout.of(pattern.wrap(registry, hanging), 100), pattern.wrap(registry, queued)
+      ])
+    }
+
+    then:
+    result.getValue().results["backend.hanging"].code == ActionResult.TIMEOUT_CODE
+    result.getValue().results["backend.queued"].code == ActionResult.TIMEOUT_CODE
+    bulkheads.getQueued("backend") == 0
+
+    when:
+    releaser.countDown()
+    while (bulkheads.getActive("backend") > 0) {
+      Thread.sleep(1)
+    }
+
+    then:
+    executions.get() == 1
+  }
+
+  def "hanging action releases its place after action timeout"() {
+    given:
+    Bulkheads bulkheads = new Bulkheads(1, 0, 0, 50, [:])
+    Registry registry = Registries.just(bulkheads)
+    Action<String, String> hanging = Action.of("backend.hanging", "data") { execControl, data -> execControl.promise { f -> } }
+    Action<String, String> next = Action.of("backend.next", "data") { execControl, data ->
+      execControl.promiseOf(ActionResult.success())
+    }
+
+    when:
+    ActionResult<String> timedOut = harness.yield { execControl -> pattern.wrap(registry, hanging).exec(execControl) }.getValue()
+    ActionResult<String> result = harness.yield { execControl -> pattern.wrap(registry, next).exec(execControl) }.getValue()
+
+    then:
+    timedOut.code == ActionResult.TIMEOUT_CODE
+    result.code == "0"
+    bulkheads.getActive("backend") == 0
+    bulkheads.getRejected("backend") == 0
+  }
+
+  def "queued action starts when running action finishes"() {
+    given:
+    Bulkheads bulkheads = new Bulkheads(1, 5, [:])
+    Registry registry = Registries.just(bulkheads)
+    def actions = (0..<5).collect { i ->
+      Action.of("backend.action_$i", "data") { execControl, data -> execControl.blocking {
+        Thread.sleep(5)
+        ActionResult.success()
+      }}
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, registry, pattern.wrap(registry, actions))
+    }
+
+    then:
+    result.getValue().results.values().every { it.code == "0" }
+    bulkheads.getRejected("backend") == 0
+  }
+}
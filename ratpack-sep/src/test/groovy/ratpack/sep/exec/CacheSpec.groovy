@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.sep.PatternsModule
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class CacheSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  AtomicLong now
+  AtomicInteger executions
+  ResultCache results
+  Registry registry
+  Cache<String, String> pattern
+
+  def setup() {
+    now = new AtomicLong()
+    executions = new AtomicInteger()
+    PatternsModule.Config.CacheSettings errors = new PatternsModule.Config.CacheSettings()
+    errors.cacheErrors = true
+    results = new ResultCache(100, 50, false, 3, [errors: errors], { r -> 1 }, { now.get() })
+    registry = Registries.just(results)
+    pattern = new Cache<>()
+  }
+
+  Action<String, String> lookup(String name, String data, boolean success = true) {
+    Action.of(name, data) { execControl, String value ->
+      execControl.blocking {
+        int execution = executions.incrementAndGet()
+        success ? ActionResult.success(null, value + execution) : ActionResult.error("1", "failed")
+      }
+    }
+  }
+
+  String execute(Action<String, String> action) {
+    ExecResult<ActionResults<String>> result = harness.yield { execControl -> pattern.apply(execControl, registry, action) }
+    result.getValue().results[action.name].data ?: result.getValue().results[action.name].code
+  }
+
+  def "fresh result is returned without executing action"() {
+    expect:
+    execute(lookup("countries", "eu")) == "eu1"
+    execute(lookup("countries", "eu")) == "eu1"
+    execute(lookup("countries", "us")) == "us2"
+    results.hits == 1
+    results.misses == 2
+  }
+
+  def "stale result is returned while action executes again"() {
+    given:
+    execute(lookup("countries", "eu"))
+    now.set(120)
+
+    when:
+    String stale = execute(lookup("countries", "eu"))
+    for (int i = 0; i < 100 && executions.get() < 2; i++) {
+      Thread.sleep(10)
+    }
+    Thread.sleep(50)
+
+    then:
+    stale == "eu1"
+    results.staleHits == 1
+    execute(lookup("countries", "eu")) == "eu2"
+
+    when:
+    now.set(1000)
+
+    then:
+    execute(lookup("countries", "eu")) == "eu3"
+  }
+
+  def "concurrent misses execute action once"() {
+    given:
+    CountDownLatch release = new CountDownLatch(1)
+    Action<String, String> slow = Action.of("countries", "eu") { execControl, String value ->
+      execControl.blocking {
+        executions.incrementAndGet()
+        release.await(5, TimeUnit.SECONDS)
+        ActionResult.success(null, value)
+      }
+    }
+    def actions = (0..<5).collect { pattern.wrap(registry, slow) }
+
+    when:
+    Thread.start {
+      while (executions.get() == 0) {
+        Thread.sleep(5)
+      }
+      Thread.sleep(50)
+      release.countDown()
+    }
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    result.getValue().results["countries"].data == "eu"
+    executions.get() == 1
+    results.misses == 5
+  }
+
+  def "load that never completes times out and is executed again"() {
+    given:
+    results = new ResultCache(100, 50, true, 3, 50, [:], { r -> 1 }, { now.get() })
+    registry = Registries.just(results)
+    Action<String, String> hanging = Action.of("countries", "eu") { execControl, String value ->
+      executions.incrementAndGet()
+      execControl.promise { fulfiller -> }
+    }
+
+    expect:
+    execute(hanging) == ActionResult.TIMEOUT_CODE
+    execute(hanging) == ActionResult.TIMEOUT_CODE
+    executions.get() == 2
+    execute(lookup("countries", "eu")) == "eu3"
+  }
+
+  def "errors are cached only if configured"() {
+    expect:
+    execute(lookup("countries", "eu", false)) == "1"
+    execute(lookup("countries", "eu", false)) == "1"
+    executions.get() == 2
+
+    execute(lookup("errors", "eu", false)) == "1"
+    execute(lookup("errors", "eu", false)) == "1"
+    executions.get() == 3
+  }
+
+  def "results are removed when stale time passes"() {
+    given:
+    results = new ResultCache(100, 50, false, 10, [:], { r -> 1 }, { now.get() })
+    registry = Registries.just(results)
+    ["a", "b"].each { execute(lookup("countries", it)) }
+
+    when:
+    now.set(149)
+
+    then:
+    results.size() == 2
+
+    when:
+    now.set(150)
+
+    then:
+    results.size() == 0
+  }
+
+  def "least recently used results are evicted above max weight"() {
+    when:
+    ["a", "b", "c", "d", "e"].each { execute(lookup("countries", it)) }
+
+    then:
+    results.size() <= 3
+    results.evictions >= 2
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class CircuitBreakerSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  AtomicLong clock
+  CircuitBreakers breakers
+  Registry registry
+  CircuitBreaker<String, String> pattern
+  AtomicInteger counter
+  boolean failing
+
+  def setup() {
+    clock = new AtomicLong()
+    breakers = new CircuitBreakers(4, 4, 50, 1000, 1, { clock.get() })
+    registry = Registries.just(breakers)
+    pattern = new CircuitBreaker<>()
+    counter = new AtomicInteger()
+    failing = true
+  }
+
+  Action<String, String> action() {
+    Action.of("foo", "data") { execControl, data -> execControl.promise { fulfiller ->
+      counter.incrementAndGet()
+      if (failing) {
+        fulfiller.error(new IOException("backend down"))
+      } else {
+        fulfiller.success(ActionResult.success())
+      }
+    }}
+  }
+
+  ActionResult<String> execute() {
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action())
+    }
+    result.getValue().results["foo"]
+  }
+
+  def "pattern name is defined"() {
+    expect:
+    pattern.name == CircuitBreaker.PATTERN_NAME
+    pattern.name == "circuitbreaker"
+  }
+
+  def "breaker opens when failure rate is reached"() {
+    when:
+    4.times { execute() }
+
+    then:
+    breakers.getState("foo") == CircuitBreaker.State.OPEN
+    counter.get() == 4
+
+    when:
+    ActionResult<String> result = execute()
+
+    then:
+    result.code == ActionResult.CIRCUIT_OPEN_CODE
+    counter.get() == 4
+  }
+
+  def "breaker stays closed below minimum calls"() {
+    when:
+    3.times { execute() }
+
+    then:
+    breakers.getState("foo") == CircuitBreaker.State.CLOSED
+  }
+
+  def "half open breaker closes after successful trial"() {
+    given:
+    4.times { execute() }
+
+    when:
+    clock.set(1000)
+    failing = false
+    ActionResult<String> result = execute()
+
+    then:
+    result.code == "0"
+    breakers.getState("foo") == CircuitBreaker.State.CLOSED
+  }
+
+  def "half open breaker opens again after failed trial"() {
+    given:
+    4.times { execute() }
+
+    when:
+    clock.set(1000)
+    ActionResult<String> result = execute()
+
+    then:
+    result.code != "0"
+    result.code != ActionResult.CIRCUIT_OPEN_CODE
+    breakers.getState("foo") == CircuitBreaker.State.OPEN
+    execute().code == ActionResult.CIRCUIT_OPEN_CODE
+  }
+
+  def "hanging executions are recorded as failures"() {
+    given:
+    breakers = new CircuitBreakers(4, 4, 50, 1000, 1, 50, { clock.get() })
+    registry = Registries.just(breakers)
+    Action<String, String> hanging = Action.of("foo", "data") { execControl, data -> execControl.promise { fulfiller ->
+      counter.incrementAndGet()
+    }}
+
+    when:
+    List<String> codes = (1..4).collect {
+      harness.yield { execControl -> pattern.apply(execControl, registry, hanging) }.getValue().results["foo"].code
+    }
+
+    then:
+    codes == [ActionResult.TIMEOUT_CODE] * 4
+    breakers.getState("foo") == CircuitBreaker.State.OPEN
+    execute().code == ActionResult.CIRCUIT_OPEN_CODE
+    counter.get() == 4
+  }
+
+  def "hanging execution is recorded when caller times out first"() {
+    given:
+    breakers = new CircuitBreakers(4, 4, 50, 1000, 1, 100, { clock.get() })
+    registry = Registries.just(breakers)
+    Action<String, String> hanging = Timeout.of(pattern.wrap(registry, Action.of("foo", "data") { execControl, data ->
+      execControl.promise { fulfiller -> }
+    }), 10)
+
+    when:
+    4.times {
+      assert harness.yield { execControl -> hanging.exec(execControl) }.getValue().code == ActionResult.TIMEOUT_CODE
+    }
+
+    then:
+    new PollingConditions(timeout: 2).eventually {
+      assert breakers.getState("foo") == CircuitBreaker.State.OPEN
+    }
+  }
+
+  def "half open breaker opens again when trial does not finish"() {
+    given:
+    4.times { execute() }
+    CircuitBreakers.Breaker breaker = breakers.breaker("foo")
+
+    when:
+    clock.set(1000)
+    CircuitBreakers.Status trial = breaker.tryAcquire()
+
+    then:
+    trial != null
+    breaker.tryAcquire() == null
+    breakers.getState("foo") == CircuitBreaker.State.HALF_OPEN
+
+    when:
+    clock.set(2000)
+
+    then:
+    breaker.tryAcquire() == null
+    breakers.getState("foo") == CircuitBreaker.State.OPEN
+
+    when:
+    breaker.record(trial, true)
+
+    then:
+    breakers.getState("foo") == CircuitBreaker.State.OPEN
+
+    when:
+    clock.set(3000)
+    failing = false
+
+    then:
+    execute().code == "0"
+    breakers.getState("foo") == CircuitBreaker.State.CLOSED
+  }
+
+  def "breaker state is shared through registry"() {
+    given:
+    4.times { execute() }
+    CircuitBreaker<String, String> otherPattern = new CircuitBreaker<>()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      otherPattern.apply(execControl, registry, action())
+    }
+
+    then:
+    result.getValue().results["foo"].code == ActionResult.CIRCUIT_OPEN_CODE
+  }
+
+  def "retries stop when breaker opens"() {
+    given:
+    InvokeWithRetry<String, String> retry = new InvokeWithRetry<>(10)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      retry.apply(execControl, registry, pattern.wrap(registry, action()))
+    }
+
+    then:
+    result.getValue().results["foo"].code == ActionResult.CIRCUIT_OPEN_CODE
+    counter.get() == 4
+  }
+
+  def "protected actions execute in parallel"() {
+    given:
+    4.times { execute() }
+    Parallel<String, String> parallel = new Parallel<>()
+    def actions = [
+      pattern.wrap(registry, action()),
+      pattern.wrap(registry, Action.of("bar", "data") { execControl, data -> execControl.promise { f -> f.success(ActionResult.success()) } })
+    ]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      parallel.apply(execControl, registry, actions)
+    }
+
+    then:
+    result.getValue().results["foo"].code == ActionResult.CIRCUIT_OPEN_CODE
+    result.getValue().results["bar"].code == "0"
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class GraphSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Registry registry
+
+  def setup() {
+    registry = Registries.empty()
+  }
+
+  Action<ActionResults<String>, String> join(String name) {
+    Action.of(name, null) { execControl, ActionResults<String> input ->
+      execControl.promiseOf(ActionResult.success(null, name + input.results.keySet().sort().toString()))
+    }
+  }
+
+  def "every action gets results of its dependencies"() {
+    given:
+    Graph<String> graph = Graph.<String>builder()
+      .add(join("page"), "orders", "recommendations")
+      .add(join("user"))
+      .add(join("orders"), "user")
+      .add(join("recommendations"), "user")
+      .build()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl -> graph.apply(execControl, registry) }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 4
+    actionResults.results["user"].data == "user[]"
+    actionResults.results["orders"].data == "orders[user]"
+    actionResults.results["page"].data == "page[orders, recommendations]"
+  }
+
+  def "independent branch does not wait for slow branch"() {
+    given:
+    CountDownLatch fastFinished = new CountDownLatch(1)
+    Action<ActionResults<String>, String> slow = Action.of("slow", null) { execControl, ActionResults<String> input ->
+      execControl.blocking {
+        ActionResult.success(null, fastFinished.await(5, TimeUnit.SECONDS) ? "fast first" : "slow first")
+      }
+    }
+    Action<ActionResults<String>, String> fastChild = Action.of("fastChild", null) { execControl, ActionResults<String> input ->
+      fastFinished.countDown()
+      execControl.promiseOf(ActionResult.success("done"))
+    }
+    Graph<String> graph = Graph.<String>builder()
+      .add(slow)
+      .add(join("fast"))
+      .add(fastChild, "fast")
+      .add(join("end"), "slow", "fastChild")
+      .build()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl -> graph.apply(execControl, registry) }
+
+    then:
+    result.getValue().results["slow"].data == "fast first"
+    result.getValue().results["end"].data == "end[fastChild, slow]"
+  }
+
+  def "actions depending on failed action are skipped"() {
+    given:
+    Action<ActionResults<String>, String> failing = Action.of("failing", null) { execControl, ActionResults<String> input ->
+      execControl.promise { f -> f.error(new IllegalStateException("down")) }
+    }
+    Graph<String> graph = Graph.<String>builder()
+      .add(failing)
+      .add(join("child"), "failing")
+      .add(join("grandchild"), "child")
+      .add(join("other"))
+      .build()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl -> graph.apply(execControl, registry) }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results["failing"].error
+    actionResults.results["child"].code == ActionResult.SKIPPED_CODE
+    actionResults.results["grandchild"].code == ActionResult.SKIPPED_CODE
+    actionResults.results["other"].code == "0"
+  }
+
+  def "cycles are detected when graph is built"() {
+    when:
+    Graph.<String>builder()
+      .add(join("a"), "c")
+      .add(join("b"), "a")
+      .add(join("c"), "b")
+      .add(join("d"))
+      .build()
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message.contains("[a, b, c]")
+  }
+
+  def "unknown dependencies and duplicated names are rejected"() {
+    when:
+    Graph.<String>builder().add(join("a"), "missing").build()
+
+    then:
+    thrown(IllegalArgumentException)
+
+    when:
+    Graph.<String>builder().add(join("a")).add(join("a"))
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class HedgeSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Registry registry
+  CountDownLatch hang
+  AtomicInteger counter
+
+  def setup() {
+    registry = Registries.empty()
+    hang = new CountDownLatch(1)
+    counter = new AtomicInteger()
+  }
+
+  def cleanup() {
+    hang.countDown()
+  }
+
+  Action<String, String> firstSlowAction() {
+    Action.of("foo", "data") { execControl, data ->
+      int attempt = counter.incrementAndGet()
+      execControl.blocking {
+        if (attempt == 1) {
+          hang.await()
+        }
+        ActionResult.success("attempt $attempt".toString())
+      }
+    }
+  }
+
+  def "pattern name is defined"() {
+    expect:
+    new Hedge(10, 2).name == Hedge.PATTERN_NAME
+    Hedge.PATTERN_NAME == "hedge"
+  }
+
+  def "slow execution is hedged and the faster one wins"() {
+    given:
+    Hedge<String, String> pattern = new Hedge<>(20, 2)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, firstSlowAction())
+    }
+
+    then:
+    with(result.getValue().results["foo"]) {
+      code == "0"
+      message == "attempt 2"
+      attempt == 2
+    }
+    counter.get() == 2
+  }
+
+  def "fast execution is not hedged"() {
+    given:
+    Hedge<String, String> pattern = new Hedge<>(1000, 2)
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      counter.incrementAndGet()
+      execControl.promise { f -> f.success(ActionResult.success()) }
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["foo"].attempt == 1
+    counter.get() == 1
+  }
+
+  def "error is returned when all executions failed"() {
+    given:
+    Hedge<String, String> pattern = new Hedge<>(10, 3)
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      counter.incrementAndGet()
+      execControl.promise { f -> f.error(new IOException("failure")) }
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    with(result.getValue().results["foo"]) {
+      code.startsWith("java.io.IOException")
+      attempt == 3
+    }
+    counter.get() == 3
+  }
+
+  def "hedge delay is derived from recent latencies"() {
+    given:
+    Latencies latencies = new Latencies()
+    30.times { latencies.record("foo", 10000) }
+    Hedge<String, String> pattern = new Hedge<>(0, 2)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, Registries.just(latencies), firstSlowAction())
+    }
+
+    then:
+    latencies.percentile("foo", 95) == 10000
+    result.getValue().results["foo"].attempt == 2
+    counter.get() == 2
+  }
+
+  def "action without recent latencies is not hedged"() {
+    given:
+    Hedge<String, String> pattern = new Hedge<>(0, 2)
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      counter.incrementAndGet()
+      execControl.blocking {
+        Thread.sleep(50)
+        ActionResult.success()
+      }
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["foo"].attempt == 1
+    counter.get() == 1
+  }
+
+  def "sub-millisecond latencies do not start all executions at once"() {
+    given:
+    Latencies latencies = new Latencies()
+    30.times { latencies.record("foo", 100) }
+    Hedge<String, String> pattern = new Hedge<>(0, 3)
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      counter.incrementAndGet()
+      execControl.promise { f -> f.success(ActionResult.success()) }
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, Registries.just(latencies), action)
+    }
+
+    then:
+    result.getValue().results["foo"].attempt == 1
+    counter.get() == 1
+  }
+
+  def "failed execution starts the next one without waiting for hedge delay"() {
+    given:
+    Hedge<String, String> pattern = new Hedge<>(5000, 2)
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      int attempt = counter.incrementAndGet()
+      execControl.promise { f ->
+        if (attempt == 1) {
+          f.error(new IOException("failure"))
+        } else {
+          f.success(ActionResult.success())
+        }
+      }
+    }
+
+    when:
+    long start = System.nanoTime()
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    with(result.getValue().results["foo"]) {
+      code == "0"
+      attempt == 2
+    }
+    counter.get() == 2
+    System.nanoTime() - start < 4000000000L
+  }
+}
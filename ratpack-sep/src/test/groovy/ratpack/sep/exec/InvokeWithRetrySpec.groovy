@@ -20,20 +20,43 @@ import com.google.common.collect.ImmutableMap
 import ratpack.sep.Action
 import ratpack.sep.ActionResult
 import ratpack.sep.ActionResults
+import ratpack.sep.InlineAction
+import ratpack.sep.PatternsModule
+import ratpack.exec.ExecControl
 import ratpack.exec.ExecResult
 import ratpack.registry.Registries
 import ratpack.registry.Registry
 import ratpack.sep.exec.InvokeWithRetry
+import ratpack.sep.metrics.HdrPatternMetrics
+import ratpack.sep.metrics.PatternMetrics
 import ratpack.test.exec.ExecHarness
 import spock.lang.AutoCleanup
 import spock.lang.Specification
 
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
 class InvokeWithRetrySpec extends Specification {
   private static final int DEFAULT_RETRY_COUNT = 3
 
+  static class ManualTimer implements RetryTimer {
+    long now = 0
+    List<Long> delays = []
+
+    @Override
+    long currentTimeMillis() {
+      return now
+    }
+
+    @Override
+    void schedule(ExecControl execControl, long delay, Runnable task) {
+      delays.add(delay)
+      now += delay
+      task.run()
+    }
+  }
+
   @AutoCleanup
   ExecHarness harness = ExecHarness.harness()
   InvokeWithRetry pattern
@@ -156,6 +179,31 @@ class InvokeWithRetrySpec extends Specification {
     }
   }
 
+  def "inline action retries on the calling thread"() {
+    given:
+    Thread executionThread = null
+    List<Thread> threads = []
+    Action<String,String> action = InlineAction.of("foo", "data") { data ->
+      threads.add(Thread.currentThread())
+      threads.size() >= 3 ? ActionResult.success(data) : ActionResult.error("1", "failed")
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      executionThread = Thread.currentThread()
+      pattern.apply(execControl, registry, action, DEFAULT_RETRY_COUNT + 10)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    threads.size() == 3
+    threads.every { it == executionThread }
+    with(actionResults.results["foo"]) {
+      code == "0"
+      attempt == 3
+    }
+  }
+
   def "failed action with async retries returns immediatelly"() {
     given:
     CountDownLatch releaser = new CountDownLatch(1)
@@ -233,4 +281,166 @@ class InvokeWithRetrySpec extends Specification {
     }
     counter.get() == 3
   }
+
+  def "failed action retries with exponential backoff"() {
+    given:
+    ManualTimer timer = new ManualTimer()
+    InvokeWithRetry<String,String> pattern = new InvokeWithRetry<>(DEFAULT_RETRY_COUNT, Backoff.exponential(10, 2), timer)
+    AtomicInteger counter = new AtomicInteger()
+    Action<String,String> action = Action.of("foo", "data") { execControl, data -> execControl.promise{ fulfiller ->
+      fulfiller.error(new IOException("Failure ${counter.incrementAndGet()}"))
+    }}
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["foo"].code != "0"
+    counter.get() == DEFAULT_RETRY_COUNT + 1
+    timer.delays == [10L, 20L, 40L]
+  }
+
+  def "retries stop when max retry time is exceeded"() {
+    given:
+    ManualTimer timer = new ManualTimer()
+    InvokeWithRetry<String,String> pattern = new InvokeWithRetry<>(10, Backoff.fixed(100).withMaxTime(250), timer)
+    AtomicInteger counter = new AtomicInteger()
+    Action<String,String> action = Action.of("foo", "data") { execControl, data -> execControl.promise{ fulfiller ->
+      fulfiller.error(new IOException("Failure ${counter.incrementAndGet()}"))
+    }}
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["foo"].code != "0"
+    counter.get() == 3
+    timer.delays == [100L, 100L]
+  }
+
+  def "backoff is taken from module configuration"() {
+    given:
+    PatternsModule.Config config = new PatternsModule.Config()
+    config.defaultRetryCount = 2
+    config.retryBackoff = Backoff.Type.FIXED
+    config.retryDelay = 5
+    InvokeWithRetry<String,String> pattern = new InvokeWithRetry<>(config)
+    AtomicInteger counter = new AtomicInteger()
+    Action<String,String> action = Action.of("foo", "data") { execControl, data -> execControl.promise{ fulfiller ->
+      fulfiller.error(new IOException("Failure ${counter.incrementAndGet()}"))
+    }}
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["foo"].code != "0"
+    counter.get() == 3
+  }
+
+  def "async retries deliver final result to registered listener"() {
+    given:
+    AtomicInteger counter = new AtomicInteger()
+    Action<String,String> action = Action.of("foo", "data") { execControl, data -> execControl.promise{ fulfiller ->
+      int current = counter.incrementAndGet()
+      if (current > 2) {
+        fulfiller.success(ActionResult.success())
+      } else {
+        fulfiller.error(new IOException("$current"))
+      }
+    }}
+    CountDownLatch completed = new CountDownLatch(1)
+    ActionResults<?> listenerResults = null
+    int listenerAttempts = 0
+    Registry registry = Registries.just(AsyncRetryListener, { retried, results, attempts ->
+      listenerResults = results
+      listenerAttempts = attempts
+      completed.countDown()
+    } as AsyncRetryListener)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action, DEFAULT_RETRY_COUNT, true)
+    }
+
+    then:
+    result.getValue().results["foo"].code != "0"
+    completed.await(5, TimeUnit.SECONDS)
+    listenerResults.results["foo"].code == "0"
+    listenerResults.results["foo"].attempt == 3
+    listenerAttempts == 3
+  }
+
+  def "async retries use request registry without its deadline"() {
+    given:
+    AtomicInteger counter = new AtomicInteger()
+    Action<String,String> action = Action.of("foo", "data") { execControl, data ->
+      if (counter.incrementAndGet() == 1) {
+        return execControl.promiseOf(ActionResult.error("500", "failed"))
+      }
+      execControl.blocking {
+        Thread.sleep(100)
+        ActionResult.success()
+      }
+    }
+    HdrPatternMetrics metrics = new HdrPatternMetrics()
+    CountDownLatch completed = new CountDownLatch(1)
+    ActionResults<?> listenerResults = null
+    Registry registry = Registries.just(PatternMetrics, metrics)
+      .join(Registries.just(Deadline.of(50)))
+      .join(Registries.just(AsyncRetryListener, { retried, results, attempts ->
+        listenerResults = results
+        completed.countDown()
+      } as AsyncRetryListener))
+
+    when:
+    harness.yield { execControl ->
+      pattern.apply(execControl, registry, action, DEFAULT_RETRY_COUNT, true)
+    }
+
+    then:
+    completed.await(5, TimeUnit.SECONDS)
+    listenerResults.results["foo"].code == "0"
+    with(metrics.snapshot().actions["foo"]) {
+      codes == ["500": 1L, "0": 1L]
+      inFlight == 0
+    }
+  }
+
+  def "async retries over pending limit are suppressed"() {
+    given:
+    AtomicInteger counter = new AtomicInteger()
+    Action<String,String> action = Action.of("foo", "data") { execControl, data ->
+      execControl.promiseOf(ActionResult.error("500", "failed ${counter.incrementAndGet()}"))
+    }
+    PendingRetries pending = new PendingRetries(1)
+    pending.tryAcquire()
+    ActionResults<?> listenerResults = null
+    int listenerAttempts = 0
+    Registry registry = Registries.just(PendingRetries, pending).join(Registries.just(AsyncRetryListener, { retried, results, attempts ->
+      listenerResults = results
+      listenerAttempts = attempts
+    } as AsyncRetryListener))
+
+    when:
+    harness.yield { execControl ->
+      pattern.apply(execControl, registry, action, DEFAULT_RETRY_COUNT, true)
+    }
+
+    then:
+    with(listenerResults.results["foo"]) {
+      code == ActionResult.RETRY_SUPPRESSED_CODE
+      message == "Retry suppressed by pending retries limit after 500: failed 1"
+    }
+    listenerAttempts == 1
+    counter.get() == 1
+    pending.rejected == 1
+    pending.pending == 1
+  }
 }
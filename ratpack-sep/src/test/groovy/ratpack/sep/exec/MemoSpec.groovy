@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class MemoSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Memo memo
+  Registry registry
+  AtomicInteger executions
+
+  def setup() {
+    memo = new Memo()
+    registry = Registries.just(memo)
+    executions = new AtomicInteger()
+  }
+
+  Action<String, String> fetch(String name, String data, boolean success = true) {
+    Action.of(name, data) { execControl, String value ->
+      execControl.blocking {
+        executions.incrementAndGet()
+        Thread.sleep(20)
+        success ? ActionResult.success(null, value.toUpperCase()) : ActionResult.error("1", "failed")
+      }
+    }
+  }
+
+  def "concurrent executions of the same action join the running one"() {
+    given:
+    def actions = [
+      Memo.of(registry, fetch("user", "foo")),
+      Memo.of(registry, fetch("user", "foo")),
+      Memo.of(registry, fetch("user", "bar"))
+    ]
+
+    when:
+    ExecResult<List<ActionResult<String>>> result = harness.yield { execControl ->
+      execControl.promise { f ->
+        def results = Collections.synchronizedList([])
+        actions.each { action ->
+          execControl.exec().start { execution ->
+            action.exec(execution).then { r ->
+              results << r
+              if (results.size() == actions.size()) {
+                f.success(results)
+              }
+            }
+          }
+        }
+      }
+    }
+
+    then:
+    result.getValue().collect { it.data }.sort() == ["BAR", "FOO", "FOO"]
+    executions.get() == 2
+  }
+
+  def "post action gets memoized result of parallel branch"() {
+    given:
+    Action<String, String> user = Memo.of(registry, fetch("user", "foo"))
+    Action<ActionResults<String>, String> post = Action.of("post", null) { execControl, ActionResults<String> results ->
+      user.exec(execControl).map { r -> ActionResult.success(null, r.data + "/" + results.results["user"].data) }
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new FanOutFanIn<String, String, String>().apply(execControl, registry, [user], post)
+    }
+
+    then:
+    result.getValue().results["post"].data == "FOO/FOO"
+    executions.get() == 1
+    memo.size() == 1
+  }
+
+  def "failed results are not memoized"() {
+    given:
+    Action<String, String> failing = Memo.of(registry, fetch("user", "foo", false))
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new InvokeWithRetry<String, String>(2).apply(execControl, registry, failing)
+    }
+
+    then:
+    result.getValue().results["user"].code == "1"
+    executions.get() == 3
+    memo.size() == 0
+  }
+
+  def "action executes as usual without memo in registry"() {
+    given:
+    Action<String, String> user = Memo.of(Registries.empty(), fetch("user", "foo"))
+
+    when:
+    harness.yield { execControl -> user.exec(execControl) }
+    harness.yield { execControl -> user.exec(execControl) }
+
+    then:
+    executions.get() == 2
+  }
+}
@@ -19,7 +19,13 @@ package ratpack.sep.exec
 import ratpack.sep.Action
 import ratpack.sep.ActionResult
 import ratpack.sep.ActionResults
+import ratpack.sep.ActionResultsStream
+import ratpack.sep.InlineAction
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
 import ratpack.exec.ExecResult
+import ratpack.exec.Fulfiller
 import ratpack.registry.Registries
 import ratpack.registry.Registry
 import ratpack.sep.exec.Parallel
@@ -28,6 +34,8 @@ import spock.lang.AutoCleanup
 import spock.lang.Specification
 
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 class ParallelSpec extends Specification {
 
@@ -50,6 +58,77 @@ class ParallelSpec extends Specification {
     Request4(String value4) { this.value4 = value4 }
   }
 
+  /**
+   * Generates actions lazily on request, like a paged source.
+   */
+  static class ActionsPublisher implements Publisher<Action<String, String>> {
+    final int count
+    final Throwable error
+    final AtomicLong requested = new AtomicLong()
+    final AtomicInteger generated = new AtomicInteger()
+
+    ActionsPublisher(int count, Throwable error = null) {
+      this.count = count
+      this.error = error
+    }
+
+    @Override
+    void subscribe(Subscriber<? super Action<String, String>> subscriber) {
+      subscriber.onSubscribe(new Subscription() {
+        boolean done
+
+        @Override
+        void request(long n) {
+          requested.addAndGet(n)
+          for (long i = 0; i < n && generated.get() < count; i++) {
+            int current = generated.getAndIncrement()
+            subscriber.onNext(Action.of("foo_$current", "data") { execControl, data ->
+              execControl.promiseOf(ActionResult.success("SUCCESS"))
+            })
+          }
+          if (generated.get() == count && !done) {
+            done = true
+            error ? subscriber.onError(error) : subscriber.onComplete()
+          }
+        }
+
+        @Override
+        void cancel() {
+        }
+      })
+    }
+  }
+
+  static void receiveOneByOne(Publisher<ActionResults<String>> publisher, Fulfiller<List<ActionResults<String>>> fulfiller, Closure onEach = {}) {
+    List<ActionResults<String>> received = []
+    publisher.subscribe(new Subscriber<ActionResults<String>>() {
+      Subscription subscription
+
+      @Override
+      void onSubscribe(Subscription s) {
+        subscription = s
+        s.request(1)
+      }
+
+      @Override
+      void onNext(ActionResults<String> actionResults) {
+        received.add(actionResults)
+        onEach(received.size())
+        subscription.request(1)
+      }
+
+      @Override
+      void onError(Throwable t) {
+        fulfiller.error(t)
+      }
+
+      @Override
+      void onComplete() {
+        fulfiller.success(received)
+      }
+    })
+  }
+
   @AutoCleanup
   ExecHarness harness = ExecHarness.harness()
   Parallel pattern
@@ -187,4 +266,315 @@ class ParallelSpec extends Specification {
     Request4 req4 = (Request4)actionResults.results["requestValue4"].data
     req4.value4 == "value4"
   }
+
+  def "bounded parallel never runs more actions than max concurrency"() {
+    given:
+    AtomicInteger inFlight = new AtomicInteger()
+    AtomicInteger peak = new AtomicInteger()
+    def actions = []
+    for (int i = 0; i < 50; i++) {
+      actions.add(Action.of("foo_$i", "data") { execControl, data ->
+        execControl.blocking {
+          int current = inFlight.incrementAndGet()
+          peak.accumulateAndGet(current) { a, b -> Math.max(a, b) }
+          Thread.sleep(5)
+          inFlight.decrementAndGet()
+          ActionResult.success("SUCCESS")
+        }
+      })
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 4)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 50
+    actionResults.results.values().every { it.code == "0" }
+    peak.get() <= 4
+    peak.get() > 0
+  }
+
+  def "default max concurrency is taken from constructor"() {
+    given:
+    AtomicInteger inFlight = new AtomicInteger()
+    AtomicInteger peak = new AtomicInteger()
+    def actions = []
+    for (int i = 0; i < 20; i++) {
+      actions.add(Action.of("foo_$i", "data") { execControl, data ->
+        execControl.blocking {
+          int current = inFlight.incrementAndGet()
+          peak.accumulateAndGet(current) { a, b -> Math.max(a, b) }
+          Thread.sleep(5)
+          inFlight.decrementAndGet()
+          ActionResult.success()
+        }
+      })
+    }
+    Parallel<String, String> pattern = new Parallel<>(1)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions)
+    }
+
+    then:
+    result.getValue().results.size() == 20
+    peak.get() == 1
+  }
+
+  def "bounded parallel keeps null actions as error results"() {
+    given:
+    def actions = [
+      null,
+      Action.of("foo", "data") { execControl, data -> execControl.promise { fulfiller -> fulfiller.success(ActionResult.success())}},
+      Action.of("bar", "data") { execControl, data -> execControl.promise { fulfiller -> fulfiller.success(ActionResult.success())}}
+    ]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 1)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 3
+    actionResults.results["ACTION_NULL_IDX_0"].code == ActionResult.error(new NullPointerException()).code
+    actionResults.results["foo"].code == "0"
+    actionResults.results["bar"].code == "0"
+  }
+
+  def "consecutive null actions and duplicate names keep keys unique"() {
+    given:
+    def actions = [
+      null,
+      null,
+      Action.of("foo", "data") { execControl, data -> execControl.promiseOf(ActionResult.success("first")) },
+      Action.of("foo", "data") { execControl, data -> execControl.promiseOf(ActionResult.success("second")) }
+    ]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 1)
+    }
+
+    then:
+    Map<String, ActionResult<String>> results = result.getValue().results
+    results.keySet() == ["ACTION_NULL_IDX_0", "ACTION_NULL_IDX_1", "foo"] as Set
+    results.size() == results.keySet().size()
+    results["foo"].message == "second"
+  }
+
+  def "streamed results are published one by one on demand"() {
+    given:
+    AtomicInteger inFlight = new AtomicInteger()
+    AtomicInteger peak = new AtomicInteger()
+    def actions = []
+    for (int i = 0; i < 20; i++) {
+      actions.add(Action.of("foo_$i", "data") { execControl, data ->
+        execControl.blocking {
+          int current = inFlight.incrementAndGet()
+          peak.accumulateAndGet(current) { a, b -> Math.max(a, b) }
+          Thread.sleep(2)
+          inFlight.decrementAndGet()
+          ActionResult.success("SUCCESS")
+        }
+      })
+    }
+
+    when:
+    ExecResult<List<ActionResults<String>>> result = harness.yield { execControl ->
+      ActionResultsStream<String> stream = pattern.stream(execControl, registry, actions, null)
+      execControl.promise { fulfiller ->
+        List<ActionResults<String>> received = []
+        stream.publisher.subscribe(new Subscriber<ActionResults<String>>() {
+          Subscription subscription
+
+          @Override
+          void onSubscribe(Subscription s) {
+            subscription = s
+            s.request(1)
+          }
+
+          @Override
+          void onNext(ActionResults<String> actionResults) {
+            received.add(actionResults)
+            subscription.request(1)
+          }
+
+          @Override
+          void onError(Throwable t) {
+            fulfiller.error(t)
+          }
+
+          @Override
+          void onComplete() {
+            fulfiller.success(received)
+          }
+        })
+      }
+    }
+
+    then:
+    List<ActionResults<String>> received = result.getValue()
+    received.size() == 20
+    received.every { it.results.size() == 1 && it.results.values().first().code == "0" }
+    received.collect { it.results.keySet().first() }.toSet().size() == 20
+    peak.get() == 1
+  }
+
+  def "first success completes without waiting for slow actions"() {
+    given:
+    CountDownLatch latch = new CountDownLatch(1)
+    def actions = [
+      Action.of("slow", "data") { execControl, data ->
+        execControl.blocking {
+          latch.await()
+          ActionResult.success("SLOW")
+        }
+      },
+      Action.of("failing", "data") { execControl, data -> execControl.promise { fulfiller -> fulfiller.success(ActionResult.error("1", "failed"))}},
+      Action.of("fast", "data") { execControl, data -> execControl.promise { fulfiller -> fulfiller.success(ActionResult.success("FAST"))}}
+    ]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, null, Completion.firstSuccess())
+    }
+    latch.countDown()
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results["fast"].code == "0"
+    actionResults.results["slow"].code == ActionResult.ABANDONED_CODE
+  }
+
+  def "quorum of successes leaves not started actions out"() {
+    given:
+    def actions = []
+    for (int i = 0; i < 10; i++) {
+      actions.add(Action.of("foo_$i", "data") { execControl, data -> execControl.promise { fulfiller -> fulfiller.success(ActionResult.success())}})
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 1, Completion.successes(3))
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 3
+    actionResults.results.values().every { it.code == "0" }
+  }
+
+  def "any k counts failed actions and completes with all when policy is never met"() {
+    given:
+    def actions = []
+    for (int i = 0; i < 4; i++) {
+      actions.add(Action.of("foo_$i", "data") { execControl, data -> execControl.promise { fulfiller -> fulfiller.success(ActionResult.error("1", "failed"))}})
+    }
+
+    when:
+    ExecResult<ActionResults<String>> any = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 1, Completion.any(2))
+    }
+    ExecResult<ActionResults<String>> successes = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 1, Completion.successes(2))
+    }
+
+    then:
+    any.getValue().results.size() == 2
+    successes.getValue().results.size() == 4
+    successes.getValue().results.values().every { it.code == "1" }
+  }
+
+  def "actions from publisher are requested only when they can start"() {
+    given:
+    ActionsPublisher actions = new ActionsPublisher(100)
+    long maxAhead = 0
+
+    when:
+    ExecResult<List<ActionResults<String>>> result = harness.yield { execControl ->
+      ActionResultsStream<String> stream = pattern.stream(execControl, registry, actions, 2)
+      execControl.promise { fulfiller ->
+        receiveOneByOne(stream.publisher, fulfiller) { int received ->
+          maxAhead = Math.max(maxAhead, actions.requested.get() - received)
+        }
+      }
+    }
+
+    then:
+    List<ActionResults<String>> received = result.getValue()
+    received.size() == 100
+    received.every { it.results.values().first().code == "0" }
+    received.collect { it.results.keySet().first() }.toSet().size() == 100
+    maxAhead <= 2
+  }
+
+  def "publisher error ends the stream after started actions"() {
+    given:
+    ActionsPublisher actions = new ActionsPublisher(3, new IOException("source failed"))
+
+    when:
+    ExecResult<List<ActionResults<String>>> result = harness.yield { execControl ->
+      ActionResultsStream<String> stream = pattern.stream(execControl, registry, actions, null)
+      execControl.promise { fulfiller ->
+        receiveOneByOne(stream.publisher, fulfiller)
+      }
+    }
+
+    then:
+    result.throwable instanceof IOException
+    result.throwable.message == "source failed"
+    actions.generated.get() == 3
+  }
+
+  def "inline actions execute on the calling thread mixed with forked actions"() {
+    given:
+    Thread executionThread = null
+    Set<Thread> inlineThreads = [] as Set
+    def actions = []
+    for (int i = 0; i < 10; i++) {
+      actions.add(InlineAction.of("inline_$i".toString(), "data") { data ->
+        inlineThreads.add(Thread.currentThread())
+        ActionResult.success("INLINE")
+      })
+      actions.add(Action.of("async_$i".toString(), "data") { execControl, data ->
+        execControl.promise { fulfiller -> fulfiller.success(ActionResult.success("ASYNC")) }
+      })
+    }
+    actions.add(InlineAction.of("failing", "data") { data -> throw new IOException("failed") })
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      executionThread = Thread.currentThread()
+      pattern.apply(execControl, registry, actions, 3)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 21
+    actionResults.results.keySet() as List == actions*.name
+    (0..<10).every { actionResults.results["inline_$it".toString()].message == "INLINE" }
+    (0..<10).every { actionResults.results["async_$it".toString()].message == "ASYNC" }
+    actionResults.results["failing"].error instanceof IOException
+    inlineThreads == [executionThread] as Set
+  }
+
+  def "many inline actions in small window do not overflow the stack"() {
+    given:
+    def actions = (0..<10000).collect { i -> InlineAction.of("foo_$i".toString(), "data") { data -> ActionResult.success() } }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, 1, Completion.successes(9999))
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 9999
+    actionResults.results.values().every { it.code == "0" }
+  }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecControl
+import ratpack.exec.ExecResult
+import ratpack.exec.Promise
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class PipelineSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Registry registry
+  Pipeline<String, Integer> pattern
+
+  def setup() {
+    registry = Registries.empty()
+    pattern = new Pipeline<>()
+  }
+
+  def "data of every step is passed to the next step"() {
+    given:
+    def actions = [
+      Action.<String, String>of("verify", "ignored") { ec, data -> ec.promiseOf(ActionResult.success(null, data.trim())) },
+      Action.<String, String>of("enrich", null) { ec, data -> ec.promiseOf(ActionResult.success(null, data + "-enriched")) },
+      Action.<String, Integer>of("transform", null) { ec, data -> ec.promiseOf(ActionResult.success(data.length())) }
+    ]
+
+    when:
+    ExecResult<ActionResults<Integer>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, " value ", null)
+    }
+
+    then:
+    ActionResults<Integer> actionResults = result.getValue()
+    actionResults.results.keySet() == ["transform"] as Set
+    actionResults.results["transform"].data == "value-enriched".length()
+  }
+
+  def "first step without pipeline data executes with its own data"() {
+    given:
+    def actions = [
+      Action.<String, String>of("verify", "own") { ec, data -> ec.promiseOf(ActionResult.success(null, data)) },
+      Action.<String, String>of("enrich", null) { ec, data -> ec.promiseOf(ActionResult.success(null, data + "-enriched")) }
+    ]
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Pipeline<String, String>().apply(execControl, registry, actions)
+    }
+
+    then:
+    result.getValue().results["enrich"].data == "own-enriched"
+  }
+
+  def "pipeline stops at the first failed step"() {
+    given:
+    AtomicInteger executed = new AtomicInteger()
+    def actions = [
+      Action.<String, String>of("verify", null) { ec, data -> ec.promise { f -> f.error(new IllegalArgumentException("invalid")) } },
+      Action.<String, String>of("enrich", null) { ec, data ->
+        executed.incrementAndGet()
+        ec.promiseOf(ActionResult.success(null, data))
+      }
+    ]
+
+    when:
+    ExecResult<ActionResults<Integer>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, "value", null)
+    }
+
+    then:
+    ActionResults<Integer> actionResults = result.getValue()
+    actionResults.results.keySet() == ["verify"] as Set
+    actionResults.results["verify"].error
+    executed.get() == 0
+  }
+
+  def "results of all executed steps are kept on request"() {
+    given:
+    def actions = [
+      Action.<String, String>of("verify", null) { ec, data -> ec.promiseOf(ActionResult.success(null, data)) },
+      null,
+      Action.<String, String>of("operate", null) { ec, data -> ec.promiseOf(ActionResult.success(null, data)) }
+    ]
+
+    when:
+    ExecResult<ActionResults<Integer>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions, "value", true)
+    }
+
+    then:
+    ActionResults<Integer> actionResults = result.getValue()
+    actionResults.results.keySet() as List == ["verify", "ACTION_NULL_IDX_1"]
+    actionResults.results["verify"].data == "value"
+    actionResults.results["ACTION_NULL_IDX_1"].error
+  }
+
+  def "action implementing only exec without data executes with its own data"() {
+    given:
+    Action<String, String> action = new Action<String, String>() {
+      String getName() { "own" }
+      String getData() { "own data" }
+      Promise<ActionResult<String>> exec(ExecControl execControl) {
+        execControl.promiseOf(ActionResult.success(null, getData()))
+      }
+    }
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Pipeline<String, String>().apply(execControl, registry, [action], "pipeline data", null)
+    }
+
+    then:
+    result.getValue().results["own"].data == "own data"
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class RetryBudgetSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+
+  def "retries are allowed up to the percentage of first executions"() {
+    given:
+    RetryBudget budget = new RetryBudget(true, 20, 1)
+
+    expect:
+    budget.tokens == 1
+    budget.tryRetry()
+    !budget.tryRetry()
+    budget.suppressed == 1
+
+    when:
+    4.times { budget.deposit() }
+
+    then:
+    !budget.tryRetry()
+
+    when:
+    budget.deposit()
+
+    then:
+    budget.tryRetry()
+    budget.suppressed == 2
+  }
+
+  def "tokens are limited"() {
+    given:
+    RetryBudget budget = new RetryBudget(true, 50, 2)
+    budget.tryRetry()
+    budget.tryRetry()
+
+    when:
+    100.times { budget.deposit() }
+
+    then:
+    budget.tokens == 2
+  }
+
+  def "concurrent retries do not exceed the budget"() {
+    given:
+    RetryBudget budget = new RetryBudget(true, 0, 1000)
+    AtomicInteger allowed = new AtomicInteger()
+
+    when:
+    (0..<8).collect {
+      Thread.start {
+        200.times {
+          if (budget.tryRetry()) {
+            allowed.incrementAndGet()
+          }
+        }
+      }
+    }*.join()
+
+    then:
+    allowed.get() == 1000
+    budget.suppressed == 600
+    budget.tokens == 0
+  }
+
+  def "retry over the budget is suppressed"() {
+    given:
+    RetryBudget budget = new RetryBudget(true, 0, 1)
+    Registry registry = Registries.just(budget)
+    AtomicInteger counter = new AtomicInteger()
+    Action<String, String> action = Action.of("foo", null) { execControl, data ->
+      execControl.promiseOf(ActionResult.error("500", "failed ${counter.incrementAndGet()}"))
+    }
+    InvokeWithRetry<String, String> pattern = new InvokeWithRetry<>(3)
+
+    when:
+    ExecResult<ActionResults<String>> first = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    with(first.getValue().results["foo"]) {
+      code == ActionResult.RETRY_SUPPRESSED_CODE
+      message == "Retry suppressed by retry budget after 500: failed 2"
+      attempt == 2
+    }
+    counter.get() == 2
+
+    when:
+    ExecResult<ActionResults<String>> second = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    second.getValue().results["foo"].code == ActionResult.RETRY_SUPPRESSED_CODE
+    second.getValue().results["foo"].attempt == 1
+    counter.get() == 3
+    budget.suppressed == 2
+  }
+
+  def "disabled budget is not used"() {
+    expect:
+    RetryBudget.of(Registries.just(new RetryBudget(false, 0, 1))) == null
+    RetryBudget.of(Registries.empty()) == null
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class RetryJournalSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Path dir
+  Path file
+
+  def setup() {
+    dir = Files.createTempDirectory("retry-journal")
+    file = dir.resolve("retries.journal")
+  }
+
+  def cleanup() {
+    dir.toFile().deleteDir()
+  }
+
+  static Action<String, String> action(String name, String data) {
+    Action.of(name, data) { execControl, value -> execControl.promiseOf(ActionResult.success(null, value)) }
+  }
+
+  def "pending entries are recovered after restart"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 4096, 0)
+    journal.append(action("a", "data a"), 3)
+    long b = journal.append(action("b", "data b"), 3)
+    journal.append(action("c", "data c"), 5)
+    journal.complete(b)
+    journal.close()
+
+    when:
+    RetryJournal reopened = new RetryJournal(file, 4096, 0)
+    List<RetryJournal.Entry> recovered = reopened.takeRecovered()
+
+    then:
+    recovered*.name == ["a", "c"]
+    recovered*.data*.asText() == ["data a", "data c"]
+    recovered*.retries == [3, 5]
+    reopened.size() == 2
+    reopened.takeRecovered().isEmpty()
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "completed journal starts from the beginning"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 4096, 0)
+    journal.complete(journal.append(action("a", "data"), 3))
+    journal.append(action("b", "data"), 3)
+    journal.close()
+
+    when:
+    RetryJournal reopened = new RetryJournal(file, 4096, 0)
+
+    then:
+    reopened.takeRecovered()*.name == ["b"]
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "full journal is compacted"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 1024, 100)
+    journal.append(action("pending", "data"), 3)
+
+    when:
+    List<Long> ids = (0..<100).collect { i ->
+      long id = journal.append(action("action_$i", "data $i"), 3)
+      journal.complete(id)
+      id
+    }
+    journal.close()
+    RetryJournal reopened = new RetryJournal(file, 1024, 0)
+
+    then:
+    ids.every { it >= 0 }
+    reopened.takeRecovered()*.name == ["pending"]
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "remaining retries are journaled after every attempt"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 1024, 0)
+    journal.append(action("other", "data"), 3)
+    long id = journal.append(action("a", "data"), 100)
+
+    when: "the journal is compacted a few times while attempts fail"
+    (99..1).each { journal.retried(id, it) }
+    journal.close()
+    RetryJournal reopened = new RetryJournal(file, 1024, 0)
+
+    then:
+    reopened.takeRecovered().collectEntries { [it.name, it.retries] } == [other: 3, a: 1]
+    !Files.exists(dir.resolve("retries.journal.compact"))
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "torn record is ignored"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 4096, 0)
+    journal.append(action("a", "data"), 3)
+    journal.append(action("b", "data"), 3)
+    journal.close()
+    byte[] bytes = Files.readAllBytes(file)
+    int second = 8 + ByteBuffer.wrap(bytes).getInt(0)
+    bytes[second + 8 + 20] = (byte) (bytes[second + 8 + 20] ^ 0xFF)
+    Files.write(file, bytes)
+
+    when:
+    RetryJournal reopened = new RetryJournal(file, 4096, 0)
+
+    then:
+    reopened.takeRecovered()*.name == ["a"]
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "journaled retries are resumed after restart"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 4096, 0)
+    journal.append(action("write", "payload"), 2)
+    journal.close()
+    RetryJournal reopened = new RetryJournal(file, 4096, 0)
+    CountDownLatch completed = new CountDownLatch(1)
+    ActionResults<?> listenerResults = null
+    Registry registry = Registries.just(RetryJournal, reopened)
+      .join(Registries.just(RetryJournal.ActionResolver, { name, data -> action(name, data.asText()) } as RetryJournal.ActionResolver))
+      .join(Registries.just(AsyncRetryListener, { retried, results, attempts ->
+        listenerResults = results
+        completed.countDown()
+      } as AsyncRetryListener))
+
+    when:
+    ExecResult<Integer> result = harness.yield { execControl ->
+      execControl.promiseOf(new InvokeWithRetry<String, String>(3).resume(execControl, registry))
+    }
+
+    then:
+    result.getValue() == 1
+    completed.await(5, TimeUnit.SECONDS)
+    listenerResults.results["write"].code == "0"
+    listenerResults.results["write"].data == "payload"
+    reopened.size() == 0
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "recovered entries over pending limit are resumed as retries finish"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 4096, 0)
+    ["a", "b", "c"].each { journal.append(action(it, "data $it"), 1) }
+    journal.close()
+    RetryJournal reopened = new RetryJournal(file, 4096, 0)
+    CountDownLatch completed = new CountDownLatch(3)
+    List<String> names = [].asSynchronized()
+    Registry registry = Registries.just(RetryJournal, reopened)
+      .join(Registries.just(PendingRetries, new PendingRetries(1)))
+      .join(Registries.just(RetryJournal.ActionResolver, { name, data -> action(name, data.asText()) } as RetryJournal.ActionResolver))
+      .join(Registries.just(AsyncRetryListener, { retried, results, attempts ->
+        names << retried.name
+        completed.countDown()
+      } as AsyncRetryListener))
+
+    when:
+    ExecResult<Integer> result = harness.yield { execControl ->
+      execControl.promiseOf(new InvokeWithRetry<String, String>(3).resume(execControl, registry))
+    }
+
+    then:
+    result.getValue() == 1
+    completed.await(5, TimeUnit.SECONDS)
+    names == ["a", "b", "c"]
+    !reopened.hasRecovered()
+    reopened.size() == 0
+
+    cleanup:
+    reopened?.close()
+  }
+
+  def "closed journal does not journal actions"() {
+    given:
+    RetryJournal journal = new RetryJournal(file, 4096, 100)
+    long id = journal.append(action("a", "data"), 3)
+
+    when:
+    journal.close()
+    journal.complete(id)
+
+    then:
+    journal.append(action("b", "data"), 3) == -1
+    journal.size() == 1
+  }
+
+  def "disabled journal is not used"() {
+    expect:
+    RetryJournal.of(Registries.just(new RetryJournal(null, 4096, 0))) == null
+    RetryJournal.of(Registries.empty()) == null
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.exec
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class TimeoutSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  Registry registry
+  CountDownLatch hang
+
+  def setup() {
+    registry = Registries.empty()
+    hang = new CountDownLatch(1)
+  }
+
+  def cleanup() {
+    hang.countDown()
+  }
+
+  Action<String, String> hangingAction(String name) {
+    Action.of(name, "data") { execControl, data ->
+      execControl.blocking {
+        hang.await()
+        ActionResult.success()
+      }
+    }
+  }
+
+  Action<String, String> successfulAction(String name) {
+    Action.of(name, "data") { execControl, data -> execControl.promise { f -> f.success(ActionResult.success()) } }
+  }
+
+  def "action that does not finish in time resolves to timeout result"() {
+    when:
+    ExecResult<ActionResult<String>> result = harness.yield { execControl ->
+      Timeout.exec(execControl, registry, hangingAction("foo"), 50)
+    }
+
+    then:
+    with(result.getValue()) {
+      code == ActionResult.TIMEOUT_CODE
+      error
+    }
+  }
+
+  def "action that finishes in time keeps its result"() {
+    when:
+    ExecResult<ActionResult<String>> result = harness.yield { execControl ->
+      Timeout.exec(execControl, registry, successfulAction("foo"), 1000)
+    }
+
+    then:
+    result.getValue().code == "0"
+  }
+
+  def "timed out action releases its slot in bounded parallel"() {
+    given:
+    def actions = [
+      Timeout.of(hangingAction("foo"), 50),
+      successfulAction("bar"),
+      successfulAction("buzz")
+    ]
+    Parallel<String, String> pattern = new Parallel<>(1)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results.size() == 3
+    actionResults.results["foo"].code == ActionResult.TIMEOUT_CODE
+    actionResults.results["bar"].code == "0"
+    actionResults.results["buzz"].code == "0"
+  }
+
+  def "request deadline limits all parallel actions"() {
+    given:
+    Registry registry = Registries.just(Deadline.of(100))
+    def actions = [hangingAction("foo"), hangingAction("bar"), successfulAction("buzz")]
+    Parallel<String, String> pattern = new Parallel<>()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, actions)
+    }
+
+    then:
+    ActionResults<String> actionResults = result.getValue()
+    actionResults.results["foo"].code == ActionResult.TIMEOUT_CODE
+    actionResults.results["bar"].code == ActionResult.TIMEOUT_CODE
+    actionResults.results["buzz"].code == "0"
+  }
+
+  def "expired deadline does not start action"() {
+    given:
+    Deadline deadline = Deadline.of(0)
+    Registry registry = Registries.just(deadline)
+    AtomicInteger counter = new AtomicInteger()
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      counter.incrementAndGet()
+      execControl.promise { f -> f.success(ActionResult.success()) }
+    }
+
+    when:
+    ExecResult<ActionResult<String>> result = harness.yield { execControl ->
+      Timeout.exec(execControl, registry, action, 0)
+    }
+
+    then:
+    deadline.expired
+    result.getValue().code == ActionResult.TIMEOUT_CODE
+    counter.get() == 0
+  }
+
+  def "deadline with less than a millisecond left still limits action"() {
+    given:
+    Registry registry = Registries.just(Deadline.of(1))
+
+    when:
+    ExecResult<ActionResult<String>> result = harness.yield { execControl ->
+      Timeout.exec(execControl, registry, hangingAction("foo"), 0)
+    }
+
+    then:
+    result.getValue().code == ActionResult.TIMEOUT_CODE
+  }
+
+  def "retries use the remaining time of the deadline"() {
+    given:
+    Registry registry = Registries.just(Deadline.of(150))
+    AtomicInteger counter = new AtomicInteger()
+    Action<String, String> action = Action.of("foo", "data") { execControl, data ->
+      counter.incrementAndGet()
+      execControl.blocking {
+        hang.await()
+        ActionResult.success()
+      }
+    }
+    InvokeWithRetry<String, String> pattern = new InvokeWithRetry<>(10, Backoff.none(), RetryTimer.EVENT_LOOP, 100)
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, action)
+    }
+
+    then:
+    result.getValue().results["foo"].code == ActionResult.TIMEOUT_CODE
+    counter.get() == 2
+  }
+
+  def "fan-in action is limited by the deadline"() {
+    given:
+    Registry registry = Registries.just(Deadline.of(100))
+    Action<ActionResults<String>, String> finalizer = Action.of("finalizer", null) { execControl, actionResults ->
+      execControl.blocking {
+        hang.await()
+        ActionResult.success()
+      }
+    }
+    FanOutFanIn<String, String, String> pattern = new FanOutFanIn<>()
+
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      pattern.apply(execControl, registry, [successfulAction("foo")], finalizer)
+    }
+
+    then:
+    result.getValue().results["finalizer"].code == ActionResult.TIMEOUT_CODE
+  }
+}
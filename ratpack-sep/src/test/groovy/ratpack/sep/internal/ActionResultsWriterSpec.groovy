@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.buffer.UnpooledByteBufAllocator
+import ratpack.sep.ActionResult
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class ActionResultsWriterSpec extends Specification {
+
+  @JsonIgnoreProperties(["metaClass"])
+  static class Broken {
+    String getValue() {
+      throw new IllegalStateException("broken")
+    }
+  }
+
+  ObjectMapper mapper = new ObjectMapper()
+  ActionResultsWriter writer = new ActionResultsWriter(mapper)
+
+  static String utf8(ByteBuf buffer) {
+    try {
+      return buffer.toString(StandardCharsets.UTF_8)
+    } finally {
+      buffer.release()
+    }
+  }
+
+  def "results are written as object mapper writes them"() {
+    given:
+    Map<String, ActionResult<Object>> results = [
+      foo: ActionResult.success("done", [name: "foo", values: [1, 2]]),
+      bar: ActionResult.error(new IOException("failed \"bar\"")).withAttempt(3),
+      baz: ActionResult.error(ActionResult.TIMEOUT_CODE, "timed out"),
+      "za\u017c": ActionResult.success(42),
+      empty: ActionResult.success()
+    ]
+
+    expect:
+    utf8(writer.write(PooledByteBufAllocator.DEFAULT, results)) == mapper.writeValueAsString(results)
+    utf8(writer.write(PooledByteBufAllocator.DEFAULT, results)) == mapper.writeValueAsString(results)
+  }
+
+  def "large results grow the buffer"() {
+    given:
+    IndexedResults<String> results = new IndexedResults<>(1000)
+    (0..<1000).each { i -> results.set(results.add("action_$i".toString()), ActionResult.success("result $i".toString())) }
+
+    expect:
+    utf8(writer.write(UnpooledByteBufAllocator.DEFAULT, results)) == mapper.writeValueAsString(results)
+  }
+
+  def "buffer is released when data can not be serialized"() {
+    given:
+    List<ByteBuf> allocated = []
+    UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false) {
+      @Override
+      ByteBuf buffer(int initialCapacity) {
+        ByteBuf buffer = super.buffer(initialCapacity)
+        allocated.add(buffer)
+        buffer
+      }
+    }
+
+    when:
+    writer.write(allocator, [foo: ActionResult.success(new Broken())])
+
+    then:
+    thrown(JsonMappingException)
+    allocated.size() == 1
+    allocated[0].refCnt() == 0
+  }
+}
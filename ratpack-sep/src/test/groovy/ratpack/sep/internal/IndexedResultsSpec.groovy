@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.internal
+
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import spock.lang.Specification
+
+class IndexedResultsSpec extends Specification {
+
+  def "only slots with results are visible by action name"() {
+    given:
+    IndexedResults<String> results = new IndexedResults<>(2)
+    def actions = (0..<20).collect { i -> Action.of("foo_$i".toString(), null) { ec, data -> null } }
+
+    when:
+    actions.each { results.add(it) }
+    results.set(3, ActionResult.success(null, "3"))
+    results.set(15, ActionResult.success(null, "15"))
+
+    then:
+    results.length() == 20
+    results.size() == 2
+    results["foo_3"].data == "3"
+    results["foo_15"].data == "15"
+    results["foo_4"] == null
+    results.keySet() as List == ["foo_3", "foo_15"]
+  }
+
+  def "named slots and fill of missing results"() {
+    given:
+    IndexedResults<String> results = new IndexedResults<>(0)
+    int named = results.add("ACTION_NULL_IDX_0")
+    results.add(Action.of("foo", null) { ec, data -> null })
+    results.set(named, ActionResult.error(new NullPointerException()))
+
+    when:
+    results.fill(ActionResult.error(ActionResult.ABANDONED_CODE, "abandoned"))
+
+    then:
+    results.size() == 2
+    results.action(named) == null
+    results.action(1).name == "foo"
+    results["foo"].code == ActionResult.ABANDONED_CODE
+    results["ACTION_NULL_IDX_0"].code != ActionResult.ABANDONED_CODE
+  }
+
+  def "last slot of duplicate name wins"() {
+    given:
+    IndexedResults<String> results = new IndexedResults<>(0)
+    (0..<count).each { i -> results.add(Action.of("foo_${i % 3}".toString(), null) { ec, data -> null }) }
+
+    when:
+    (0..<count).each { i -> results.set(i, ActionResult.success(null, "$i".toString())) }
+
+    then:
+    results.size() == 3
+    results.keySet().size() == 3
+    results.entrySet().size() == 3
+    results.keySet() as Set == ["foo_0", "foo_1", "foo_2"] as Set
+    results["foo_0"].data == "${count - 1 - (count - 1) % 3}".toString()
+    results.values()*.data as Set == ((count - 3)..<count).collect { "$it".toString() } as Set
+
+    where:
+    count << [6, 30]
+  }
+
+  def "results are read only"() {
+    when:
+    new IndexedResults<String>(1).put("foo", ActionResult.success())
+
+    then:
+    thrown(UnsupportedOperationException)
+  }
+}
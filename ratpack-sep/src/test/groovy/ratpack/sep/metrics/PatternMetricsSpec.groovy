@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ratpack.sep.metrics
+
+import ratpack.exec.ExecResult
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.sep.exec.InvokeWithRetry
+import ratpack.sep.exec.Parallel
+import ratpack.sep.exec.Timeout
+import ratpack.test.exec.ExecHarness
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class PatternMetricsSpec extends Specification {
+
+  @AutoCleanup
+  ExecHarness harness = ExecHarness.harness()
+  HdrPatternMetrics metrics
+  Registry registry
+
+  def setup() {
+    metrics = new HdrPatternMetrics()
+    registry = Registries.just(metrics)
+  }
+
+  Action<String, String> action(String name, String code) {
+    Action.of(name, "data") { execControl, data ->
+      execControl.promise { f -> f.success(code == "0" ? ActionResult.success() : ActionResult.error(code, "failed")) }
+    }
+  }
+
+  def "parallel records every action and pattern latency"() {
+    when:
+    ExecResult<ActionResults<String>> result = harness.yield { execControl ->
+      new Parallel<String, String>().apply(execControl, registry, [action("foo", "0"), action("bar", "1"), action("baz", "0")])
+    }
+    MetricsSnapshot snapshot = metrics.snapshot()
+
+    then:
+    result.getValue().results.size() == 3
+    snapshot.actions.keySet() == ["foo", "bar", "baz"] as Set
+    snapshot.actions["foo"].codes == ["0": 1L]
+    snapshot.actions["bar"].codes == ["1": 1L]
+    snapshot.actions.values().every { it.inFlight == 0 && it.latency.count == 1 }
+    snapshot.patterns[Parallel.PATTERN_NAME].count == 1
+  }
+
+  def "retries are counted"() {
+    when:
+    harness.yield { execControl ->
+      new InvokeWithRetry<String, String>(3).apply(execControl, registry, action("foo", "1"))
+    }
+    MetricsSnapshot snapshot = metrics.snapshot()
+
+    then:
+    snapshot.actions["foo"].retries == 3
+    snapshot.actions["foo"].codes == ["1": 4L]
+    snapshot.patterns[InvokeWithRetry.PATTERN_NAME].count == 1
+  }
+
+  def "action not finished yet is in flight"() {
+    given:
+    CountDownLatch started = new CountDownLatch(1)
+    CountDownLatch hang = new CountDownLatch(1)
+    Action<String, String> hanging = Action.of("foo", "data") { execControl, data ->
+      execControl.blocking {
+        started.countDown()
+        hang.await()
+        ActionResult.success()
+      }
+    }
+
+    when:
+    harness.control.exec().start { execution -> Timeout.exec(execution, registry, hanging, 0).then {} }
+    started.await()
+    long inFlight = metrics.snapshot().actions["foo"].inFlight
+    hang.countDown()
+
+    then:
+    inFlight == 1
+  }
+
+  def "error messages do not create new codes"() {
+    when:
+    100.times { i ->
+      ActionResult<String> result = ActionResult.error(new IOException("failed request $i"))
+      metrics.actionStarted("foo")
+      metrics.actionFinished("foo", result.code, 1000)
+    }
+    (0..<(HdrPatternMetrics.MAX_CODES + 10)).each { i ->
+      metrics.actionStarted("bar")
+      metrics.actionFinished("bar", "CODE_$i".toString(), 1000)
+    }
+    MetricsSnapshot snapshot = metrics.snapshot()
+
+    then:
+    snapshot.actions["foo"].codes == ["java.io.IOException": 100L]
+    snapshot.actions["bar"].codes.size() == HdrPatternMetrics.MAX_CODES + 1
+    snapshot.actions["bar"].codes[HdrPatternMetrics.OTHER_CODE] == 10L
+  }
+
+  def "actions over the limit are recorded together"() {
+    given:
+    HdrPatternMetrics bounded = new HdrPatternMetrics(2, 3)
+
+    when:
+    (0..<10).each { i ->
+      bounded.actionStarted("user_$i".toString())
+      bounded.actionFinished("user_$i".toString(), "0", 1000)
+    }
+    MetricsSnapshot snapshot = bounded.snapshot()
+
+    then:
+    snapshot.actions.keySet() == ["user_0", "user_1", "user_2", HdrPatternMetrics.OTHER_ACTIONS] as Set
+    snapshot.actions[HdrPatternMetrics.OTHER_ACTIONS].codes == ["0": 7L]
+    snapshot.actions.values().every { it.inFlight == 0 }
+  }
+
+  def "nothing is recorded without metrics in registry"() {
+    expect:
+    PatternMetrics.of(Registries.empty()) == PatternMetrics.NOOP
+    PatternMetrics.of(null) == PatternMetrics.NOOP
+    PatternMetrics.NOOP.snapshot().actions.isEmpty()
+  }
+}